@@ -0,0 +1,39 @@
+package main.java.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import main.java.message.MessageType;
+import main.java.server.ServerConfig;
+
+final class BenchmarkFrames {
+
+  private BenchmarkFrames() {
+  }
+
+  static ByteBuffer hashRequests(int count, int dataLength, int iterations, boolean direct) {
+    int frameSize = frameSize(dataLength);
+    ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(frameSize * count)
+        : ByteBuffer.allocate(frameSize * count);
+    Random random = new Random(42);
+    byte[] data = new byte[dataLength];
+    for (int i = 0; i < count; i++) {
+      random.nextBytes(data);
+      putHashRequest(buffer, i, iterations, data);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  static void putHashRequest(ByteBuffer buffer, long requestId, int iterations, byte[] data) {
+    buffer.putInt(ServerConfig.REQUEST_HEADER_SIZE + data.length);
+    buffer.putShort(MessageType.HASH_REQUEST.getValue());
+    buffer.putLong(requestId);
+    buffer.putInt(iterations);
+    buffer.putInt(data.length);
+    buffer.put(data);
+  }
+
+  static int frameSize(int dataLength) {
+    return ServerConfig.HEADER_SIZE + ServerConfig.REQUEST_HEADER_SIZE + dataLength;
+  }
+}
@@ -0,0 +1,153 @@
+package main.java.bench;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import main.java.server.JamServer;
+import main.java.server.ServerConfig;
+import main.java.util.metrics.MetricsRegistry;
+
+// Heap and direct memory per connection, idle and active, for an in-process JamServer.
+// Client sockets live in the same JVM, so the same connections are first held by a bare
+// ServerSocketChannel; subtracting that run leaves what the server itself keeps per connection.
+//
+//   gradle :benchmarks:connectionMemory -Pconnections=5000
+//
+// Needs ulimit -n above twice the connection count.
+public final class ConnectionMemoryBenchmark {
+
+  private static final int PORT = 18889;
+
+  private record Sample(long heap, long direct) {
+
+    Sample minus(Sample other) {
+      return new Sample(heap - other.heap, direct - other.direct);
+    }
+  }
+
+  private ConnectionMemoryBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.setProperty("jam.admin.port", "0");
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+    Sample bare = bareSockets(connections);
+
+    Sample before = snapshot();
+    Sample idle;
+    Sample active;
+    try (JamServer server = new JamServer(PORT)) {
+      Sample started = snapshot();
+      List<SocketChannel> clients = connect(connections);
+      awaitActiveConnections(connections);
+      idle = snapshot().minus(started);
+
+      // One full round trip each, then half of a second request left pending on the server.
+      ByteBuffer request = BenchmarkFrames.hashRequests(1, 32, 1, false);
+      ByteBuffer response = ByteBuffer.allocate(
+          ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE);
+      for (SocketChannel client : clients) {
+        client.write(request.duplicate());
+      }
+      for (SocketChannel client : clients) {
+        response.clear();
+        while (response.hasRemaining()) {
+          if (client.read(response) < 0) {
+            throw new IOException("Server closed a connection");
+          }
+        }
+        ByteBuffer partial = request.duplicate();
+        partial.limit(partial.limit() / 2);
+        client.write(partial);
+      }
+      Thread.sleep(1000);
+      active = snapshot().minus(started);
+      closeAll(clients);
+    }
+
+    System.out.println();
+    System.out.println("Connections:           " + connections + " (transport "
+        + ServerConfig.TRANSPORT + ", baseline heap " + before.heap / 1024 + " KB)");
+    print("Bare accepted socket", bare, connections);
+    print("JamServer idle", idle, connections);
+    print("JamServer active", active, connections);
+    print("Server overhead idle", idle.minus(bare), connections);
+    print("Server overhead active", active.minus(bare), connections);
+  }
+
+  private static Sample bareSockets(int connections) throws Exception {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(PORT), ServerConfig.BACKLOG);
+      List<SocketChannel> accepted = new ArrayList<>(connections);
+      Thread acceptor = new Thread(() -> {
+        try {
+          while (accepted.size() < connections) {
+            accepted.add(server.accept());
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      });
+      Sample start = snapshot();
+      acceptor.start();
+      List<SocketChannel> clients = connect(connections);
+      acceptor.join();
+      Sample held = snapshot().minus(start);
+      closeAll(clients);
+      closeAll(accepted);
+      return held;
+    }
+  }
+
+  private static List<SocketChannel> connect(int connections) throws IOException {
+    List<SocketChannel> clients = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++) {
+      clients.add(SocketChannel.open(new InetSocketAddress("localhost", PORT)));
+    }
+    return clients;
+  }
+
+  private static void awaitActiveConnections(int connections) throws InterruptedException {
+    String expected = "jam_connections_active " + connections + "\n";
+    for (int i = 0; i < 300; i++) {
+      if (MetricsRegistry.getInstance().scrape().contains(expected)) {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    throw new IllegalStateException("Server never reported " + connections + " connections");
+  }
+
+  private static void closeAll(List<SocketChannel> channels) throws IOException {
+    for (SocketChannel channel : channels) {
+      channel.close();
+    }
+  }
+
+  private static Sample snapshot() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(200);
+    }
+    long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    long direct = 0;
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        direct = pool.getMemoryUsed();
+      }
+    }
+    return new Sample(heap, direct);
+  }
+
+  private static void print(String label, Sample sample, int connections) {
+    System.out.printf("%-23s heap %7.1f B/conn, direct %7.1f B/conn%n", label + ":",
+        (double) sample.heap / connections, (double) sample.direct / connections);
+  }
+}
@@ -0,0 +1,72 @@
+package main.java.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import main.java.server.NioEventLoop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class EventLoopHandoffBenchmark {
+
+  private NioEventLoop eventLoop;
+  private final LongAdder executed = new LongAdder();
+  private final Runnable countingTask = executed::increment;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    eventLoop = new NioEventLoop(0, null, new AtomicLong(0));
+    eventLoop.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    eventLoop.close();
+  }
+
+  // Producer-side cost of addTask() with four business threads handing work to one loop.
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(4)
+  public void addTaskThroughput() {
+    eventLoop.addTask(countingTask);
+  }
+
+  @State(Scope.Thread)
+  public static class RoundTrip {
+
+    volatile long completed;
+    long sequence;
+  }
+
+  // Time from addTask() on a business thread until the loop has run the task.
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(1)
+  public long addTaskLatency(RoundTrip roundTrip) {
+    long target = ++roundTrip.sequence;
+    eventLoop.addTask(() -> roundTrip.completed = target);
+    while (roundTrip.completed != target) {
+      Thread.onSpinWait();
+    }
+    return target;
+  }
+}
@@ -0,0 +1,114 @@
+package main.java.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import main.java.server.JamServer;
+import main.java.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full request/response round trips over loopback against an in-process JamServer.
+// Run with -prof gc to see allocation per operation on both sides.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Threads(4)
+public class LoopbackEndToEndBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Server {
+
+    @Param({"18888"})
+    public int port;
+
+    @Param({"NIO", "VIRTUAL_THREAD"})
+    public String transport;
+
+    JamServer server;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+      server = new JamServer(port, JamServer.Transport.parse(transport));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+      server.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    @Param({"1", "16"})
+    public int pipelineDepth;
+
+    @Param({"1", "100"})
+    public int iterations;
+
+    SocketChannel channel;
+    ByteBuffer requests;
+    ByteBuffer responses;
+
+    @Setup(Level.Trial)
+    public void connect(Server server) throws IOException {
+      channel = SocketChannel.open(new InetSocketAddress("localhost", server.port));
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      requests = BenchmarkFrames.hashRequests(pipelineDepth, 32, iterations, true);
+      responses = ByteBuffer.allocateDirect(
+          pipelineDepth * (ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE));
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+      channel.close();
+    }
+  }
+
+  @Benchmark
+  public int roundTrip(Client client) throws IOException {
+    ByteBuffer requests = client.requests;
+    requests.rewind();
+    while (requests.hasRemaining()) {
+      client.channel.write(requests);
+    }
+
+    ByteBuffer responses = client.responses;
+    responses.clear();
+    int frames = 0;
+    int position = 0;
+    while (frames < client.pipelineDepth) {
+      if (client.channel.read(responses) < 0) {
+        throw new EOFException("Server closed the connection");
+      }
+      while (responses.position() - position >= ServerConfig.HEADER_SIZE) {
+        int frameSize = ServerConfig.HEADER_SIZE + responses.getInt(position);
+        if (responses.position() - position < frameSize) {
+          break;
+        }
+        position += frameSize;
+        frames++;
+      }
+    }
+    return frames;
+  }
+}
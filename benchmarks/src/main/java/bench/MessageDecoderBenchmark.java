@@ -0,0 +1,82 @@
+package main.java.bench;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import main.java.message.Message;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageDecoder.DecodeException;
+import main.java.message.MessageDecoder.FrameListener;
+import main.java.message.MessageView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class MessageDecoderBenchmark {
+
+  private static final FrameListener<Blackhole> CONSUME = (blackhole, message) -> {
+    blackhole.consume(message.getType());
+    blackhole.consume(message.getLong(0));
+  };
+
+  @Param({"1", "32"})
+  public int frames;
+
+  @Param({"32"})
+  public int dataLength;
+
+  private final MessageDecoder decoder = MessageDecoder.getInstance();
+  private final MessageView view = new MessageView();
+  private ByteBuffer input;
+  private ByteBuffer splitBuffer;
+  private int splitPoint;
+
+  @Setup
+  public void setUp() {
+    input = BenchmarkFrames.hashRequests(frames, dataLength, 1, true);
+    splitBuffer = ByteBuffer.allocateDirect(input.capacity());
+    // Cut the last frame in half so the second read completes it.
+    splitPoint = input.limit() - BenchmarkFrames.frameSize(dataLength) / 2;
+  }
+
+  @Benchmark
+  public int callback(Blackhole blackhole) throws DecodeException {
+    input.rewind();
+    return decoder.decode(input, view, blackhole, CONSUME);
+  }
+
+  @Benchmark
+  public List<Message> list() throws DecodeException {
+    input.rewind();
+    return decoder.decode(input);
+  }
+
+  // Two reads: the first ends mid-frame, so the decoder stops, the buffer is compacted and the
+  // remainder arrives, mirroring NioChannel.handleRead().
+  @Benchmark
+  public int splitFrames(Blackhole blackhole) throws DecodeException {
+    splitBuffer.clear();
+    splitBuffer.put(input.duplicate().limit(splitPoint).rewind());
+    splitBuffer.flip();
+    int decoded = decoder.decode(splitBuffer, view, blackhole, CONSUME);
+    splitBuffer.compact();
+    splitBuffer.put(input.duplicate().limit(input.capacity()).position(splitPoint));
+    splitBuffer.flip();
+    return decoded + decoder.decode(splitBuffer, view, blackhole, CONSUME);
+  }
+}
@@ -0,0 +1,54 @@
+package main.java.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import main.java.message.Message;
+import main.java.message.MessageEncoder;
+import main.java.message.MessageType;
+import main.java.server.ServerConfig;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class MessageEncoderBenchmark {
+
+  private final MessageEncoder encoder = MessageEncoder.getInstance();
+  private final BufferPool pool = BufferPool.getInstance();
+  private final byte[] hash = new byte[ServerConfig.HASH_RESULT_SIZE];
+  private long requestId = 0;
+
+  @Benchmark
+  public int pooledHashResponse() {
+    PooledBuffer buffer = pool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    encoder.encodeHashResponse(buffer.buffer(), requestId++, 10, hash);
+    int size = buffer.buffer().remaining();
+    buffer.release();
+    return size;
+  }
+
+  // The original path: heap payload, Message wrapper and a fresh heap frame per response.
+  @Benchmark
+  public ByteBuffer messageHashResponse() {
+    ByteBuffer payload = ByteBuffer.allocate(ServerConfig.RESPONSE_PAYLOAD_SIZE);
+    payload.putLong(requestId++);
+    payload.putInt(10);
+    payload.putInt(ServerConfig.HASH_RESULT_SIZE);
+    payload.put(hash);
+    payload.flip();
+    return encoder.encode(new Message(MessageType.HASH_RESPONSE.getValue(), payload));
+  }
+}
@@ -0,0 +1,90 @@
+package main.java.bench;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.java.server.ServerConfig;
+import main.java.util.hash.BatchSha256;
+import main.java.util.hash.BatchSha256Engines;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Vector API code runs interpreted and boxed until C2 compiles it, hence the longer warmup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class Sha256ChainBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int iterations;
+
+  @Param({"64"})
+  public int lanes;
+
+  private MessageDigest digest;
+  private BatchSha256 vectorEngine;
+  private BatchSha256 scalarEngine;
+  private byte[] data;
+  private byte[] result;
+  private byte[] laneInput;
+  private byte[] laneState;
+
+  @Setup
+  public void setUp() throws NoSuchAlgorithmException {
+    digest = MessageDigest.getInstance("SHA-256");
+    vectorEngine = BatchSha256Engines.create(true);
+    scalarEngine = BatchSha256Engines.scalar();
+    Random random = new Random(7);
+    data = new byte[64];
+    random.nextBytes(data);
+    result = new byte[ServerConfig.HASH_RESULT_SIZE];
+    laneInput = new byte[lanes * ServerConfig.HASH_RESULT_SIZE];
+    random.nextBytes(laneInput);
+    laneState = new byte[laneInput.length];
+  }
+
+  // Same loop as HashRequestHandler: one request, rounds chained through a scratch array.
+  @Benchmark
+  public byte[] messageDigestChain() throws DigestException {
+    digest.update(data);
+    digest.digest(result, 0, result.length);
+    for (int i = 1; i < iterations; i++) {
+      digest.update(result);
+      digest.digest(result, 0, result.length);
+    }
+    return result;
+  }
+
+  // `lanes` independent 32-byte chains; divide by lanes for per-request cost.
+  @Benchmark
+  public byte[] scalarEngineChains() {
+    return chain(scalarEngine);
+  }
+
+  @Benchmark
+  public byte[] vectorEngineChains() {
+    return chain(vectorEngine);
+  }
+
+  private byte[] chain(BatchSha256 engine) {
+    System.arraycopy(laneInput, 0, laneState, 0, laneInput.length);
+    for (int i = 0; i < iterations; i++) {
+      engine.digest32(laneState, laneState, lanes);
+    }
+    return laneState;
+  }
+}
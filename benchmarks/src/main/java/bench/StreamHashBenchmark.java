@@ -0,0 +1,264 @@
+package main.java.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.java.channel.Channel;
+import main.java.channel.InFlightRequests;
+import main.java.handler.BusinessExecutor;
+import main.java.handler.HashStreamHandler;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageDecoder.DecodeException;
+import main.java.message.MessageDecoder.FrameListener;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.InlineExecutionController;
+import main.java.server.JamServer;
+import main.java.server.ServerConfig;
+import main.java.util.buffer.PooledBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One multi-megabyte payload hashed four ways: a single MessageDigest.update over the whole
+// buffer, the same digest fed chunk by chunk, the chunk frames decoded and dispatched to
+// HashStreamHandler in process, and the stream sent to a local JamServer over loopback.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class StreamHashBenchmark {
+
+  private static final long STREAM_ID = 1;
+  // What one socket read can hand the decoder on an event loop.
+  private static final int READ_SIZE = ServerConfig.LOOP_READ_BUFFER_SIZE;
+
+  @State(Scope.Benchmark)
+  public static class Server {
+
+    @Param({"18889"})
+    public int port;
+
+    @Param({"NIO"})
+    public String transport;
+
+    JamServer server;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+      server = new JamServer(port, JamServer.Transport.parse(transport));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+      server.close();
+    }
+  }
+
+  @Param({"1", "16"})
+  public int megabytes;
+
+  @Param({"16378"})
+  public int chunkSize;
+
+  private ByteBuffer data;
+  private ByteBuffer frames;
+  private MessageDigest digest;
+  private final MessageView view = new MessageView();
+  private final MessageDecoder decoder = MessageDecoder.getInstance();
+  private BusinessExecutor executor;
+  private HashStreamHandler handler;
+  private BenchmarkChannel channel;
+  private FrameListener<Channel> dispatch;
+  private SocketChannel socket;
+  private final ByteBuffer response = ByteBuffer.allocateDirect(256);
+
+  @Setup(Level.Trial)
+  public void setUp() throws NoSuchAlgorithmException {
+    int chunkData = chunkSize - ServerConfig.REQUEST_ID_SIZE;
+    if (chunkData <= 0 || chunkSize > ServerConfig.STREAM_CHUNK_MAX_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+    }
+    byte[] bytes = new byte[megabytes << 20];
+    new Random(42).nextBytes(bytes);
+    data = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    frames = streamFrames(bytes, chunkData);
+    digest = MessageDigest.getInstance("SHA-256");
+
+    executor = new BusinessExecutor(1, 0);
+    handler = new HashStreamHandler(executor);
+    channel = new BenchmarkChannel();
+    dispatch = (ch, message) -> handler.handle(message, ch);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    executor.close();
+    if (socket != null) {
+      socket.close();
+    }
+  }
+
+  // BEGIN with one iteration, so END answers inline, then the chunks and END.
+  private static ByteBuffer streamFrames(byte[] bytes, int chunkData) {
+    int chunks = (bytes.length + chunkData - 1) / chunkData;
+    int size = ServerConfig.HEADER_SIZE + ServerConfig.STREAM_BEGIN_PAYLOAD_SIZE
+        + chunks * (ServerConfig.HEADER_SIZE + ServerConfig.REQUEST_ID_SIZE) + bytes.length
+        + ServerConfig.HEADER_SIZE + ServerConfig.STREAM_END_PAYLOAD_SIZE;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+    buffer.putInt(ServerConfig.STREAM_BEGIN_PAYLOAD_SIZE)
+        .putShort(MessageType.HASH_STREAM_BEGIN.getValue()).putLong(STREAM_ID).putInt(1);
+    for (int offset = 0; offset < bytes.length; offset += chunkData) {
+      int length = Math.min(chunkData, bytes.length - offset);
+      buffer.putInt(ServerConfig.REQUEST_ID_SIZE + length)
+          .putShort(MessageType.HASH_STREAM_CHUNK.getValue()).putLong(STREAM_ID)
+          .put(bytes, offset, length);
+    }
+    buffer.putInt(ServerConfig.STREAM_END_PAYLOAD_SIZE)
+        .putShort(MessageType.HASH_STREAM_END.getValue()).putLong(STREAM_ID);
+    return buffer.flip();
+  }
+
+  @Benchmark
+  public byte[] messageDigest() {
+    data.rewind();
+    digest.update(data);
+    return digest.digest();
+  }
+
+  @Benchmark
+  public byte[] messageDigestChunked() {
+    int chunkData = chunkSize - ServerConfig.REQUEST_ID_SIZE;
+    for (int offset = 0; offset < data.capacity(); offset += chunkData) {
+      data.limit(Math.min(offset + chunkData, data.capacity())).position(offset);
+      digest.update(data);
+    }
+    data.limit(data.capacity());
+    return digest.digest();
+  }
+
+  // The read buffer is handed over READ_SIZE bytes at a time; a frame cut by the window waits
+  // for the next one, as it would for the next read.
+  @Benchmark
+  public int streamHandler() throws DecodeException {
+    int end = frames.capacity();
+    frames.limit(0).position(0);
+    int decoded = 0;
+    while (frames.limit() < end) {
+      frames.limit(Math.min(frames.limit() + READ_SIZE, end));
+      decoded += decoder.decode(frames, view, channel, dispatch);
+    }
+    if (channel.responses != 1) {
+      throw new IllegalStateException("Expected one HASH_RESPONSE, got " + channel.responses);
+    }
+    channel.responses = 0;
+    return decoded;
+  }
+
+  @Benchmark
+  public int loopback(Server server) throws IOException {
+    if (socket == null) {
+      socket = SocketChannel.open(new InetSocketAddress("localhost", server.port));
+      socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+    frames.clear();
+    while (frames.hasRemaining()) {
+      socket.write(frames);
+    }
+    response.clear();
+    int expected = ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE;
+    while (response.position() < expected) {
+      if (socket.read(response) < 0) {
+        throw new EOFException("Server closed the connection");
+      }
+    }
+    if (response.getShort(4) != MessageType.HASH_RESPONSE.getValue()) {
+      throw new IllegalStateException("Unexpected response type " + response.getShort(4));
+    }
+    return response.position();
+  }
+
+  // Counts queued responses; the benchmark thread plays the channel's I/O thread.
+  private static final class BenchmarkChannel implements Channel {
+
+    private final InFlightRequests inFlight = new InFlightRequests();
+    private final InlineExecutionController inlineController =
+        new InlineExecutionController(Long.MAX_VALUE, 0, 0);
+    private Object attachment;
+    int responses;
+
+    @Override
+    public long getChannelId() {
+      return 1;
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    public void queueResponse(PooledBuffer buffer) {
+      responses++;
+      buffer.release();
+    }
+
+    @Override
+    public void queueResponses(PooledBuffer[] buffers, int count) {
+      for (int i = 0; i < count; i++) {
+        queueResponse(buffers[i]);
+      }
+    }
+
+    @Override
+    public void requestAccepted() {
+    }
+
+    @Override
+    public InFlightRequests inFlightRequests() {
+      return inFlight;
+    }
+
+    @Override
+    public InlineExecutionController getInlineController() {
+      return inlineController;
+    }
+
+    @Override
+    public Object attachment() {
+      return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+      this.attachment = attachment;
+    }
+
+    @Override
+    public void closeAsync() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
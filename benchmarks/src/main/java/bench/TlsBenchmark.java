@@ -0,0 +1,157 @@
+package main.java.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import main.java.server.JamServer;
+import main.java.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Plaintext vs TLS against an in-process JamServer:
+//   connect   - connect, handshake, one request, close; TLS_FULL drops the client's session
+//               after each connection, TLS_RESUMED keeps it so the next one resumes
+//   roundTrip - pipelineDepth requests per operation over an established connection
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Threads(4)
+public class TlsBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Server {
+
+    @Param({"18889"})
+    public int port;
+
+    @Param({"PLAIN", "TLS_FULL", "TLS_RESUMED"})
+    public String security;
+
+    JamServer server;
+    SSLContext clientContext;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, GeneralSecurityException {
+      boolean tls = !"PLAIN".equals(security);
+      server = new JamServer(port, JamServer.Transport.NIO, tls);
+      if (tls) {
+        // The bundled certificate is self-signed; this only measures the server side.
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[]{new TrustAll()}, null);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+      server.close();
+    }
+
+    Socket connect() throws IOException {
+      Socket socket = clientContext != null
+          ? clientContext.getSocketFactory().createSocket("localhost", port)
+          : new Socket("localhost", port);
+      socket.setTcpNoDelay(true);
+      return socket;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    @Param({"16"})
+    public int pipelineDepth;
+
+    Socket socket;
+    byte[] request;
+    byte[] requests;
+    byte[] responses;
+
+    @Setup(Level.Trial)
+    public void connect(Server server) throws IOException {
+      socket = server.connect();
+      request = BenchmarkFrames.hashRequests(1, 32, 1, false).array();
+      requests = BenchmarkFrames.hashRequests(pipelineDepth, 32, 1, false).array();
+      responses = new byte[pipelineDepth * (ServerConfig.HEADER_SIZE
+          + ServerConfig.RESPONSE_PAYLOAD_SIZE)];
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+      socket.close();
+    }
+  }
+
+  @Benchmark
+  public int connect(Server server, Client client) throws IOException {
+    try (Socket socket = server.connect()) {
+      // One exchange also reads the TLS 1.3 session ticket the server sends after the handshake.
+      int read = exchange(socket, client.request, client.responses,
+          ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE);
+      if ("TLS_FULL".equals(server.security)) {
+        ((SSLSocket) socket).getSession().invalidate();
+      }
+      return read;
+    }
+  }
+
+  @Benchmark
+  public int roundTrip(Client client) throws IOException {
+    return exchange(client.socket, client.requests, client.responses, client.responses.length);
+  }
+
+  private static int exchange(Socket socket, byte[] requests, byte[] responses, int length)
+      throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(requests);
+    out.flush();
+    InputStream in = socket.getInputStream();
+    int read = 0;
+    while (read < length) {
+      int n = in.read(responses, read, length - read);
+      if (n < 0) {
+        throw new EOFException("Server closed the connection");
+      }
+      read += n;
+    }
+    return read;
+  }
+
+  private static final class TrustAll implements X509TrustManager {
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+  }
+}
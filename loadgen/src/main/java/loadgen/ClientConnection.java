@@ -0,0 +1,83 @@
+package main.java.loadgen;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import main.java.server.ServerConfig;
+
+// Per-connection state, owned by a single ClientWorker. Requests in flight occupy one of
+// `depth` slots; the request id carries the slot in its low 16 bits and a per-connection
+// sequence above that, so a response is matched without a map lookup.
+final class ClientConnection {
+
+  static final int SLOT_BITS = 16;
+  static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+
+  final SocketChannel socketChannel;
+  SelectionKey key;
+  final ByteBuffer readBuffer;
+  final ByteBuffer writeBuffer;
+  boolean connected = false;
+  boolean closed = false;
+
+  final long[] slotRequestIds;
+  final long[] slotStartNanos;
+  final int[] slotSamples;
+  final byte[][] slotPayloads;
+  private final int[] freeSlots;
+  private int freeCount;
+  private long sequence = 0;
+
+  ClientConnection(SocketChannel socketChannel, LoadConfig config) {
+    this.socketChannel = socketChannel;
+    int depth = config.depth;
+    // Responses are 54 bytes; reads never need more than one pipeline's worth.
+    this.readBuffer = ByteBuffer.allocateDirect(Math.max(512,
+        Math.min(64 * 1024, depth * (ServerConfig.HEADER_SIZE
+            + ServerConfig.RESPONSE_PAYLOAD_SIZE))));
+    this.writeBuffer = ByteBuffer.allocateDirect(
+        Math.min(64 * 1024, depth * config.maxRequestFrameSize()));
+    this.slotRequestIds = new long[depth];
+    this.slotStartNanos = new long[depth];
+    this.slotSamples = new int[depth];
+    this.slotPayloads = config.unique ? new byte[depth][config.maxPayload] : null;
+    this.freeSlots = new int[depth];
+    for (int i = 0; i < depth; i++) {
+      freeSlots[i] = depth - 1 - i;
+      slotRequestIds[i] = -1;
+    }
+    this.freeCount = depth;
+  }
+
+  boolean hasFreeSlot() {
+    return freeCount > 0 && !closed;
+  }
+
+  int inFlight() {
+    return slotRequestIds.length - freeCount;
+  }
+
+  // Claims a slot and returns its request id.
+  long acquireSlot(long startNanos, int sample) {
+    int slot = freeSlots[--freeCount];
+    long requestId = (++sequence << SLOT_BITS) | slot;
+    slotRequestIds[slot] = requestId;
+    slotStartNanos[slot] = startNanos;
+    slotSamples[slot] = sample;
+    return requestId;
+  }
+
+  // Returns the slot for requestId, or -1 if no such request is in flight.
+  int findSlot(long requestId) {
+    int slot = (int) (requestId & SLOT_MASK);
+    if (requestId < 0 || slot >= slotRequestIds.length || slotRequestIds[slot] != requestId) {
+      return -1;
+    }
+    return slot;
+  }
+
+  void releaseSlot(int slot) {
+    slotRequestIds[slot] = -1;
+    freeSlots[freeCount++] = slot;
+  }
+}
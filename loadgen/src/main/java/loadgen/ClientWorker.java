@@ -0,0 +1,487 @@
+package main.java.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageDecoder.DecodeException;
+import main.java.message.MessageDecoder.FrameListener;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+
+// One selector thread driving a share of the connections. In closed-loop mode every response
+// is answered with a new request on the same connection. In open-loop mode requests follow a
+// fixed schedule and latency is measured from the scheduled send time, so a stalled server
+// cannot hide its queueing delay by slowing the client down (coordinated omission).
+final class ClientWorker implements Runnable, FrameListener<ClientConnection> {
+
+  private static final int MAX_PENDING_CONNECTS = 256;
+  private static final long DRAIN_TIMEOUT_NANOS = 5_000_000_000L;
+  static final long HISTOGRAM_MAX_NANOS = 3_600_000_000_000L;
+
+  private final int workerIndex;
+  private final LoadConfig config;
+  private final Workload workload;
+  private final int connectionCount;
+  private final InetSocketAddress remoteAddress;
+  private final List<InetSocketAddress> localAddresses;
+  private final CountDownLatch connectedLatch;
+  private final CountDownLatch startLatch;
+  private final ClientConnection[] connections;
+  private final ClientConnection[] dirty;
+  private int dirtyCount = 0;
+  private final SplittableRandom random;
+  private final MessageDecoder decoder = MessageDecoder.getInstance();
+  private final MessageView view = new MessageView();
+  private final byte[] hashScratch = new byte[ServerConfig.HASH_RESULT_SIZE];
+  private final byte[] expectedScratch = new byte[ServerConfig.HASH_RESULT_SIZE];
+  private final MessageDigest digest = Workload.newDigest();
+  private final double intervalNanos;
+  private Selector selector;
+  private int cursor = 0;
+  private long uniqueCounter = 0;
+  private long nanos;
+
+  // Written by main before startLatch is released.
+  volatile long startNanos;
+  volatile long measureStartNanos;
+  volatile long endNanos;
+
+  final LatencyHistogram histogram = new LatencyHistogram(HISTOGRAM_MAX_NANOS);
+
+  // Single writer (this worker); read by the progress reporter.
+  volatile int connected = 0;
+  volatile int connectFailures = 0;
+  volatile long sent = 0;
+  volatile long completed = 0;
+  volatile long busy = 0;
+  volatile long mismatches = 0;
+  long measuredCompleted = 0;
+  long measuredBusy = 0;
+  long unexpectedResponses = 0;
+  long protocolErrors = 0;
+  long connectionsLost = 0;
+  long lostInFlight = 0;
+  long unanswered = 0;
+  long unsent = 0;
+  long maxScheduleLagNanos = 0;
+  volatile Throwable failure;
+
+  ClientWorker(int workerIndex, LoadConfig config, Workload workload, int connectionCount,
+      CountDownLatch connectedLatch, CountDownLatch startLatch) {
+    this.workerIndex = workerIndex;
+    this.config = config;
+    this.workload = workload;
+    this.connectionCount = connectionCount;
+    this.remoteAddress = config.remoteAddress();
+    this.localAddresses = config.localAddresses();
+    this.connectedLatch = connectedLatch;
+    this.startLatch = startLatch;
+    this.connections = new ClientConnection[connectionCount];
+    this.dirty = new ClientConnection[connectionCount];
+    this.random = new SplittableRandom(config.seed * 31 + workerIndex);
+    this.intervalNanos = 1e9 * config.threads / config.rate;
+  }
+
+  @Override
+  public void run() {
+    try (Selector selector = Selector.open()) {
+      this.selector = selector;
+      try {
+        connectAll();
+      } finally {
+        connectedLatch.countDown();
+      }
+      startLatch.await();
+      if (config.mode == LoadConfig.Mode.OPEN) {
+        runOpenLoop();
+      } else {
+        runClosedLoop();
+      }
+      drain();
+    } catch (Throwable t) {
+      failure = t;
+    } finally {
+      for (ClientConnection connection : connections) {
+        if (connection != null) {
+          closeQuietly(connection);
+        }
+      }
+    }
+  }
+
+  private void connectAll() throws IOException {
+    long deadline = System.nanoTime() + config.connectTimeoutNanos;
+    int opened = 0;
+    int pending = 0;
+    while (connected + connectFailures < connectionCount) {
+      while (opened < connectionCount && pending < MAX_PENDING_CONNECTS) {
+        if (openConnection(opened++)) {
+          pending++;
+        }
+      }
+
+      selector.select(100);
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if (key.isValid() && key.isConnectable()) {
+          pending--;
+          finishConnect((ClientConnection) key.attachment());
+        }
+      }
+
+      if (System.nanoTime() - deadline > 0) {
+        for (ClientConnection connection : connections) {
+          if (connection != null && !connection.connected && !connection.closed) {
+            closeQuietly(connection);
+            connectFailures++;
+          }
+        }
+        connectFailures += connectionCount - opened;
+        return;
+      }
+    }
+  }
+
+  // Returns true if the connect is still pending.
+  private boolean openConnection(int index) {
+    SocketChannel channel = null;
+    try {
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      if (!localAddresses.isEmpty()) {
+        int global = index * config.threads + workerIndex;
+        channel.bind(localAddresses.get(global % localAddresses.size()));
+      }
+      ClientConnection connection = new ClientConnection(channel, config);
+      connections[index] = connection;
+      connection.key = channel.register(selector, 0, connection);
+      if (channel.connect(remoteAddress)) {
+        markConnected(connection);
+        return false;
+      }
+      connection.key.interestOps(SelectionKey.OP_CONNECT);
+      return true;
+    } catch (IOException e) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ignored) { /* Ignore */ }
+      }
+      if (connections[index] != null) {
+        connections[index].closed = true;
+      }
+      connectFailures++;
+      return false;
+    }
+  }
+
+  private void finishConnect(ClientConnection connection) {
+    try {
+      if (connection.socketChannel.finishConnect()) {
+        markConnected(connection);
+      }
+    } catch (IOException e) {
+      closeQuietly(connection);
+      connectFailures++;
+    }
+  }
+
+  private void markConnected(ClientConnection connection) {
+    connection.connected = true;
+    connection.key.interestOps(SelectionKey.OP_READ);
+    connected++;
+  }
+
+  private void runClosedLoop() throws IOException {
+    nanos = System.nanoTime();
+    for (ClientConnection connection : connections) {
+      if (connection != null && connection.connected) {
+        topUp(connection);
+      }
+    }
+    flushDirty();
+
+    while ((nanos = System.nanoTime()) - endNanos < 0) {
+      selector.select(100);
+      processSelectedKeys();
+    }
+  }
+
+  private void runOpenLoop() throws IOException {
+    long sequence = 0;
+    long nextIntended = startNanos;
+    while ((nanos = System.nanoTime()) - endNanos < 0) {
+      while (nextIntended - nanos <= 0 && nextIntended - endNanos < 0) {
+        ClientConnection connection = nextAvailable();
+        if (connection == null) {
+          break;
+        }
+        maxScheduleLagNanos = Math.max(maxScheduleLagNanos, nanos - nextIntended);
+        send(connection, nextIntended);
+        nextIntended = startNanos + (long) (++sequence * intervalNanos);
+      }
+      flushDirty();
+
+      long delay = Math.min(nextIntended, endNanos) - System.nanoTime();
+      if (delay >= 1_000_000) {
+        selector.select(delay / 1_000_000);
+      } else {
+        // Sub-millisecond gaps: select(timeout) cannot wait that precisely, so poll.
+        selector.selectNow();
+      }
+      processSelectedKeys();
+    }
+
+    // Scheduled requests that never found a free slot; raise --depth or --connections.
+    long scheduled = (long) Math.ceil((endNanos - startNanos) / intervalNanos);
+    unsent = Math.max(0, scheduled - sequence);
+  }
+
+  private void drain() throws IOException {
+    long deadline = endNanos + DRAIN_TIMEOUT_NANOS;
+    while (inFlight() > 0 && (nanos = System.nanoTime()) - deadline < 0) {
+      selector.select(10);
+      processSelectedKeys();
+    }
+    unanswered = inFlight();
+  }
+
+  private int inFlight() {
+    int total = 0;
+    for (ClientConnection connection : connections) {
+      if (connection != null && !connection.closed) {
+        total += connection.inFlight();
+      }
+    }
+    return total;
+  }
+
+  private ClientConnection nextAvailable() {
+    for (int i = 0; i < connectionCount; i++) {
+      ClientConnection connection = connections[cursor];
+      cursor = cursor + 1 == connectionCount ? 0 : cursor + 1;
+      if (connection != null && connection.connected && connection.hasFreeSlot()
+          && connection.writeBuffer.remaining() >= config.maxRequestFrameSize()) {
+        return connection;
+      }
+    }
+    return null;
+  }
+
+  private void processSelectedKeys() {
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      ClientConnection connection = (ClientConnection) key.attachment();
+      if (!key.isValid() || connection.closed) {
+        continue;
+      }
+      if (key.isReadable()) {
+        read(connection);
+      }
+      if (!connection.closed && key.isValid() && key.isWritable()) {
+        flush(connection);
+        if (config.mode == LoadConfig.Mode.CLOSED) {
+          topUp(connection);
+        }
+      }
+    }
+    flushDirty();
+  }
+
+  private void read(ClientConnection connection) {
+    ByteBuffer buffer = connection.readBuffer;
+    try {
+      int bytesRead = connection.socketChannel.read(buffer);
+      if (bytesRead < 0) {
+        connectionLost(connection);
+        return;
+      }
+      buffer.flip();
+      try {
+        decoder.decode(buffer, view, connection, this);
+      } finally {
+        buffer.compact();
+      }
+    } catch (IOException e) {
+      connectionLost(connection);
+      return;
+    } catch (DecodeException e) {
+      protocolErrors++;
+      connectionLost(connection);
+      return;
+    }
+
+    if (config.mode == LoadConfig.Mode.CLOSED) {
+      topUp(connection);
+    }
+  }
+
+  @Override
+  public void onMessage(ClientConnection connection, MessageView message) {
+    MessageType type = message.getType();
+    if (type != MessageType.HASH_RESPONSE && type != MessageType.SERVER_BUSY) {
+      protocolErrors++;
+      return;
+    }
+
+    long requestId = message.getLong(0);
+    int slot = connection.findSlot(requestId);
+    if (slot < 0) {
+      unexpectedResponses++;
+      return;
+    }
+    long startedAt = connection.slotStartNanos[slot];
+    boolean measured = startedAt - measureStartNanos >= 0 && startedAt - endNanos < 0;
+
+    if (type == MessageType.SERVER_BUSY) {
+      busy++;
+      if (measured) {
+        measuredBusy++;
+      }
+      connection.releaseSlot(slot);
+      return;
+    }
+
+    int sample = connection.slotSamples[slot];
+    if (!verify(connection, slot, sample, message)) {
+      mismatches++;
+    }
+    connection.releaseSlot(slot);
+    completed++;
+    if (measured) {
+      measuredCompleted++;
+      histogram.record(System.nanoTime() - startedAt);
+    }
+  }
+
+  private boolean verify(ClientConnection connection, int slot, int sample, MessageView message) {
+    if (message.getPayloadLength() != ServerConfig.RESPONSE_PAYLOAD_SIZE
+        || message.getInt(ServerConfig.REQUEST_ID_SIZE) != workload.iterations[sample]
+        || message.getInt(ServerConfig.REQUEST_ID_SIZE + ServerConfig.ITERATIONS_SIZE)
+        != ServerConfig.HASH_RESULT_SIZE) {
+      return false;
+    }
+
+    byte[] expected;
+    if (connection.slotPayloads != null) {
+      Workload.chain(digest, connection.slotPayloads[slot], workload.payloads[sample].length,
+          workload.iterations[sample], expectedScratch);
+      expected = expectedScratch;
+    } else {
+      expected = workload.expected[sample];
+    }
+    message.getBytes(ServerConfig.REQUEST_HEADER_SIZE, hashScratch, 0,
+        ServerConfig.HASH_RESULT_SIZE);
+    return Arrays.equals(expected, hashScratch);
+  }
+
+  private void topUp(ClientConnection connection) {
+    if ((nanos - endNanos) >= 0) {
+      return;
+    }
+    while (connection.hasFreeSlot()
+        && connection.writeBuffer.remaining() >= config.maxRequestFrameSize()) {
+      send(connection, System.nanoTime());
+    }
+  }
+
+  // Encodes one request into the connection's write buffer; flushDirty() writes it out.
+  private void send(ClientConnection connection, long startNanos) {
+    int sample = random.nextInt(workload.size());
+    byte[] payload = workload.payloads[sample];
+    long requestId = connection.acquireSlot(startNanos, sample);
+
+    byte[] data = payload;
+    if (connection.slotPayloads != null) {
+      int slot = (int) (requestId & ClientConnection.SLOT_MASK);
+      data = connection.slotPayloads[slot];
+      System.arraycopy(payload, 0, data, 0, payload.length);
+      long nonce = ((long) workerIndex << 48) ^ ++uniqueCounter;
+      for (int i = 0; i < Long.BYTES; i++) {
+        data[i] = (byte) (nonce >>> (i * 8));
+      }
+    }
+
+    ByteBuffer buffer = connection.writeBuffer;
+    buffer.putInt(ServerConfig.REQUEST_HEADER_SIZE + payload.length)
+        .putShort(MessageType.HASH_REQUEST.getValue())
+        .putLong(requestId)
+        .putInt(workload.iterations[sample])
+        .putInt(payload.length)
+        .put(data, 0, payload.length);
+    sent++;
+
+    if (buffer.position() == payload.length + ServerConfig.HEADER_SIZE
+        + ServerConfig.REQUEST_HEADER_SIZE) {
+      dirty[dirtyCount++] = connection;
+    }
+  }
+
+  private void flushDirty() {
+    for (int i = 0; i < dirtyCount; i++) {
+      ClientConnection connection = dirty[i];
+      dirty[i] = null;
+      if (!connection.closed) {
+        flush(connection);
+      }
+    }
+    dirtyCount = 0;
+  }
+
+  private void flush(ClientConnection connection) {
+    ByteBuffer buffer = connection.writeBuffer;
+    if (buffer.position() == 0) {
+      return;
+    }
+    buffer.flip();
+    try {
+      connection.socketChannel.write(buffer);
+    } catch (IOException e) {
+      buffer.clear();
+      connectionLost(connection);
+      return;
+    }
+    boolean pending = buffer.hasRemaining();
+    buffer.compact();
+
+    int interestOps = connection.key.interestOps();
+    int wanted = pending ? interestOps | SelectionKey.OP_WRITE
+        : interestOps & ~SelectionKey.OP_WRITE;
+    if (wanted != interestOps) {
+      connection.key.interestOps(wanted);
+    }
+  }
+
+  private void connectionLost(ClientConnection connection) {
+    connectionsLost++;
+    lostInFlight += connection.inFlight();
+    closeQuietly(connection);
+  }
+
+  private static void closeQuietly(ClientConnection connection) {
+    connection.closed = true;
+    if (connection.key != null) {
+      connection.key.cancel();
+    }
+    try {
+      connection.socketChannel.close();
+    } catch (IOException ignored) { /* Ignore */ }
+  }
+}
@@ -0,0 +1,135 @@
+package main.java.loadgen;
+
+import java.util.Arrays;
+
+// Log-linear histogram in the style of HdrHistogram: values are kept to three significant
+// digits (2048 linear sub-buckets per power of two), so recording is a couple of shifts and
+// an array increment with no allocation. Not thread-safe; each worker records into its own
+// instance and the results are merged with add().
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 10;
+  private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+  private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT << 1;
+  private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+  private static final int LEADING_ZERO_COUNT_BASE = 64 - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+
+  private final long highestTrackableValue;
+  private final long[] counts;
+  private long totalCount = 0;
+  private long clampedCount = 0;
+  private long minValue = Long.MAX_VALUE;
+  private long maxValue = 0;
+  private double sum = 0;
+
+  public LatencyHistogram(long highestTrackableValue) {
+    if (highestTrackableValue < SUB_BUCKET_COUNT) {
+      throw new IllegalArgumentException(
+          "Highest trackable value must be >= " + SUB_BUCKET_COUNT + ": " + highestTrackableValue);
+    }
+    this.highestTrackableValue = highestTrackableValue;
+    this.counts = new long[countsIndex(highestTrackableValue) + 1];
+  }
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    if (value > highestTrackableValue) {
+      value = highestTrackableValue;
+      clampedCount++;
+    }
+    counts[countsIndex(value)]++;
+    totalCount++;
+    sum += value;
+    if (value < minValue) {
+      minValue = value;
+    }
+    if (value > maxValue) {
+      maxValue = value;
+    }
+  }
+
+  public void add(LatencyHistogram other) {
+    if (other.counts.length != counts.length) {
+      throw new IllegalArgumentException("Histograms must share the same range");
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    clampedCount += other.clampedCount;
+    sum += other.sum;
+    minValue = Math.min(minValue, other.minValue);
+    maxValue = Math.max(maxValue, other.maxValue);
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    clampedCount = 0;
+    minValue = Long.MAX_VALUE;
+    maxValue = 0;
+    sum = 0;
+  }
+
+  // Returns the highest value equivalent to the one at the given percentile (0..100], which is
+  // how HdrHistogram reports so that a percentile never understates the recorded latency.
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    double clamped = Math.min(Math.max(percentile, 0.0), 100.0);
+    long countAtPercentile = Math.max(1, (long) Math.ceil(clamped / 100.0 * totalCount));
+    long running = 0;
+    for (int i = 0; i < counts.length; i++) {
+      running += counts[i];
+      if (running >= countAtPercentile) {
+        return Math.min(highestEquivalentValue(valueFromIndex(i)), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getClampedCount() {
+    return clampedCount;
+  }
+
+  public long getMinValue() {
+    return totalCount == 0 ? 0 : minValue;
+  }
+
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  public double getMean() {
+    return totalCount == 0 ? 0 : sum / totalCount;
+  }
+
+  private static int countsIndex(long value) {
+    int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+    int subBucketIndex = (int) (value >>> bucketIndex);
+    return ((bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE)
+        + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+  }
+
+  private static long valueFromIndex(int index) {
+    int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+    int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+    if (bucketIndex < 0) {
+      subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+      bucketIndex = 0;
+    }
+    return (long) subBucketIndex << bucketIndex;
+  }
+
+  private static long highestEquivalentValue(long value) {
+    int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+    return value + (1L << bucketIndex) - 1;
+  }
+}
@@ -0,0 +1,171 @@
+package main.java.loadgen;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import main.java.server.ServerConfig;
+
+// Command-line options, given as --name=value.
+public final class LoadConfig {
+
+  public enum Mode {
+    OPEN,
+    CLOSED
+  }
+
+  static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: loadgen [--name=value ...]",
+      "  --host=localhost          server host",
+      "  --port=" + ServerConfig.DEFAULT_PORT + "               server port",
+      "  --bind=addr[,addr...]     local source addresses, round robin across connections",
+      "                            (each address gets its own ephemeral port range)",
+      "  --connections=1000        connections to hold open (server allows "
+          + ServerConfig.MAX_CONNECTIONS + ")",
+      "  --threads=" + Runtime.getRuntime().availableProcessors()
+          + "                 client selector threads",
+      "  --mode=closed             closed: each connection keeps --depth requests in flight",
+      "                            open: send at --rate regardless of responses",
+      "  --rate=10000              open loop: total requests per second",
+      "  --depth=1                 requests in flight per connection (pipelining depth)",
+      "  --iterations=1:70,10:25,100:5",
+      "                            iteration mix as value:weight pairs",
+      "  --payload=16-128          payload size in bytes, fixed (64) or range (min-max)",
+      "  --samples=1024            distinct payloads with precomputed hashes",
+      "  --unique=false            give every request a unique payload to defeat the server",
+      "                            cache; hashes are then computed by the client",
+      "  --warmup=5                seconds of load before recording",
+      "  --duration=30             seconds of recorded load",
+      "  --connect-timeout=30      seconds allowed to establish all connections",
+      "  --seed=42                 random seed");
+
+  final String host;
+  final int port;
+  final List<String> bindAddresses;
+  final int connections;
+  final int threads;
+  final Mode mode;
+  final long rate;
+  final int depth;
+  final int[] iterationValues;
+  final int[] iterationWeights;
+  final int minPayload;
+  final int maxPayload;
+  final int samples;
+  final boolean unique;
+  final long warmupNanos;
+  final long durationNanos;
+  final long connectTimeoutNanos;
+  final long seed;
+
+  private LoadConfig(Map<String, String> options) {
+    host = take(options, "host", "localhost");
+    port = parseInt(options, "port", ServerConfig.DEFAULT_PORT, 1, 65535);
+    String bind = take(options, "bind", "");
+    bindAddresses = bind.isEmpty() ? List.of() : List.of(bind.split(","));
+    connections = parseInt(options, "connections", 1000, 1, Integer.MAX_VALUE);
+    threads = parseInt(options, "threads", Runtime.getRuntime().availableProcessors(), 1,
+        connections);
+    mode = Mode.valueOf(take(options, "mode", "closed").toUpperCase(Locale.ROOT));
+    rate = parseInt(options, "rate", 10000, 1, Integer.MAX_VALUE);
+    depth = parseInt(options, "depth", 1, 1, 65535);
+
+    String[] mix = take(options, "iterations", "1:70,10:25,100:5").split(",");
+    iterationValues = new int[mix.length];
+    iterationWeights = new int[mix.length];
+    for (int i = 0; i < mix.length; i++) {
+      String[] pair = mix[i].split(":");
+      iterationValues[i] = checkRange("iterations", Integer.parseInt(pair[0].trim()), 1,
+          ServerConfig.MAX_ITERATIONS);
+      iterationWeights[i] = pair.length > 1
+          ? checkRange("iterations weight", Integer.parseInt(pair[1].trim()), 1, 1_000_000) : 1;
+    }
+
+    String payload = take(options, "payload", "16-128");
+    int dash = payload.indexOf('-');
+    minPayload = checkRange("payload",
+        Integer.parseInt((dash < 0 ? payload : payload.substring(0, dash)).trim()), 0,
+        ServerConfig.MAX_DATA_LENGTH);
+    maxPayload = checkRange("payload",
+        Integer.parseInt((dash < 0 ? payload : payload.substring(dash + 1)).trim()), minPayload,
+        ServerConfig.MAX_DATA_LENGTH);
+
+    samples = parseInt(options, "samples", 1024, 1, 1 << 20);
+    unique = Boolean.parseBoolean(take(options, "unique", "false"));
+    if (unique && minPayload < Long.BYTES) {
+      throw new IllegalArgumentException("--unique needs payloads of at least 8 bytes");
+    }
+    warmupNanos = parseInt(options, "warmup", 5, 0, 86_400) * 1_000_000_000L;
+    durationNanos = parseInt(options, "duration", 30, 1, 86_400) * 1_000_000_000L;
+    connectTimeoutNanos = parseInt(options, "connect-timeout", 30, 1, 3600) * 1_000_000_000L;
+    seed = Long.parseLong(take(options, "seed", "42"));
+
+    if (!options.isEmpty()) {
+      throw new IllegalArgumentException("Unknown options: " + options.keySet());
+    }
+  }
+
+  public static LoadConfig parse(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+        throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+      }
+      int eq = arg.indexOf('=');
+      options.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    return new LoadConfig(options);
+  }
+
+  InetSocketAddress remoteAddress() {
+    return new InetSocketAddress(host, port);
+  }
+
+  List<InetSocketAddress> localAddresses() {
+    List<InetSocketAddress> addresses = new ArrayList<>(bindAddresses.size());
+    for (String address : bindAddresses) {
+      addresses.add(new InetSocketAddress(address.trim(), 0));
+    }
+    return addresses;
+  }
+
+  // Largest HASH_REQUEST frame this configuration can produce.
+  int maxRequestFrameSize() {
+    return ServerConfig.HEADER_SIZE + ServerConfig.REQUEST_HEADER_SIZE + maxPayload;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder mix = new StringBuilder();
+    for (int i = 0; i < iterationValues.length; i++) {
+      mix.append(i == 0 ? "" : ",").append(iterationValues[i]).append(':')
+          .append(iterationWeights[i]);
+    }
+    return "target=" + host + ":" + port + ", connections=" + connections + ", threads=" + threads
+        + ", mode=" + mode + (mode == Mode.OPEN ? ", rate=" + rate + "/s" : "") + ", depth="
+        + depth + ", iterations=" + mix + ", payload=" + minPayload + "-" + maxPayload
+        + (unique ? ", unique payloads" : ", samples=" + samples) + ", warmup="
+        + warmupNanos / 1_000_000_000L + "s, duration=" + durationNanos / 1_000_000_000L + "s";
+  }
+
+  private static String take(Map<String, String> options, String name, String defaultValue) {
+    String value = options.remove(name);
+    return value == null ? defaultValue : value;
+  }
+
+  private static int parseInt(Map<String, String> options, String name, int defaultValue,
+      int min, int max) {
+    return checkRange(name, Integer.parseInt(take(options, name, Integer.toString(defaultValue))),
+        min, max);
+  }
+
+  private static int checkRange(String name, int value, int min, int max) {
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(
+          "--" + name + " must be in [" + min + ", " + max + "]: " + value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,222 @@
+package main.java.loadgen;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Drives JAMServer with HASH_REQUEST traffic and reports throughput and latency percentiles.
+// Every response hash is checked against the expected chain.
+public final class LoadGenerator {
+
+  private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99};
+
+  private final LoadConfig config;
+  private final ClientWorker[] workers;
+  private final Thread[] threads;
+  private final CountDownLatch connectedLatch;
+  private final CountDownLatch startLatch = new CountDownLatch(1);
+
+  public LoadGenerator(LoadConfig config) {
+    this.config = config;
+    Workload workload = new Workload(config);
+    this.workers = new ClientWorker[config.threads];
+    this.threads = new Thread[config.threads];
+    this.connectedLatch = new CountDownLatch(config.threads);
+    for (int i = 0; i < config.threads; i++) {
+      int share = config.connections / config.threads
+          + (i < config.connections % config.threads ? 1 : 0);
+      workers[i] = new ClientWorker(i, config, workload, share, connectedLatch, startLatch);
+      threads[i] = new Thread(workers[i], "loadgen-worker-" + i);
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    if (args.length == 1 && args[0].equals("--help")) {
+      System.out.println(LoadConfig.USAGE);
+      return;
+    }
+    LoadConfig config;
+    try {
+      config = LoadConfig.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(LoadConfig.USAGE);
+      System.exit(2);
+      return;
+    }
+
+    boolean clean = new LoadGenerator(config).run();
+    System.exit(clean ? 0 : 1);
+  }
+
+  // Returns false if any response failed verification or a worker died.
+  public boolean run() throws InterruptedException {
+    System.out.println("LoadGenerator: " + config);
+
+    long connectStart = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    while (!connectedLatch.await(1, TimeUnit.SECONDS)) {
+      System.out.println("Connecting: " + sumConnected() + "/" + config.connections);
+    }
+    int connected = sumConnected();
+    int failed = 0;
+    for (ClientWorker worker : workers) {
+      failed += worker.connectFailures;
+    }
+    System.out.printf(Locale.ROOT, "Connected %d/%d in %.1fs (%d failed)%n", connected,
+        config.connections, (System.nanoTime() - connectStart) / 1e9, failed);
+    if (connected == 0) {
+      startLatch.countDown();
+      joinWorkers();
+      System.err.println("No connections established to " + config.remoteAddress());
+      return false;
+    }
+
+    long start = System.nanoTime() + 10_000_000;
+    long measureStart = start + config.warmupNanos;
+    long end = measureStart + config.durationNanos;
+    for (ClientWorker worker : workers) {
+      worker.startNanos = start;
+      worker.measureStartNanos = measureStart;
+      worker.endNanos = end;
+    }
+    startLatch.countDown();
+
+    reportProgress(start, measureStart, end);
+    joinWorkers();
+    return report();
+  }
+
+  private void reportProgress(long start, long measureStart, long end)
+      throws InterruptedException {
+    long lastCompleted = 0;
+    long lastNanos = start;
+    while (true) {
+      long now = System.nanoTime();
+      long sleep = Math.min(1_000_000_000L, end - now);
+      if (sleep <= 0) {
+        return;
+      }
+      TimeUnit.NANOSECONDS.sleep(sleep);
+
+      now = System.nanoTime();
+      long completed = 0;
+      long sent = 0;
+      long busy = 0;
+      long mismatches = 0;
+      for (ClientWorker worker : workers) {
+        completed += worker.completed;
+        sent += worker.sent;
+        busy += worker.busy;
+        mismatches += worker.mismatches;
+      }
+      double rate = (completed - lastCompleted) * 1e9 / (now - lastNanos);
+      System.out.printf(Locale.ROOT, "[%5.1fs %s] %,.0f resp/s, sent=%d, completed=%d, busy=%d,"
+              + " mismatches=%d%n", (now - start) / 1e9, now < measureStart ? "warmup" : "run",
+          rate, sent, completed, busy, mismatches);
+      lastCompleted = completed;
+      lastNanos = now;
+    }
+  }
+
+  private void joinWorkers() throws InterruptedException {
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private boolean report() {
+    LatencyHistogram histogram = new LatencyHistogram(ClientWorker.HISTOGRAM_MAX_NANOS);
+    long completed = 0;
+    long busy = 0;
+    long mismatches = 0;
+    long unexpected = 0;
+    long protocolErrors = 0;
+    long connectionsLost = 0;
+    long lostInFlight = 0;
+    long unanswered = 0;
+    long unsent = 0;
+    long maxLag = 0;
+    boolean workerFailed = false;
+    for (ClientWorker worker : workers) {
+      histogram.add(worker.histogram);
+      completed += worker.measuredCompleted;
+      busy += worker.measuredBusy;
+      mismatches += worker.mismatches;
+      unexpected += worker.unexpectedResponses;
+      protocolErrors += worker.protocolErrors;
+      connectionsLost += worker.connectionsLost;
+      lostInFlight += worker.lostInFlight;
+      unanswered += worker.unanswered;
+      unsent += worker.unsent;
+      maxLag = Math.max(maxLag, worker.maxScheduleLagNanos);
+      if (worker.failure != null) {
+        workerFailed = true;
+        System.err.println("Worker failed: " + worker.failure);
+        worker.failure.printStackTrace();
+      }
+    }
+
+    double seconds = config.durationNanos / 1e9;
+    System.out.println();
+    System.out.println("---- Results (" + config.mode.name().toLowerCase(Locale.ROOT)
+        + " loop, " + (long) seconds + "s measured) ----");
+    if (config.mode == LoadConfig.Mode.OPEN) {
+      System.out.printf(Locale.ROOT, "Offered:     %,d requests/s%n", config.rate);
+    }
+    System.out.printf(Locale.ROOT, "Throughput:  %,.1f responses/s (%d responses)%n",
+        completed / seconds, completed);
+    if (busy > 0) {
+      System.out.printf(Locale.ROOT, "Rejected:    %,.1f SERVER_BUSY/s (%d)%n", busy / seconds,
+          busy);
+    }
+    System.out.printf(Locale.ROOT, "Latency:     min=%s mean=%s max=%s%n",
+        formatNanos(histogram.getMinValue()), formatNanos((long) histogram.getMean()),
+        formatNanos(histogram.getMaxValue()));
+    StringBuilder percentiles = new StringBuilder("Percentiles:");
+    for (double percentile : PERCENTILES) {
+      percentiles.append(String.format(Locale.ROOT, " p%s=%s", formatPercentile(percentile),
+          formatNanos(histogram.getValueAtPercentile(percentile))));
+    }
+    System.out.println(percentiles);
+    if (config.mode == LoadConfig.Mode.OPEN) {
+      System.out.println("Client lag:  max " + formatNanos(maxLag)
+          + " behind schedule" + (unsent > 0 ? ", " + unsent + " requests never sent"
+          + " (no free slot; raise --depth or --connections)" : ""));
+    }
+    System.out.println("Errors:      mismatches=" + mismatches + ", unexpected=" + unexpected
+        + ", protocol=" + protocolErrors + ", connectionsLost=" + connectionsLost
+        + " (in flight " + lostInFlight + "), unanswered=" + unanswered);
+    if (histogram.getClampedCount() > 0) {
+      System.out.println("Note: " + histogram.getClampedCount()
+          + " latencies exceeded the histogram range and were clamped");
+    }
+
+    return !workerFailed && mismatches == 0 && unexpected == 0 && protocolErrors == 0;
+  }
+
+  private int sumConnected() {
+    int connected = 0;
+    for (ClientWorker worker : workers) {
+      connected += worker.connected;
+    }
+    return connected;
+  }
+
+  private static String formatPercentile(double percentile) {
+    return percentile == Math.rint(percentile) ? Long.toString((long) percentile)
+        : Double.toString(percentile);
+  }
+
+  private static String formatNanos(long nanos) {
+    if (nanos < 1_000_000) {
+      return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+    }
+    if (nanos < 1_000_000_000) {
+      return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+    }
+    return String.format(Locale.ROOT, "%.3fs", nanos / 1e9);
+  }
+}
@@ -0,0 +1,74 @@
+package main.java.loadgen;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+import main.java.server.ServerConfig;
+
+// A fixed pool of requests drawn from the configured iteration mix and payload sizes, with the
+// expected hash chain of each one computed up front so that verifying a response is a compare.
+final class Workload {
+
+  final byte[][] payloads;
+  final int[] iterations;
+  final byte[][] expected;
+
+  Workload(LoadConfig config) {
+    SplittableRandom random = new SplittableRandom(config.seed);
+    int totalWeight = 0;
+    for (int weight : config.iterationWeights) {
+      totalWeight += weight;
+    }
+
+    int count = config.samples;
+    payloads = new byte[count][];
+    iterations = new int[count];
+    expected = config.unique ? null : new byte[count][];
+    MessageDigest digest = newDigest();
+    for (int i = 0; i < count; i++) {
+      int size = config.minPayload == config.maxPayload ? config.minPayload
+          : random.nextInt(config.minPayload, config.maxPayload + 1);
+      payloads[i] = new byte[size];
+      random.nextBytes(payloads[i]);
+
+      int pick = random.nextInt(totalWeight);
+      int choice = 0;
+      while (pick >= config.iterationWeights[choice]) {
+        pick -= config.iterationWeights[choice++];
+      }
+      iterations[i] = config.iterationValues[choice];
+
+      if (expected != null) {
+        expected[i] = new byte[ServerConfig.HASH_RESULT_SIZE];
+        chain(digest, payloads[i], payloads[i].length, iterations[i], expected[i]);
+      }
+    }
+  }
+
+  int size() {
+    return payloads.length;
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  // Same chain as the server: round 1 hashes the payload, each later round the previous hash.
+  static void chain(MessageDigest digest, byte[] data, int length, int iterations, byte[] out) {
+    try {
+      digest.update(data, 0, length);
+      digest.digest(out, 0, ServerConfig.HASH_RESULT_SIZE);
+      for (int i = 1; i < iterations; i++) {
+        digest.update(out, 0, ServerConfig.HASH_RESULT_SIZE);
+        digest.digest(out, 0, ServerConfig.HASH_RESULT_SIZE);
+      }
+    } catch (DigestException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package main.java.channel;
+
+// Tells in-flight work that nobody wants its result any more. Hash loops poll isCancelled()
+// between rounds, which costs one or two volatile reads instead of asking the channel about its
+// socket. A channel's close token is the parent of every request token on it, so closing the
+// channel cancels them all without visiting each one.
+public final class CancellationToken {
+
+  private final CancellationToken parent;
+  private final long deadlineNanos;
+  private final boolean hasDeadline;
+  private volatile boolean cancelled = false;
+  private volatile boolean released = false;
+
+  CancellationToken() {
+    this(null, 0, false);
+  }
+
+  CancellationToken(CancellationToken parent, long deadlineNanos, boolean hasDeadline) {
+    this.parent = parent;
+    this.deadlineNanos = deadlineNanos;
+    this.hasDeadline = hasDeadline;
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (parent != null && parent.cancelled);
+  }
+
+  // True if the token was cancelled because its channel closed, so there is nobody to answer.
+  public boolean isChannelClosed() {
+    return parent != null ? parent.cancelled : cancelled;
+  }
+
+  public boolean isExpired(long nowNanos) {
+    return hasDeadline && nowNanos - deadlineNanos >= 0;
+  }
+
+  void cancel() {
+    cancelled = true;
+  }
+
+  // Called once the request has been answered; it can no longer be cancelled by id. Only
+  // marks the token, so any thread may call it; InFlightRequests drops it on its own thread.
+  public void release() {
+    released = true;
+  }
+
+  boolean isReleased() {
+    return released;
+  }
+}
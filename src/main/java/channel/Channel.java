@@ -0,0 +1,39 @@
+package main.java.channel;
+
+import java.io.Closeable;
+import main.java.server.InlineExecutionController;
+import main.java.util.buffer.PooledBuffer;
+
+// A client connection as seen by the handlers, independent of the transport driving it.
+// Reads are delivered on the channel's own I/O thread; queueResponse(s) may be called from
+// any thread and take ownership of the buffers.
+public interface Channel extends Closeable {
+
+  long getChannelId();
+
+  boolean isActive();
+
+  void queueResponse(PooledBuffer buffer);
+
+  void queueResponses(PooledBuffer[] buffers, int count);
+
+  // Called on the I/O thread for every request that will get a response, before that response
+  // (or SERVER_BUSY) is queued; each queued response releases exactly one.
+  void requestAccepted();
+
+  // Cancellation tokens for requests on this channel; closing the channel cancels them all.
+  InFlightRequests inFlightRequests();
+
+  // Controller for work run inline on the I/O thread; only valid on that thread.
+  InlineExecutionController getInlineController();
+
+  // Per-connection handler state, like SelectionKey.attach(); only valid on the I/O thread.
+  Object attachment();
+
+  void attach(Object attachment);
+
+  void closeAsync();
+
+  @Override
+  void close();
+}
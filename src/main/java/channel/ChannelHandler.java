@@ -1,48 +1,86 @@
 package main.java.channel;
 
 import java.nio.ByteBuffer;
-import java.util.List;
+import main.java.handler.HashBatchRequestHandler;
 import main.java.handler.HashRequestHandler;
-import main.java.message.Message;
+import main.java.handler.HashStreamHandler;
+import main.java.handler.StatsRequestHandler;
 import main.java.message.MessageDecoder;
 import main.java.message.MessageDecoder.DecodeException;
-import main.java.server.NioChannel;
+import main.java.message.MessageDecoder.FrameListener;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerMetrics;
+import main.java.util.log.RateLimitedLog;
 
-public class ChannelHandler {
+public class ChannelHandler implements FrameListener<Channel> {
+
+  private static final RateLimitedLog DECODE_LOG = new RateLimitedLog("Channel decode error");
+  private static final RateLimitedLog ERROR_LOG = new RateLimitedLog("Channel processing error");
+
+  private static final ThreadLocal<MessageView> MESSAGE_VIEW = ThreadLocal.withInitial(
+      MessageView::new);
 
   private final MessageDecoder decoder;
   private final HashRequestHandler businessHandler;
+  private final StatsRequestHandler statsHandler;
+  private final HashBatchRequestHandler batchHandler;
+  private final HashStreamHandler streamHandler;
 
-  public ChannelHandler(MessageDecoder decoder, HashRequestHandler businessHandler) {
+  public ChannelHandler(MessageDecoder decoder, HashRequestHandler businessHandler,
+      StatsRequestHandler statsHandler, HashBatchRequestHandler batchHandler,
+      HashStreamHandler streamHandler) {
     this.decoder = decoder;
     this.businessHandler = businessHandler;
+    this.statsHandler = statsHandler;
+    this.batchHandler = batchHandler;
+    this.streamHandler = streamHandler;
   }
 
-  public void channelRead(NioChannel channel, ByteBuffer buffer) {
+  public void channelRead(Channel channel, ByteBuffer buffer) {
     try {
-      List<Message> messages = decoder.decode(buffer);
-      for (Message message : messages) {
-        fireMessageReceived(channel, message);
+      int frames = decoder.decode(buffer, MESSAGE_VIEW.get(), channel, this);
+      if (frames > 0) {
+        ServerMetrics.FRAMES_DECODED.add(frames);
       }
     } catch (DecodeException e) {
-      System.err.println("Channel #" + channel.getChannelId() + " decode error: " + e.getMessage());
+      ServerMetrics.DECODE_ERRORS.increment();
+      DECODE_LOG.log("Channel #" + channel.getChannelId() + " decode error: " + e.getMessage());
       channel.close();
     } catch (Exception e) {
-      System.err.println(
-          "Channel #" + channel.getChannelId() + " processing error: " + e.getMessage());
-      e.printStackTrace();
+      ERROR_LOG.log("Channel #" + channel.getChannelId() + " processing error: " + e.getMessage(),
+          e);
       channel.close();
+    } finally {
+      businessHandler.channelReadComplete(channel);
     }
   }
 
-  protected void fireMessageReceived(NioChannel channel, Message message) {
-    businessHandler.handle(message, channel);
+  @Override
+  public void onMessage(Channel channel, MessageView message) {
+    fireMessageReceived(channel, message);
+  }
+
+  protected void fireMessageReceived(Channel channel, MessageView message) {
+    MessageType type = message.getType();
+    if (type == MessageType.STATS_REQUEST) {
+      statsHandler.handle(message, channel);
+    } else if (type == MessageType.CANCEL_REQUEST) {
+      businessHandler.handleCancel(message, channel);
+    } else if (type == MessageType.HASH_BATCH_REQUEST) {
+      batchHandler.handle(message, channel);
+    } else if (type == MessageType.HASH_STREAM_BEGIN || type == MessageType.HASH_STREAM_CHUNK
+        || type == MessageType.HASH_STREAM_END) {
+      streamHandler.handle(message, channel);
+    } else {
+      businessHandler.handle(message, channel);
+    }
   }
 
-  public void exceptionCaught(NioChannel channel, Throwable cause) {
-    System.err.println(
-        "Exception caught for Channel #" + channel.getChannelId() + ": " + cause.getMessage());
-    cause.printStackTrace();
+  public void exceptionCaught(Channel channel, Throwable cause) {
+    ERROR_LOG.log(
+        "Exception caught for Channel #" + channel.getChannelId() + ": " + cause.getMessage(),
+        cause);
     channel.close();
   }
 }
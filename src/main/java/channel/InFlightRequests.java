@@ -0,0 +1,144 @@
+package main.java.channel;
+
+// Cancellation state of one connection. Plain HASH_REQUESTs share the close token; only
+// requests that can be cancelled by id get their own token and a table entry.
+//
+// The table is keyed by the primitive id and touched only on the channel's I/O thread, which
+// registers and cancels requests. Whichever thread answers a request calls
+// CancellationToken.release(), which only marks the token; the I/O thread drops marked entries
+// when it next looks them up or needs room.
+public final class InFlightRequests {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final CancellationToken closeToken = new CancellationToken();
+  // Open addressing with linear probing; a null token marks a free slot. Allocated on the first
+  // register(), since most connections never send a cancellable request.
+  private long[] ids;
+  private CancellationToken[] tokens;
+  private int count = 0;
+
+  public CancellationToken closeToken() {
+    return closeToken;
+  }
+
+  // deadlineNanos is a System.nanoTime() value, ignored unless hasDeadline. A later request
+  // reusing an id in flight takes over the id; the earlier one can then only end by itself.
+  public CancellationToken register(long requestId, long deadlineNanos, boolean hasDeadline) {
+    CancellationToken token = new CancellationToken(closeToken, deadlineNanos, hasDeadline);
+    int slot = find(requestId);
+    if (slot >= 0) {
+      tokens[slot] = token;
+      return token;
+    }
+    if (tokens == null || (count + 1) * 2 > tokens.length) {
+      rebuild();
+    }
+    insert(requestId, token);
+    count++;
+    return token;
+  }
+
+  // Returns false if no cancellable request with this id is in flight.
+  public boolean cancel(long requestId) {
+    int slot = find(requestId);
+    if (slot < 0) {
+      return false;
+    }
+    CancellationToken token = tokens[slot];
+    removeAt(slot);
+    if (token.isReleased()) {
+      return false;
+    }
+    token.cancel();
+    return true;
+  }
+
+  // Safe from any thread: it leaves the table alone, and every request token sees the close
+  // through its parent.
+  public void closeAll() {
+    closeToken.cancel();
+  }
+
+  // Cancellable requests registered and not yet answered or cancelled. I/O thread only.
+  public int size() {
+    int live = 0;
+    if (tokens != null) {
+      for (CancellationToken token : tokens) {
+        if (token != null && !token.isReleased()) {
+          live++;
+        }
+      }
+    }
+    return live;
+  }
+
+  private static int indexOf(long requestId, int mask) {
+    return (int) ((requestId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+  private int find(long requestId) {
+    if (tokens == null) {
+      return -1;
+    }
+    int mask = tokens.length - 1;
+    for (int i = indexOf(requestId, mask); tokens[i] != null; i = (i + 1) & mask) {
+      if (ids[i] == requestId) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void insert(long requestId, CancellationToken token) {
+    int mask = tokens.length - 1;
+    int i = indexOf(requestId, mask);
+    while (tokens[i] != null) {
+      i = (i + 1) & mask;
+    }
+    ids[i] = requestId;
+    tokens[i] = token;
+  }
+
+  // Backward-shift deletion: later entries of the probe run move into the hole, so lookups
+  // never need tombstones.
+  private void removeAt(int slot) {
+    int mask = tokens.length - 1;
+    int hole = slot;
+    for (int i = (slot + 1) & mask; tokens[i] != null; i = (i + 1) & mask) {
+      int home = indexOf(ids[i], mask);
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        ids[hole] = ids[i];
+        tokens[hole] = tokens[i];
+        hole = i;
+      }
+    }
+    tokens[hole] = null;
+    count--;
+  }
+
+  // Drops released entries and resizes so the live ones fill at most a quarter of the table,
+  // which leaves room for at least as many inserts before the next rebuild.
+  private void rebuild() {
+    long[] oldIds = ids;
+    CancellationToken[] oldTokens = tokens;
+    int live = oldTokens == null ? 0 : size();
+    int capacity = INITIAL_CAPACITY;
+    while (capacity < (live + 1) * 4) {
+      capacity <<= 1;
+    }
+    ids = new long[capacity];
+    tokens = new CancellationToken[capacity];
+    count = 0;
+    if (oldTokens == null) {
+      return;
+    }
+    for (int i = 0; i < oldTokens.length; i++) {
+      CancellationToken token = oldTokens[i];
+      if (token != null && !token.isReleased()) {
+        insert(oldIds[i], token);
+        count++;
+      }
+    }
+  }
+}
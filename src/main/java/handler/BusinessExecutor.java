@@ -1,33 +1,139 @@
 package main.java.handler;
 
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import main.java.server.ServerConfig;
+import main.java.server.ServerMetrics;
 import main.java.util.NioThreadFactory;
+import main.java.util.metrics.MetricsRegistry;
 
 public class BusinessExecutor implements AutoCloseable {
 
+  public enum Mode {
+    FIXED_POOL, VIRTUAL_THREAD;
+
+    public static Mode parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException | NullPointerException e) {
+        throw new IllegalArgumentException("Unknown business executor mode: " + value);
+      }
+    }
+  }
+
+  // FIFO runs admitted tasks in arrival order. FAIR queues them per channel and serves channels
+  // by deficit round robin weighted by task cost (see FairTaskQueue).
+  public enum Scheduling {
+    FIFO, FAIR;
+
+    public static Scheduling parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException | NullPointerException e) {
+        throw new IllegalArgumentException("Unknown business scheduling: " + value);
+      }
+    }
+  }
+
+  private final Mode mode;
+  private final Scheduling scheduling;
+  private final FairTaskQueue fairQueue;
   private final ExecutorService executorService;
+  private final Semaphore concurrencyLimit;
   private final int shutdownTimeoutSeconds;
+  private final int maxQueueDepth;
+  private final CoDelController coDel;
+  private final AtomicInteger queueDepth = new AtomicInteger(0);
+  private final LongAdder admissionRejections = new LongAdder();
+  private final LongAdder coDelDrops = new LongAdder();
+  private final LongAdder dequeued = new LongAdder();
+  private final LongAdder totalSojournNanos = new LongAdder();
+  private final AtomicLong maxSojournNanos = new AtomicLong(0);
   private volatile boolean shutdown = false;
 
   public BusinessExecutor() {
-    this(ServerConfig.BUSINESS_THREAD_COUNT, ServerConfig.DEFAULT_SHUTDOWN_TIMEOUT_SECONDS);
+    this(Mode.parse(ServerConfig.BUSINESS_EXECUTOR_MODE),
+        Scheduling.parse(ServerConfig.BUSINESS_SCHEDULING), ServerConfig.BUSINESS_THREAD_COUNT,
+        ServerConfig.BUSINESS_VIRTUAL_MAX_CONCURRENCY,
+        ServerConfig.DEFAULT_SHUTDOWN_TIMEOUT_SECONDS);
   }
 
   public BusinessExecutor(int threadCount, int shutdownTimeoutSeconds) {
+    this(Mode.FIXED_POOL, Scheduling.FIFO, threadCount, 0, shutdownTimeoutSeconds);
+  }
+
+  // threadCount sizes the fixed pool; maxConcurrency (0 = unbounded) caps virtual-thread mode.
+  // Fair scheduling only reorders tasks that wait, so it needs a pool or a concurrency cap.
+  public BusinessExecutor(Mode mode, Scheduling scheduling, int threadCount, int maxConcurrency,
+      int shutdownTimeoutSeconds) {
+    if (mode == null) {
+      throw new IllegalArgumentException("Mode cannot be null");
+    }
+    if (scheduling == null) {
+      throw new IllegalArgumentException("Scheduling cannot be null");
+    }
     if (threadCount <= 0) {
       throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
     }
+    if (maxConcurrency < 0) {
+      throw new IllegalArgumentException(
+          "Max concurrency must be non-negative: " + maxConcurrency);
+    }
     if (shutdownTimeoutSeconds < 0) {
       throw new IllegalArgumentException(
           "Shutdown timeout must be non-negative: " + shutdownTimeoutSeconds);
     }
 
+    this.mode = mode;
+    this.scheduling = scheduling;
+    this.fairQueue = scheduling == Scheduling.FAIR ? new FairTaskQueue(
+        ServerConfig.BUSINESS_FAIR_QUANTUM, ServerConfig.BUSINESS_FAIR_MAX_WAIT_NANOS) : null;
     this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
-    this.executorService = Executors.newFixedThreadPool(threadCount,
-        new NioThreadFactory("business-pool"));
+    this.maxQueueDepth = ServerConfig.BUSINESS_QUEUE_MAX_DEPTH;
+    this.coDel = new CoDelController(ServerConfig.BUSINESS_QUEUE_TARGET_DELAY_NANOS,
+        ServerConfig.BUSINESS_QUEUE_INTERVAL_NANOS);
+    if (mode == Mode.VIRTUAL_THREAD) {
+      this.executorService = Executors.newThreadPerTaskExecutor(
+          NioThreadFactory.virtual("business-virtual"));
+      this.concurrencyLimit = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    } else {
+      this.executorService = Executors.newFixedThreadPool(threadCount,
+          new NioThreadFactory("business-pool"));
+      this.concurrencyLimit = null;
+    }
+    registerMetrics();
+  }
+
+  private void registerMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    registry.gauge("jam_business_queue_depth", "Tasks admitted but not yet started.",
+        queueDepth::get);
+    registry.counterFunction("jam_business_admission_rejections_total",
+        "Tasks refused because the business queue was full.", admissionRejections::sum);
+    registry.counterFunction("jam_business_codel_drops_total",
+        "Queued tasks shed by CoDel because queueing delay stayed above target.",
+        coDelDrops::sum);
+    if (fairQueue != null) {
+      registry.gauge("jam_business_fair_flows", "Channels with tasks waiting in the fair queue.",
+          fairQueue::getFlowCount);
+      registry.counterFunction("jam_business_fair_promotions_total",
+          "Tasks run out of turn because they waited longer than the starvation limit.",
+          fairQueue::getPromotionCount);
+    }
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public Scheduling getScheduling() {
+    return scheduling;
   }
 
   public void submit(Runnable task) {
@@ -38,12 +144,124 @@ public class BusinessExecutor implements AutoCloseable {
       throw new IllegalStateException("BusinessExecutor is already shutdown");
     }
     try {
-      executorService.submit(task);
+      executorService.submit(concurrencyLimit == null ? task : () -> runLimited(task));
     } catch (Exception e) {
       throw new IllegalStateException("Failed to submit task: " + e.getMessage(), e);
     }
   }
 
+  // Returns false, without queueing, when the admission queue is full; the caller answers the
+  // request itself. Queued tasks may still be shed by CoDel when they are dequeued.
+  public boolean trySubmit(BusinessTask task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null");
+    }
+    if (shutdown) {
+      return false;
+    }
+    if (queueDepth.incrementAndGet() > maxQueueDepth) {
+      queueDepth.decrementAndGet();
+      admissionRejections.increment();
+      return false;
+    }
+
+    long enqueuedAt = System.nanoTime();
+    if (fairQueue != null) {
+      return submitFair(task, enqueuedAt);
+    }
+    try {
+      submit(() -> runAdmitted(task, enqueuedAt));
+      return true;
+    } catch (IllegalStateException e) {
+      queueDepth.decrementAndGet();
+      return false;
+    }
+  }
+
+  // The executor still sees one runnable per admitted task, but each one runs whichever task
+  // the fair queue hands out when it starts, not necessarily the task it was submitted for.
+  private boolean submitFair(BusinessTask task, long enqueuedAt) {
+    fairQueue.offer(task, enqueuedAt);
+    try {
+      submit(this::runNextFair);
+      return true;
+    } catch (IllegalStateException e) {
+      // Some queued task has lost its runnable; shed one so every queued task is answered.
+      FairTaskQueue.Entry entry = fairQueue.poll(System.nanoTime());
+      if (entry != null) {
+        queueDepth.decrementAndGet();
+        entry.task.shed();
+      }
+      return true;
+    }
+  }
+
+  private void runNextFair() {
+    FairTaskQueue.Entry entry = fairQueue.poll(System.nanoTime());
+    if (entry != null) {
+      runAdmitted(entry.task, entry.enqueuedAt);
+    }
+  }
+
+  private void runAdmitted(BusinessTask task, long enqueuedAt) {
+    queueDepth.decrementAndGet();
+    long now = System.nanoTime();
+    long sojourn = now - enqueuedAt;
+    dequeued.increment();
+    totalSojournNanos.add(sojourn);
+    maxSojournNanos.accumulateAndGet(sojourn, Math::max);
+    ServerMetrics.BUSINESS_QUEUE_WAIT.recordNanos(sojourn);
+
+    if (coDel.shouldDrop(sojourn, now)) {
+      coDelDrops.increment();
+      task.shed();
+      return;
+    }
+    task.run();
+  }
+
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public long getAdmissionRejectionCount() {
+    return admissionRejections.sum();
+  }
+
+  public long getCoDelDropCount() {
+    return coDelDrops.sum();
+  }
+
+  public long getMeanSojournNanos() {
+    long count = dequeued.sum();
+    return count == 0 ? 0 : totalSojournNanos.sum() / count;
+  }
+
+  public long getMaxSojournNanos() {
+    return maxSojournNanos.get();
+  }
+
+  public String statsSummary() {
+    return "BusinessExecutor[mode=" + mode + ", scheduling=" + scheduling + ", queueDepth="
+        + getQueueDepth() + ", admissionRejections=" + getAdmissionRejectionCount() + ", coDelDrops="
+        + getCoDelDropCount() + ", meanSojournUs=" + getMeanSojournNanos() / 1000
+        + ", maxSojournUs=" + getMaxSojournNanos() / 1000 + "]";
+  }
+
+  private void runLimited(Runnable task) {
+    try {
+      concurrencyLimit.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      task.run();
+    } finally {
+      concurrencyLimit.release();
+    }
+  }
+
   @Override
   public void close() {
     if (shutdown) {
@@ -0,0 +1,47 @@
+package main.java.handler;
+
+// A unit of business work that can be shed under overload instead of run.
+public interface BusinessTask extends Runnable {
+
+  // Invoked instead of run() when the task is dropped after being queued.
+  void shed();
+
+  // Estimated work in SHA-256 compression-function calls, charged by the fair scheduler.
+  default int cost() {
+    return 1;
+  }
+
+  // Tasks with the same flow (normally their channel) queue behind each other; different flows
+  // take turns. null puts the task in a shared default flow.
+  default Object flow() {
+    return null;
+  }
+
+  static BusinessTask of(Runnable work, Runnable onShed) {
+    return of(work, onShed, null, 1);
+  }
+
+  static BusinessTask of(Runnable work, Runnable onShed, Object flow, int cost) {
+    return new BusinessTask() {
+      @Override
+      public void run() {
+        work.run();
+      }
+
+      @Override
+      public void shed() {
+        onShed.run();
+      }
+
+      @Override
+      public int cost() {
+        return cost;
+      }
+
+      @Override
+      public Object flow() {
+        return flow;
+      }
+    };
+  }
+}
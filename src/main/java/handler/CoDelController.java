@@ -0,0 +1,57 @@
+package main.java.handler;
+
+// CoDel (Controlled Delay) drop decision on queue sojourn time: once sojourn has stayed above
+// target for a full interval, drop one task and keep dropping at interval / sqrt(count) until
+// sojourn falls below target again.
+final class CoDelController {
+
+  private final long targetNanos;
+  private final long intervalNanos;
+  private long firstAboveTime = 0;
+  private long dropNext = 0;
+  private int dropCount = 0;
+  private boolean dropping = false;
+
+  CoDelController(long targetNanos, long intervalNanos) {
+    if (targetNanos <= 0 || intervalNanos <= 0) {
+      throw new IllegalArgumentException(
+          "CoDel target and interval must be positive: " + targetNanos + ", " + intervalNanos);
+    }
+    this.targetNanos = targetNanos;
+    this.intervalNanos = intervalNanos;
+  }
+
+  synchronized boolean shouldDrop(long sojournNanos, long now) {
+    if (sojournNanos < targetNanos) {
+      firstAboveTime = 0;
+      dropping = false;
+      return false;
+    }
+
+    if (firstAboveTime == 0) {
+      firstAboveTime = now + intervalNanos;
+      return false;
+    }
+    if (now < firstAboveTime) {
+      return false;
+    }
+
+    if (!dropping) {
+      dropping = true;
+      // Resume near the previous drop rate if we only just left the dropping state.
+      dropCount = dropCount > 2 && now - dropNext < 8 * intervalNanos ? dropCount - 2 : 1;
+      dropNext = controlLaw(now);
+      return true;
+    }
+    if (now >= dropNext) {
+      dropCount++;
+      dropNext = controlLaw(dropNext);
+      return true;
+    }
+    return false;
+  }
+
+  private long controlLaw(long time) {
+    return time + (long) (intervalNanos / Math.sqrt(dropCount));
+  }
+}
@@ -0,0 +1,178 @@
+package main.java.handler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Deficit round robin over per-flow FIFO queues, charging each task its estimated cost. A flow
+// gets `quantum` units of credit per turn, so a client sending 100-iteration requests gets
+// about one of them per turn while a client sending 1-iteration requests drains its whole queue.
+//
+// Starvation protection: entries also sit on one global age-ordered list, and an entry that has
+// waited maxWaitNanos is served next regardless of credit, its flow going into debt for it. At
+// most every other dequeue is such a promotion; under sustained overload everything is old, and
+// round robin must keep part of the service or the queue degrades into plain FIFO.
+final class FairTaskQueue {
+
+  private static final Object DEFAULT_FLOW = new Object();
+
+  static final class Entry {
+
+    final BusinessTask task;
+    final long enqueuedAt;
+    final int cost;
+    private final Flow flow;
+    private Entry older;
+    private Entry newer;
+
+    private Entry(BusinessTask task, long enqueuedAt, int cost, Flow flow) {
+      this.task = task;
+      this.enqueuedAt = enqueuedAt;
+      this.cost = cost;
+      this.flow = flow;
+    }
+  }
+
+  private static final class Flow {
+
+    final Object key;
+    final ArrayDeque<Entry> queue = new ArrayDeque<>(4);
+    long deficit = 0;
+    boolean inService = false;
+
+    Flow(Object key) {
+      this.key = key;
+    }
+  }
+
+  private final int quantum;
+  private final long maxWaitNanos;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final HashMap<Object, Flow> flows = new HashMap<>();
+  // Round-robin order. Flows emptied by a starvation promotion are left here and skipped.
+  private final ArrayDeque<Flow> rotation = new ArrayDeque<>();
+  private Entry oldest;
+  private Entry newest;
+  private boolean promotedLast = false;
+  private volatile int flowCount = 0;
+  private final LongAdder promotions = new LongAdder();
+
+  FairTaskQueue(int quantum, long maxWaitNanos) {
+    if (quantum < 1) {
+      throw new IllegalArgumentException("Quantum must be >= 1: " + quantum);
+    }
+    if (maxWaitNanos <= 0) {
+      throw new IllegalArgumentException("Max wait must be positive: " + maxWaitNanos);
+    }
+    this.quantum = quantum;
+    this.maxWaitNanos = maxWaitNanos;
+  }
+
+  void offer(BusinessTask task, long nowNanos) {
+    Object key = task.flow() != null ? task.flow() : DEFAULT_FLOW;
+    int cost = Math.max(1, task.cost());
+    lock.lock();
+    try {
+      Flow flow = flows.get(key);
+      if (flow == null) {
+        flow = new Flow(key);
+        flows.put(key, flow);
+        rotation.addLast(flow);
+        flowCount = flows.size();
+      }
+      Entry entry = new Entry(task, nowNanos, cost, flow);
+      flow.queue.addLast(entry);
+      entry.older = newest;
+      if (newest != null) {
+        newest.newer = entry;
+      } else {
+        oldest = entry;
+      }
+      newest = entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  Entry poll(long nowNanos) {
+    lock.lock();
+    try {
+      if (oldest == null) {
+        return null;
+      }
+      if (!promotedLast && nowNanos - oldest.enqueuedAt >= maxWaitNanos) {
+        // Entries join their flow and the age list in the same order, so the globally oldest
+        // entry is also the head of its flow.
+        Entry entry = oldest;
+        entry.flow.queue.pollFirst();
+        entry.flow.deficit -= entry.cost;
+        promotions.increment();
+        promotedLast = true;
+        remove(entry);
+        return entry;
+      }
+      promotedLast = false;
+
+      while (true) {
+        Flow flow = rotation.peekFirst();
+        if (flow.queue.isEmpty()) {
+          rotation.pollFirst();
+          continue;
+        }
+        if (!flow.inService) {
+          flow.inService = true;
+          flow.deficit += quantum;
+        }
+        Entry head = flow.queue.peekFirst();
+        if (head.cost <= flow.deficit) {
+          flow.queue.pollFirst();
+          flow.deficit -= head.cost;
+          remove(head);
+          return head;
+        }
+        // Out of credit: the flow's turn ends and it keeps the remainder for the next one.
+        flow.inService = false;
+        rotation.pollFirst();
+        rotation.addLast(flow);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Unlinks a dequeued entry from the age list and retires its flow once empty.
+  private void remove(Entry entry) {
+    if (entry.older != null) {
+      entry.older.newer = entry.newer;
+    } else {
+      oldest = entry.newer;
+    }
+    if (entry.newer != null) {
+      entry.newer.older = entry.older;
+    } else {
+      newest = entry.older;
+    }
+    entry.older = null;
+    entry.newer = null;
+
+    Flow flow = entry.flow;
+    if (flow.queue.isEmpty()) {
+      flows.remove(flow.key);
+      flowCount = flows.size();
+      flow.deficit = 0;
+      flow.inService = false;
+      if (rotation.peekFirst() == flow) {
+        rotation.pollFirst();
+      }
+    }
+  }
+
+  int getFlowCount() {
+    return flowCount;
+  }
+
+  long getPromotionCount() {
+    return promotions.sum();
+  }
+}
@@ -0,0 +1,254 @@
+package main.java.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import main.java.channel.CancellationToken;
+import main.java.channel.Channel;
+import main.java.message.MessageEncoder;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import main.java.server.ServerMetrics;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
+import main.java.util.log.RateLimitedLog;
+
+// Answers HASH_BATCH_REQUEST with one HASH_BATCH_RESPONSE. Items are validated one at a time and
+// a bad item gets an error status instead of closing the connection. Batches are halved by cost,
+// fork/join style, until each slice is at most BATCH_REQUEST_SPLIT_COST, and the slices run on
+// the business pool; the slice that finishes last encodes and queues the consolidated response.
+public class HashBatchRequestHandler {
+
+  private static final RateLimitedLog REQUEST_LOG = new RateLimitedLog(
+      "HashBatchRequestHandler invalid request");
+  private static final RateLimitedLog ERROR_LOG = new RateLimitedLog(
+      "HashBatchRequestHandler error");
+
+  public static final byte STATUS_OK = 0;
+  public static final byte STATUS_INVALID_ITERATIONS = 1;
+  public static final byte STATUS_INVALID_DATA_LENGTH = 2;
+  public static final byte STATUS_MALFORMED = 3; // item runs past the end of the frame
+  public static final byte STATUS_SERVER_BUSY = 4;
+  public static final byte STATUS_INTERNAL_ERROR = 5;
+
+  private final BusinessExecutor businessExecutor;
+  private final HashRequestHandler hashHandler;
+  private final MessageEncoder messageEncoder = MessageEncoder.getInstance();
+  private final BufferPool bufferPool = BufferPool.getInstance();
+
+  private static final class Job {
+
+    final Channel channel;
+    final long batchId;
+    final int count;
+    final int[] iterations;
+    // null for items that already carry a failure status
+    final byte[][] data;
+    final byte[] statuses;
+    final byte[] hashes;
+    final AtomicInteger pendingSlices = new AtomicInteger();
+
+    Job(Channel channel, long batchId, int count) {
+      this.channel = channel;
+      this.batchId = batchId;
+      this.count = count;
+      this.iterations = new int[count];
+      this.data = new byte[count][];
+      this.statuses = new byte[count];
+      this.hashes = new byte[count * ServerConfig.HASH_RESULT_SIZE];
+    }
+  }
+
+  public HashBatchRequestHandler(BusinessExecutor businessExecutor,
+      HashRequestHandler hashHandler) {
+    this.businessExecutor = businessExecutor;
+    this.hashHandler = hashHandler;
+  }
+
+  public void handle(MessageView message, Channel channel) {
+    if (message.getType() != MessageType.HASH_BATCH_REQUEST) {
+      REQUEST_LOG.log("Unexpected message type: " + message.getType());
+      return;
+    }
+
+    int payloadLength = message.getPayloadLength();
+    if (payloadLength < ServerConfig.BATCH_REQUEST_HEADER_SIZE) {
+      REQUEST_LOG.log("Invalid HASH_BATCH_REQUEST payload size: " + payloadLength);
+      channel.close();
+      return;
+    }
+    long batchId = message.getLong(0);
+    int count = message.getInt(ServerConfig.REQUEST_ID_SIZE);
+    if (batchId < 0 || count < 1 || count > ServerConfig.BATCH_REQUEST_MAX_ITEMS) {
+      REQUEST_LOG.log("Invalid HASH_BATCH_REQUEST header: batchId=" + batchId + ", count="
+          + count);
+      channel.close();
+      return;
+    }
+
+    Job job = new Job(channel, batchId, count);
+    parseItems(message, job);
+    int[] costPrefix = costPrefix(job);
+    ServerMetrics.BATCH_REQUESTS.increment();
+    ServerMetrics.BATCH_ITEMS.add(count);
+    channel.requestAccepted();
+
+    if (ServerConfig.INLINE_EXECUTION_ENABLED && channel.getInlineController()
+        .tryRunInline(costPrefix[count])) {
+      job.pendingSlices.set(1);
+      runSlice(job, 0, count);
+      return;
+    }
+
+    // The split runs here rather than in the slices so each item is charged to the fair
+    // scheduler once, and the count is set before any slice can finish.
+    int[] ends = new int[count];
+    int slices = split(costPrefix, 0, count, ends, 0);
+    job.pendingSlices.set(slices);
+    int start = 0;
+    for (int s = 0; s < slices; s++) {
+      int from = start;
+      int to = ends[s];
+      BusinessTask task = BusinessTask.of(() -> runSlice(job, from, to),
+          () -> shedSlice(job, from, to), channel, costPrefix[to] - costPrefix[from]);
+      if (!businessExecutor.trySubmit(task)) {
+        shedSlice(job, from, to);
+      }
+      start = to;
+    }
+  }
+
+  private void parseItems(MessageView message, Job job) {
+    int payloadLength = message.getPayloadLength();
+    int offset = ServerConfig.BATCH_REQUEST_HEADER_SIZE;
+    for (int i = 0; i < job.count; i++) {
+      if (payloadLength - offset < ServerConfig.BATCH_ITEM_HEADER_SIZE) {
+        markRemaining(job, i, STATUS_MALFORMED);
+        break;
+      }
+      int iterations = message.getInt(offset);
+      int dataLength = message.getInt(offset + ServerConfig.ITERATIONS_SIZE);
+      offset += ServerConfig.BATCH_ITEM_HEADER_SIZE;
+      if (dataLength < 0 || dataLength > payloadLength - offset) {
+        markRemaining(job, i, STATUS_MALFORMED);
+        break;
+      }
+
+      if (dataLength > ServerConfig.MAX_DATA_LENGTH) {
+        job.statuses[i] = STATUS_INVALID_DATA_LENGTH;
+      } else if (iterations < 1 || iterations > ServerConfig.MAX_ITERATIONS) {
+        job.statuses[i] = STATUS_INVALID_ITERATIONS;
+      } else {
+        byte[] data = new byte[dataLength];
+        message.getBytes(offset, data, 0, dataLength);
+        job.iterations[i] = iterations;
+        job.data[i] = data;
+      }
+      offset += dataLength;
+    }
+  }
+
+  // prefix[i] is the summed cost estimate of the valid items before index i.
+  private static int[] costPrefix(Job job) {
+    int[] prefix = new int[job.count + 1];
+    for (int i = 0; i < job.count; i++) {
+      int cost = job.data[i] == null ? 0
+          : HashRequestHandler.estimateCost(job.iterations[i], job.data[i].length);
+      prefix[i + 1] = prefix[i] + cost;
+    }
+    return prefix;
+  }
+
+  // Halves [from, to) at its cost midpoint until each piece is a single item or within
+  // BATCH_REQUEST_SPLIT_COST. Writes each piece's end index to ends and returns the new count.
+  private static int split(int[] costPrefix, int from, int to, int[] ends, int count) {
+    if (to - from == 1
+        || costPrefix[to] - costPrefix[from] <= ServerConfig.BATCH_REQUEST_SPLIT_COST) {
+      ends[count] = to;
+      return count + 1;
+    }
+    int half = costPrefix[from] + (costPrefix[to] - costPrefix[from]) / 2;
+    int mid = from + 1;
+    while (mid < to - 1 && costPrefix[mid] < half) {
+      mid++;
+    }
+    count = split(costPrefix, from, mid, ends, count);
+    return split(costPrefix, mid, to, ends, count);
+  }
+
+  private static void markRemaining(Job job, int from, byte status) {
+    for (int i = from; i < job.count; i++) {
+      job.statuses[i] = status;
+    }
+  }
+
+  private void runSlice(Job job, int from, int to) {
+    Channel channel = job.channel;
+    CancellationToken closeToken = channel.inFlightRequests().closeToken();
+    HashContext context = HashContext.acquire();
+    try {
+      for (int i = from; i < to; i++) {
+        if (job.data[i] == null) {
+          continue;
+        }
+        if (closeToken.isCancelled()) {
+          return;
+        }
+        long start = System.nanoTime();
+        try {
+          if (!hashHandler.computeHash(context, closeToken, job.data[i], job.iterations[i],
+              job.hashes, i * ServerConfig.HASH_RESULT_SIZE)) {
+            return;
+          }
+          ServerMetrics.hashLatency(job.iterations[i]).recordNanos(System.nanoTime() - start);
+        } catch (Exception e) {
+          ERROR_LOG.log("Error hashing item " + i + " of batch " + job.batchId + ": "
+              + e.getMessage());
+          job.statuses[i] = STATUS_INTERNAL_ERROR;
+        }
+      }
+    } finally {
+      HashContext.release(context);
+      finishSlice(job);
+    }
+  }
+
+  private void shedSlice(Job job, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (job.data[i] != null) {
+        job.statuses[i] = STATUS_SERVER_BUSY;
+      }
+    }
+    finishSlice(job);
+  }
+
+  // The decrement publishes every slice's writes to whichever thread completes the job.
+  private void finishSlice(Job job) {
+    if (job.pendingSlices.decrementAndGet() != 0 || !job.channel.isActive()) {
+      return;
+    }
+
+    int failures = 0;
+    for (int i = 0; i < job.count; i++) {
+      if (job.statuses[i] != STATUS_OK) {
+        failures++;
+      }
+    }
+    if (failures > 0) {
+      ServerMetrics.BATCH_ITEM_FAILURES.add(failures);
+    }
+
+    PooledBuffer response = bufferPool.allocate(ServerConfig.HEADER_SIZE
+        + ServerConfig.BATCH_RESPONSE_HEADER_SIZE
+        + job.count * ServerConfig.BATCH_RESPONSE_ITEM_SIZE);
+    try {
+      messageEncoder.encodeHashBatchResponse(response.buffer(), job.batchId, job.count,
+          job.statuses, job.hashes);
+    } catch (RuntimeException e) {
+      response.release();
+      ERROR_LOG.log("Error encoding batch " + job.batchId + ": " + e.getMessage());
+      job.channel.closeAsync();
+      return;
+    }
+    job.channel.queueResponse(response);
+  }
+}
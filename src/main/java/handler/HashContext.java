@@ -0,0 +1,42 @@
+package main.java.handler;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import main.java.server.ServerConfig;
+
+// Per-thread hashing state. Virtual threads are short-lived, so they borrow from a shared pool
+// instead of creating a fresh MessageDigest through a ThreadLocal on every task.
+final class HashContext {
+
+  private static final ThreadLocal<HashContext> PLATFORM_CONTEXT = ThreadLocal.withInitial(
+      HashContext::new);
+  private static final Queue<HashContext> VIRTUAL_CONTEXTS = new ConcurrentLinkedQueue<>();
+
+  final MessageDigest digest;
+  final byte[] result = new byte[ServerConfig.HASH_RESULT_SIZE];
+
+  private HashContext() {
+    try {
+      this.digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not available", e);
+    }
+  }
+
+  static HashContext acquire() {
+    if (!Thread.currentThread().isVirtual()) {
+      return PLATFORM_CONTEXT.get();
+    }
+    HashContext context = VIRTUAL_CONTEXTS.poll();
+    return context != null ? context : new HashContext();
+  }
+
+  static void release(HashContext context) {
+    if (Thread.currentThread().isVirtual()) {
+      context.digest.reset();
+      VIRTUAL_CONTEXTS.offer(context);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package main.java.handler;
+
+import java.util.Arrays;
+import main.java.channel.CancellationToken;
+import main.java.channel.Channel;
+import main.java.util.buffer.PooledBuffer;
+
+final class HashRequestBatch {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final Channel channel;
+  private long[] requestIds = new long[INITIAL_CAPACITY];
+  private int[] iterations = new int[INITIAL_CAPACITY];
+  private byte[][] data = new byte[INITIAL_CAPACITY][];
+  private CancellationToken[] tokens = new CancellationToken[INITIAL_CAPACITY];
+  private int size = 0;
+  private int cost = 0;
+
+  HashRequestBatch(Channel channel) {
+    this.channel = channel;
+  }
+
+  Channel channel() {
+    return channel;
+  }
+
+  void add(long requestId, int iterationCount, byte[] requestData, CancellationToken token) {
+    if (size == requestIds.length) {
+      int capacity = size * 2;
+      requestIds = Arrays.copyOf(requestIds, capacity);
+      iterations = Arrays.copyOf(iterations, capacity);
+      data = Arrays.copyOf(data, capacity);
+      tokens = Arrays.copyOf(tokens, capacity);
+    }
+    requestIds[size] = requestId;
+    iterations[size] = iterationCount;
+    data[size] = requestData;
+    tokens[size] = token;
+    size++;
+    cost += HashRequestHandler.estimateCost(iterationCount, requestData.length);
+  }
+
+  int size() {
+    return size;
+  }
+
+  // Summed estimate of the batch's SHA-256 compression-function calls.
+  int cost() {
+    return cost;
+  }
+
+  long requestId(int index) {
+    return requestIds[index];
+  }
+
+  int iterations(int index) {
+    return iterations[index];
+  }
+
+  byte[] data(int index) {
+    return data[index];
+  }
+
+  CancellationToken token(int index) {
+    return tokens[index];
+  }
+
+  void releaseTokens() {
+    for (int i = 0; i < size; i++) {
+      tokens[i].release();
+    }
+  }
+
+  PooledBuffer[] newResponseArray() {
+    return new PooledBuffer[size];
+  }
+}
@@ -1,65 +1,129 @@
 package main.java.handler;
 
-import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import main.java.message.Message;
+import java.util.List;
+import main.java.channel.CancellationToken;
+import main.java.channel.Channel;
+import main.java.channel.InFlightRequests;
+import main.java.handler.HashResultCache.ChainEntry;
+import main.java.handler.HashResultCache.ChainKey;
+import main.java.handler.HashResultCache.InFlight;
+import main.java.handler.HashResultCache.Waiter;
 import main.java.message.MessageEncoder;
 import main.java.message.MessageType;
-import main.java.server.NioChannel;
+import main.java.message.MessageView;
 import main.java.server.ServerConfig;
+import main.java.server.ServerMetrics;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
+import main.java.util.log.RateLimitedLog;
+import main.java.util.hash.BatchSha256;
+import main.java.util.hash.BatchSha256Engines;
 
 public class HashRequestHandler {
 
+  // REQUEST_ABORTED reasons.
+  public static final byte ABORTED_DEADLINE_EXCEEDED = 1;
+  public static final byte ABORTED_CANCELLED = 2;
+
+  private static final RateLimitedLog REQUEST_LOG = new RateLimitedLog(
+      "HashRequestHandler invalid request");
+  private static final RateLimitedLog ERROR_LOG = new RateLimitedLog("HashRequestHandler error");
+
   private final BusinessExecutor businessExecutor;
   private final MessageEncoder messageEncoder = MessageEncoder.getInstance();
+  private final BufferPool bufferPool = BufferPool.getInstance();
+  private final HashResultCache resultCache;
+  private final BatchSha256 batchEngine;
 
-  private static final ThreadLocal<MessageDigest> SHA_256_DIGEST = ThreadLocal.withInitial(() -> {
-    try {
-      return MessageDigest.getInstance("SHA-256");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("SHA-256 algorithm not available", e);
-    }
-  });
+  // Requests decoded from the current channelRead on this event-loop thread.
+  private static final ThreadLocal<HashRequestBatch> PENDING_BATCH = new ThreadLocal<>();
 
   public HashRequestHandler(BusinessExecutor businessExecutor) {
     this.businessExecutor = businessExecutor;
+    this.resultCache = ServerConfig.HASH_CACHE_ENABLED ? new HashResultCache(
+        ServerConfig.HASH_CACHE_MAX_ENTRIES, ServerConfig.HASH_CACHE_MAX_BYTES) : null;
+    BatchSha256 engine = BatchSha256Engines.create(ServerConfig.SHA256_VECTOR_ENABLED);
+    this.batchEngine = engine.lanes() > 1 ? engine : null;
   }
 
-  public void handle(Message message, NioChannel channel) {
-    if (message.getType() != MessageType.HASH_REQUEST) {
-      System.err.println("Unexpected message type: " + message.getType());
+  // HASH_REQUEST and HASH_REQUEST_V2. A V2 request can be cancelled by id and carries an
+  // optional timeout; if it is still queued when the timeout passes it is answered with
+  // REQUEST_ABORTED before any hashing is done.
+  public void handle(MessageView message, Channel channel) {
+    MessageType type = message.getType();
+    if (type != MessageType.HASH_REQUEST && type != MessageType.HASH_REQUEST_V2) {
+      REQUEST_LOG.log("Unexpected message type: " + type);
       return;
     }
+    boolean v2 = type == MessageType.HASH_REQUEST_V2;
 
     try {
-      ByteBuffer payload = message.getPayload();
-      if (payload.remaining() < ServerConfig.REQUEST_HEADER_SIZE) {
-        System.err.println("Invalid HASH_REQUEST payload size: " + payload.remaining());
+      int headerSize = v2 ? ServerConfig.REQUEST_V2_HEADER_SIZE : ServerConfig.REQUEST_HEADER_SIZE;
+      int payloadLength = message.getPayloadLength();
+      if (payloadLength < headerSize) {
+        REQUEST_LOG.log("Invalid " + type + " payload size: " + payloadLength);
         channel.close();
         return;
       }
 
-      long requestId = payload.getLong();
-      int iterations = payload.getInt();
-      int dataLength = payload.getInt();
+      long requestId = message.getLong(0);
+      int offset = ServerConfig.REQUEST_ID_SIZE;
+      int timeoutMillis = 0;
+      if (v2) {
+        timeoutMillis = message.getInt(offset);
+        offset += ServerConfig.TIMEOUT_SIZE;
+      }
+      int iterations = message.getInt(offset);
+      int dataLength = message.getInt(offset + ServerConfig.ITERATIONS_SIZE);
+      int remaining = payloadLength - headerSize;
 
-      if (!isValidRequest(requestId, iterations, dataLength, payload.remaining())) {
-        System.err.println("Invalid HASH_REQUEST parameters");
+      if (timeoutMillis < 0 || !isValidRequest(requestId, iterations, dataLength, remaining)) {
+        REQUEST_LOG.log("Invalid " + type + " parameters");
         channel.close();
         return;
       }
 
       byte[] data = new byte[dataLength];
-      payload.get(data);
+      message.getBytes(headerSize, data, 0, dataLength);
 
-      businessExecutor.submit(() -> executeHashCalculation(channel, requestId, iterations, data));
+      InFlightRequests inFlight = channel.inFlightRequests();
+      CancellationToken token = v2 ? inFlight.register(requestId,
+          System.nanoTime() + timeoutMillis * 1_000_000L, timeoutMillis > 0)
+          : inFlight.closeToken();
+      channel.requestAccepted();
+      // Behind requests already batched from this read, an inline answer would overtake them.
+      if (ServerConfig.INLINE_EXECUTION_ENABLED && !hasPendingBatch(channel)
+          && channel.getInlineController().tryRunInline(estimateCost(iterations, dataLength))) {
+        executeHashCalculation(channel, token, requestId, iterations, data);
+      } else if (ServerConfig.HASH_BATCH_ENABLED) {
+        addToBatch(channel, token, requestId, iterations, data);
+      } else {
+        BusinessTask task = BusinessTask.of(
+            () -> executeHashCalculation(channel, token, requestId, iterations, data),
+            () -> sendServerBusy(channel, token, requestId), channel,
+            estimateCost(iterations, dataLength));
+        if (!businessExecutor.trySubmit(task)) {
+          sendServerBusy(channel, token, requestId);
+        }
+      }
 
     } catch (Exception e) {
-      System.err.println("Error handling HASH_REQUEST: " + e.getMessage());
-      e.printStackTrace();
+      ERROR_LOG.log("Error handling HASH_REQUEST: " + e.getMessage(), e);
+      channel.close();
+    }
+  }
+
+  // CANCEL_REQUEST is best effort: a request past its last cancellation check still gets its
+  // HASH_RESPONSE, anything earlier gets REQUEST_ABORTED. Ids with nothing in flight are ignored.
+  public void handleCancel(MessageView message, Channel channel) {
+    if (message.getPayloadLength() != ServerConfig.CANCEL_REQUEST_PAYLOAD_SIZE) {
+      REQUEST_LOG.log("Invalid CANCEL_REQUEST payload size: " + message.getPayloadLength());
       channel.close();
+      return;
     }
+    channel.inFlightRequests().cancel(message.getLong(0));
   }
 
   private boolean isValidRequest(long requestId, int iterations, int dataLength, int remaining) {
@@ -67,51 +131,530 @@ public class HashRequestHandler {
         && dataLength >= 0 && dataLength <= ServerConfig.MAX_DATA_LENGTH && dataLength == remaining;
   }
 
-  private void executeHashCalculation(NioChannel channel, long requestId, int iterations,
-      byte[] data) {
+  // Number of SHA-256 compression-function calls: the first round hashes the padded request data,
+  // every later round hashes a 32-byte digest, which fits in one block.
+  static int estimateCost(int iterations, int dataLength) {
+    int firstRoundBlocks = (dataLength + 9 + 63) / 64;
+    return firstRoundBlocks + iterations - 1;
+  }
+
+  private static boolean hasPendingBatch(Channel channel) {
+    HashRequestBatch batch = PENDING_BATCH.get();
+    return batch != null && batch.channel() == channel;
+  }
+
+  private void addToBatch(Channel channel, CancellationToken token, long requestId,
+      int iterations, byte[] data) {
+    HashRequestBatch batch = PENDING_BATCH.get();
+    if (batch != null && batch.channel() != channel) {
+      submitBatch();
+      batch = null;
+    }
+    if (batch == null) {
+      batch = new HashRequestBatch(channel);
+      PENDING_BATCH.set(batch);
+    }
+
+    batch.add(requestId, iterations, data, token);
+    if (batch.size() >= ServerConfig.HASH_BATCH_MAX_SIZE) {
+      submitBatch();
+    }
+  }
+
+  public void channelReadComplete(Channel channel) {
+    if (ServerConfig.HASH_BATCH_ENABLED) {
+      submitBatch();
+    }
+  }
+
+  private void submitBatch() {
+    HashRequestBatch batch = PENDING_BATCH.get();
+    if (batch == null) {
+      return;
+    }
+    PENDING_BATCH.remove();
+    BusinessTask task = BusinessTask.of(() -> executeBatch(batch), () -> sendServerBusy(batch),
+        batch.channel(), batch.cost());
+    if (!businessExecutor.trySubmit(task)) {
+      sendServerBusy(batch);
+    }
+  }
+
+  private void executeBatch(HashRequestBatch batch) {
+    if (batchEngine != null && batch.size() >= ServerConfig.SHA256_VECTOR_MIN_BATCH) {
+      executeBatchVectorized(batch);
+      return;
+    }
+
+    Channel channel = batch.channel();
+    CancellationToken closeToken = channel.inFlightRequests().closeToken();
+    PooledBuffer[] responses = batch.newResponseArray();
+    int count = 0;
+    HashContext context = HashContext.acquire();
     try {
-      if (!channel.isActive()) {
-        return;
+      for (int i = 0; i < batch.size(); i++) {
+        CancellationToken token = batch.token(i);
+        long start = System.nanoTime();
+        if (token.isCancelled() || token.isExpired(start)) {
+          PooledBuffer aborted = abortResponse(token, batch.requestId(i));
+          if (aborted == null) {
+            releaseAll(responses, count);
+            return;
+          }
+          responses[count++] = aborted;
+          continue;
+        }
+        PooledBuffer response = calculateResponse(context, channel, token, batch.requestId(i),
+            batch.iterations(i), batch.data(i));
+        if (response != null) {
+          if (!token.isCancelled()) {
+            ServerMetrics.hashLatency(batch.iterations(i)).recordNanos(System.nanoTime() - start);
+          }
+          responses[count++] = response;
+        } else if (closeToken.isCancelled()) {
+          releaseAll(responses, count);
+          return;
+        }
+      }
+      if (count > 0) {
+        channel.queueResponses(responses, count);
       }
 
-      MessageDigest digest = SHA_256_DIGEST.get();
-      byte[] result = data;
+    } catch (Exception e) {
+      releaseAll(responses, count);
+      ERROR_LOG.log("Error during batched hash calculation of " + batch.size()
+          + " requests: " + e.getMessage(), e);
+      channel.closeAsync();
+    } finally {
+      HashContext.release(context);
+      batch.releaseTokens();
+    }
+  }
+
+  // Hashes the first round of each request with MessageDigest, then advances every request that
+  // still needs rounds in lockstep through the multi-lane engine, one 32-byte block per lane.
+  // Like the scalar path, a request identical to one already in flight waits for its owner,
+  // and the owner answers its waiters once the batch is done. Computed requests all report the
+  // batch's elapsed time as their hash latency.
+  private void executeBatchVectorized(HashRequestBatch batch) {
+    long start = System.nanoTime();
+    Channel channel = batch.channel();
+    CancellationToken closeToken = channel.inFlightRequests().closeToken();
+    int size = batch.size();
+    PooledBuffer[] responses = batch.newResponseArray();
+    int count = 0;
+    ChainKey[] keys = new ChainKey[size];
+    // Requests whose in-flight computation this batch owns and has not finished yet.
+    boolean[] owned = new boolean[size];
+    HashContext context = HashContext.acquire();
+    try {
+      int hashSize = ServerConfig.HASH_RESULT_SIZE;
+      byte[][] chains = new byte[size][];
+      int[] startRounds = new int[size];
+      int maxIterations = 0;
+
+      for (int i = 0; i < size; i++) {
+        CancellationToken token = batch.token(i);
+        if (token.isCancelled() || token.isExpired(start)) {
+          PooledBuffer aborted = abortResponse(token, batch.requestId(i));
+          if (aborted == null) {
+            releaseAll(responses, count);
+            return;
+          }
+          responses[count++] = aborted;
+          continue;
+        }
+        int iterations = batch.iterations(i);
+        ChainEntry cached = null;
+        if (resultCache != null) {
+          keys[i] = new ChainKey(batch.data(i));
+          cached = resultCache.get(keys[i]);
+          if (cached != null && cached.rounds >= iterations) {
+            resultCache.recordHit();
+            responses[count++] = encodeResponse(batch.requestId(i), iterations, cached.chain,
+                cached.offsetOf(iterations));
+            ServerMetrics.hashLatency(iterations).recordNanos(System.nanoTime() - start);
+            continue;
+          }
+          InFlight running = resultCache.startComputation(keys[i], iterations);
+          if (running == null) {
+            owned[i] = true;
+          } else if (resultCache.attach(running, channel, batch.requestId(i), iterations)) {
+            continue;
+          }
+        }
+
+        byte[] chain = new byte[iterations * hashSize];
+        if (cached != null) {
+          resultCache.recordPartialHit();
+          System.arraycopy(cached.chain, 0, chain, 0, cached.rounds * hashSize);
+          startRounds[i] = cached.rounds;
+        } else {
+          if (resultCache != null) {
+            resultCache.recordMiss();
+          }
+          context.digest.update(batch.data(i));
+          context.digest.digest(chain, 0, hashSize);
+          startRounds[i] = 1;
+        }
+        chains[i] = chain;
+        maxIterations = Math.max(maxIterations, iterations);
+      }
 
-      for (int i = 0; i < iterations; i++) {
-        if (!channel.isActive()) {
+      byte[] lanes = new byte[size * hashSize];
+      for (int round = 2; round <= maxIterations; round++) {
+        if (closeToken.isCancelled()) {
+          releaseAll(responses, count);
           return;
         }
-        digest.reset();
-        result = digest.digest(result);
+        int active = 0;
+        for (int i = 0; i < size; i++) {
+          if (chains[i] != null && batch.token(i).isCancelled()) {
+            // Drop the lane; the scatter loop below skips it as well.
+            chains[i] = null;
+            PooledBuffer aborted = abortResponse(batch.token(i), batch.requestId(i));
+            if (aborted != null) {
+              responses[count++] = aborted;
+            }
+            continue;
+          }
+          if (chains[i] != null && startRounds[i] < round && round <= batch.iterations(i)) {
+            System.arraycopy(chains[i], (round - 2) * hashSize, lanes, active * hashSize,
+                hashSize);
+            active++;
+          }
+        }
+        batchEngine.digest32(lanes, lanes, active);
+        active = 0;
+        for (int i = 0; i < size; i++) {
+          if (chains[i] != null && startRounds[i] < round && round <= batch.iterations(i)) {
+            System.arraycopy(lanes, active * hashSize, chains[i], (round - 1) * hashSize,
+                hashSize);
+            active++;
+          }
+        }
       }
 
-      if (!channel.isActive()) {
-        return;
+      long elapsed = System.nanoTime() - start;
+      ChainEntry[] computed = new ChainEntry[size];
+      for (int i = 0; i < size; i++) {
+        if (chains[i] == null) {
+          continue;
+        }
+        int iterations = batch.iterations(i);
+        ServerMetrics.hashLatency(iterations).recordNanos(elapsed);
+        if (resultCache != null) {
+          computed[i] = new ChainEntry(keys[i], chains[i], iterations);
+          if (!owned[i]) {
+            resultCache.put(computed[i]);
+          }
+        }
+        responses[count++] = encodeResponse(batch.requestId(i), iterations, chains[i],
+            (iterations - 1) * hashSize);
+      }
+
+      if (!closeToken.isCancelled()) {
+        channel.queueResponses(responses, count);
+      } else {
+        releaseAll(responses, count);
+      }
+      count = 0;
+      for (int i = 0; i < size; i++) {
+        if (owned[i]) {
+          owned[i] = false;
+          respondToWaiters(keys[i], computed[i],
+              resultCache.finishComputation(keys[i], computed[i]));
+        }
       }
 
-      ByteBuffer responsePayload = createResponsePayload(requestId, iterations, result);
-      Message responseMessage = new Message(MessageType.HASH_RESPONSE.getValue(), responsePayload);
-      ByteBuffer encodedResponse = messageEncoder.encode(responseMessage);
-      channel.queueResponse(encodedResponse);
+    } catch (Exception e) {
+      releaseAll(responses, count);
+      ERROR_LOG.log("Error during vectorized hash calculation of " + size + " requests: "
+          + e.getMessage(), e);
+      channel.closeAsync();
+    } finally {
+      // Computations abandoned part way: their waiters are resubmitted one by one instead.
+      for (int i = 0; i < size; i++) {
+        if (owned[i]) {
+          respondToWaiters(keys[i], null, resultCache.finishComputation(keys[i], null));
+        }
+      }
+      HashContext.release(context);
+      batch.releaseTokens();
+    }
+  }
+
+  private void sendServerBusy(Channel channel, CancellationToken token, long requestId) {
+    token.release();
+    if (channel.isActive()) {
+      channel.queueResponse(encodeServerBusy(requestId));
+    }
+  }
+
+  private void sendServerBusy(HashRequestBatch batch) {
+    batch.releaseTokens();
+    Channel channel = batch.channel();
+    if (!channel.isActive()) {
+      return;
+    }
+    PooledBuffer[] responses = batch.newResponseArray();
+    for (int i = 0; i < batch.size(); i++) {
+      responses[i] = encodeServerBusy(batch.requestId(i));
+    }
+    channel.queueResponses(responses, responses.length);
+  }
+
+  private PooledBuffer encodeServerBusy(long requestId) {
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    messageEncoder.encodeServerBusy(response.buffer(), requestId);
+    return response;
+  }
+
+  // REQUEST_ABORTED for a request that was cancelled or whose deadline passed, or null if its
+  // channel closed and nobody is listening.
+  private PooledBuffer abortResponse(CancellationToken token, long requestId) {
+    if (token.isChannelClosed()) {
+      return null;
+    }
+    byte reason;
+    if (token.isCancelled()) {
+      reason = ABORTED_CANCELLED;
+      ServerMetrics.REQUESTS_CANCELLED.increment();
+    } else {
+      reason = ABORTED_DEADLINE_EXCEEDED;
+      ServerMetrics.REQUESTS_EXPIRED.increment();
+    }
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    messageEncoder.encodeRequestAborted(response.buffer(), requestId, reason);
+    return response;
+  }
+
+  private void releaseAll(PooledBuffer[] buffers, int count) {
+    for (int i = 0; i < count; i++) {
+      buffers[i].release();
+    }
+  }
+
+  private void executeHashCalculation(Channel channel, CancellationToken token, long requestId,
+      int iterations, byte[] data) {
+    HashContext context = HashContext.acquire();
+    try {
+      long start = System.nanoTime();
+      if (token.isCancelled() || token.isExpired(start)) {
+        PooledBuffer aborted = abortResponse(token, requestId);
+        if (aborted != null) {
+          channel.queueResponse(aborted);
+        }
+        return;
+      }
+      PooledBuffer response = calculateResponse(context, channel, token, requestId, iterations,
+          data);
+      if (response != null) {
+        if (!token.isCancelled()) {
+          ServerMetrics.hashLatency(iterations).recordNanos(System.nanoTime() - start);
+        }
+        channel.queueResponse(response);
+      }
 
     } catch (Exception e) {
-      System.err.println(
-          "Error during hash calculation for request " + requestId + ": " + e.getMessage());
-      e.printStackTrace();
+      ERROR_LOG.log(
+          "Error during hash calculation for request " + requestId + ": " + e.getMessage(), e);
       channel.closeAsync();
+    } finally {
+      HashContext.release(context);
+      token.release();
+    }
+  }
+
+  // Returns REQUEST_ABORTED if the token is cancelled part way through.
+  private PooledBuffer calculateResponse(HashContext context, Channel channel,
+      CancellationToken token, long requestId, int iterations, byte[] data)
+      throws DigestException {
+    if (resultCache != null) {
+      return calculateCachedResponse(context, channel, token, requestId, iterations, data);
+    }
+
+    MessageDigest digest = context.digest;
+    byte[] result = context.result;
+
+    digest.update(data);
+    digest.digest(result, 0, ServerConfig.HASH_RESULT_SIZE);
+    for (int i = 1; i < iterations; i++) {
+      if (token.isCancelled()) {
+        return abortResponse(token, requestId);
+      }
+      digest.update(result);
+      digest.digest(result, 0, ServerConfig.HASH_RESULT_SIZE);
+    }
+    return encodeResponse(requestId, iterations, result, 0);
+  }
+
+  // Returns null when the channel went inactive or the request was attached to an identical
+  // computation already in flight, whose owner will queue the response.
+  private PooledBuffer calculateCachedResponse(HashContext context, Channel channel,
+      CancellationToken token, long requestId, int iterations, byte[] data)
+      throws DigestException {
+    ChainKey key = new ChainKey(data);
+    ChainEntry cached = resultCache.get(key);
+    if (cached != null && cached.rounds >= iterations) {
+      resultCache.recordHit();
+      return encodeResponse(requestId, iterations, cached.chain, cached.offsetOf(iterations));
+    }
+
+    InFlight running = resultCache.startComputation(key, iterations);
+    if (running != null) {
+      if (resultCache.attach(running, channel, requestId, iterations)) {
+        return null;
+      }
+      ChainEntry computed = extendChain(context, key, cached, iterations, token);
+      if (computed == null) {
+        return abortResponse(token, requestId);
+      }
+      resultCache.put(computed);
+      return encodeResponse(requestId, iterations, computed.chain, computed.offsetOf(iterations));
+    }
+
+    ChainEntry computed = null;
+    try {
+      computed = extendChain(context, key, cached, iterations, token);
+    } finally {
+      respondToWaiters(key, computed, resultCache.finishComputation(key, computed));
+    }
+    if (computed == null) {
+      return abortResponse(token, requestId);
     }
+    return encodeResponse(requestId, iterations, computed.chain, computed.offsetOf(iterations));
   }
 
-  private ByteBuffer createResponsePayload(long requestId, int iterations, byte[] hashResult) {
-    if (hashResult.length != ServerConfig.HASH_RESULT_SIZE) {
-      throw new IllegalArgumentException("Invalid hash result size: " + hashResult.length);
+  // Returns null if the token is cancelled first.
+  private ChainEntry extendChain(HashContext context, ChainKey key, ChainEntry base,
+      int iterations, CancellationToken token) throws DigestException {
+    MessageDigest digest = context.digest;
+    int hashSize = ServerConfig.HASH_RESULT_SIZE;
+    byte[] chain = new byte[iterations * hashSize];
+    int round;
+    if (base != null) {
+      resultCache.recordPartialHit();
+      System.arraycopy(base.chain, 0, chain, 0, base.rounds * hashSize);
+      round = base.rounds;
+    } else {
+      resultCache.recordMiss();
+      digest.update(key.data());
+      digest.digest(chain, 0, hashSize);
+      round = 1;
     }
-    ByteBuffer responsePayload = ByteBuffer.allocate(ServerConfig.RESPONSE_PAYLOAD_SIZE);
-    responsePayload.putLong(requestId);
-    responsePayload.putInt(iterations);
-    responsePayload.putInt(ServerConfig.HASH_RESULT_SIZE);
-    responsePayload.put(hashResult, 0, ServerConfig.HASH_RESULT_SIZE);
-    responsePayload.flip();
-    return responsePayload;
+
+    for (; round < iterations; round++) {
+      if (token.isCancelled()) {
+        return null;
+      }
+      digest.update(chain, (round - 1) * hashSize, hashSize);
+      digest.digest(chain, round * hashSize, hashSize);
+    }
+    return new ChainEntry(key, chain, iterations);
+  }
+
+  // Writes the final hash of a chain into out, using and filling the cache but never attaching
+  // to an identical request in flight, for callers that assemble their own response. Returns
+  // false if the token was cancelled first.
+  boolean computeHash(HashContext context, CancellationToken token, byte[] data, int iterations,
+      byte[] out, int outOffset) throws DigestException {
+    int hashSize = ServerConfig.HASH_RESULT_SIZE;
+    if (resultCache == null) {
+      MessageDigest digest = context.digest;
+      digest.update(data);
+      digest.digest(out, outOffset, hashSize);
+      for (int i = 1; i < iterations; i++) {
+        if (token.isCancelled()) {
+          return false;
+        }
+        digest.update(out, outOffset, hashSize);
+        digest.digest(out, outOffset, hashSize);
+      }
+      return true;
+    }
+
+    ChainKey key = new ChainKey(data);
+    ChainEntry entry = resultCache.get(key);
+    if (entry != null && entry.rounds >= iterations) {
+      resultCache.recordHit();
+    } else {
+      entry = extendChain(context, key, entry, iterations, token);
+      if (entry == null) {
+        return false;
+      }
+      resultCache.put(entry);
+    }
+    System.arraycopy(entry.chain, entry.offsetOf(iterations), out, outOffset, hashSize);
+    return true;
+  }
+
+  // Abandoned computations leave computed null: their waiters go back through the business
+  // executor, since the owner may have been running inline on an event loop.
+  private void respondToWaiters(ChainKey key, ChainEntry computed, List<Waiter> waiters) {
+    for (Waiter waiter : waiters) {
+      if (computed == null) {
+        resubmitWaiter(key, waiter);
+        continue;
+      }
+      try {
+        waiter.channel.queueResponse(encodeResponse(waiter.requestId, waiter.iterations,
+            computed.chain, computed.offsetOf(waiter.iterations)));
+      } catch (Exception e) {
+        ERROR_LOG.log("Error completing coalesced request " + waiter.requestId + ": "
+            + e.getMessage());
+        waiter.channel.closeAsync();
+      }
+    }
+  }
+
+  private void resubmitWaiter(ChainKey key, Waiter waiter) {
+    Channel channel = waiter.channel;
+    if (!channel.isActive()) {
+      return;
+    }
+    CancellationToken token = channel.inFlightRequests().closeToken();
+    BusinessTask task = BusinessTask.of(() -> computeWaiter(key, waiter, token),
+        () -> sendServerBusy(channel, token, waiter.requestId), channel,
+        estimateCost(waiter.iterations, key.data().length));
+    if (!businessExecutor.trySubmit(task)) {
+      sendServerBusy(channel, token, waiter.requestId);
+    }
+  }
+
+  private void computeWaiter(ChainKey key, Waiter waiter, CancellationToken token) {
+    HashContext context = HashContext.acquire();
+    try {
+      ChainEntry chain = extendChain(context, key, null, waiter.iterations, token);
+      if (chain != null) {
+        waiter.channel.queueResponse(encodeResponse(waiter.requestId, waiter.iterations,
+            chain.chain, chain.offsetOf(waiter.iterations)));
+      }
+    } catch (Exception e) {
+      ERROR_LOG.log("Error completing coalesced request " + waiter.requestId + ": "
+          + e.getMessage());
+      waiter.channel.closeAsync();
+    } finally {
+      HashContext.release(context);
+    }
+  }
+
+  private PooledBuffer encodeResponse(long requestId, int iterations, byte[] hash, int offset) {
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    try {
+      messageEncoder.encodeHashResponse(response.buffer(), requestId, iterations, hash, offset);
+    } catch (RuntimeException e) {
+      response.release();
+      throw e;
+    }
+    return response;
+  }
+
+  public String getBatchEngineName() {
+    return batchEngine != null ? batchEngine.name() : "none";
+  }
+
+  public HashResultCache getResultCache() {
+    return resultCache;
   }
 }
@@ -0,0 +1,299 @@
+package main.java.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import main.java.channel.Channel;
+import main.java.server.ServerConfig;
+import main.java.util.metrics.MetricsRegistry;
+
+// Caches SHA-256 chains keyed by request data. An entry stores every intermediate round, so a
+// request for (data, n) is answered from any entry with at least n rounds and can resume from a
+// shorter one. Eviction is CLOCK over a fixed ring of slots, bounded by entry count and bytes.
+public final class HashResultCache {
+
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+  private final ConcurrentHashMap<ChainKey, ChainEntry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<ChainKey, InFlight> inFlight = new ConcurrentHashMap<>();
+  private final ChainKey[] ring;
+  private final long maxBytes;
+  private int hand = 0;
+  private long usedBytes = 0;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder partialHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public HashResultCache(int maxEntries, long maxBytes) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+    }
+    this.ring = new ChainKey[maxEntries];
+    this.maxBytes = maxBytes;
+    registerMetrics();
+  }
+
+  private void registerMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    registry.counterFunction("jam_hash_cache_hits_total", "Requests answered from the cache.",
+        hits::sum);
+    registry.counterFunction("jam_hash_cache_partial_hits_total",
+        "Requests that resumed from a shorter cached chain.", partialHits::sum);
+    registry.counterFunction("jam_hash_cache_misses_total", "Requests computed from scratch.",
+        misses::sum);
+    registry.counterFunction("jam_hash_cache_coalesced_total",
+        "Requests attached to an identical computation already in flight.", coalesced::sum);
+    registry.counterFunction("jam_hash_cache_evictions_total", "Chains evicted by CLOCK.",
+        evictions::sum);
+    registry.gauge("jam_hash_cache_entries", "Chains currently cached.", entries::size);
+    registry.gauge("jam_hash_cache_bytes", "Estimated bytes held by cached chains.",
+        this::getUsedBytes);
+  }
+
+  ChainEntry get(ChainKey key) {
+    ChainEntry entry = entries.get(key);
+    if (entry != null && !entry.referenced) {
+      entry.referenced = true;
+    }
+    return entry;
+  }
+
+  void recordHit() {
+    hits.increment();
+  }
+
+  void recordPartialHit() {
+    partialHits.increment();
+  }
+
+  void recordMiss() {
+    misses.increment();
+  }
+
+  // Returns null when the caller now owns the computation for key; otherwise the computation
+  // already running for it.
+  InFlight startComputation(ChainKey key, int rounds) {
+    return inFlight.putIfAbsent(key, new InFlight(rounds));
+  }
+
+  List<Waiter> finishComputation(ChainKey key, ChainEntry entry) {
+    InFlight computation = inFlight.remove(key);
+    if (entry != null) {
+      put(entry);
+    }
+    return computation == null ? Collections.emptyList() : computation.complete();
+  }
+
+  boolean attach(InFlight computation, Channel channel, long requestId, int iterations) {
+    if (computation.attach(new Waiter(channel, requestId, iterations))) {
+      coalesced.increment();
+      return true;
+    }
+    return false;
+  }
+
+  synchronized void put(ChainEntry entry) {
+    ChainEntry previous = entries.get(entry.key);
+    if (previous != null) {
+      if (previous.rounds >= entry.rounds) {
+        return;
+      }
+      entries.put(entry.key, entry);
+      usedBytes += entry.weight - previous.weight;
+      evictUntilWithinBytes();
+      return;
+    }
+
+    if (entry.weight > maxBytes) {
+      return;
+    }
+    int slot = findSlot();
+    ring[slot] = entry.key;
+    entries.put(entry.key, entry);
+    usedBytes += entry.weight;
+    evictUntilWithinBytes();
+  }
+
+  private int findSlot() {
+    while (true) {
+      int slot = hand;
+      hand = (hand + 1) % ring.length;
+      ChainKey key = ring[slot];
+      if (key == null) {
+        return slot;
+      }
+      ChainEntry entry = entries.get(key);
+      if (entry != null && entry.referenced) {
+        entry.referenced = false;
+        continue;
+      }
+      evict(slot);
+      return slot;
+    }
+  }
+
+  private void evictUntilWithinBytes() {
+    while (usedBytes > maxBytes) {
+      int slot = hand;
+      hand = (hand + 1) % ring.length;
+      ChainKey key = ring[slot];
+      if (key == null) {
+        continue;
+      }
+      ChainEntry entry = entries.get(key);
+      if (entry != null && entry.referenced) {
+        entry.referenced = false;
+        continue;
+      }
+      evict(slot);
+    }
+  }
+
+  private void evict(int slot) {
+    ChainEntry removed = entries.remove(ring[slot]);
+    ring[slot] = null;
+    if (removed != null) {
+      usedBytes -= removed.weight;
+      evictions.increment();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getPartialHitCount() {
+    return partialHits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  public int getEntryCount() {
+    return entries.size();
+  }
+
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "HashResultCache[hits=" + getHitCount() + ", partialHits=" + getPartialHitCount()
+        + ", misses=" + getMissCount() + ", coalesced=" + getCoalescedCount() + ", evictions="
+        + getEvictionCount() + ", entries=" + getEntryCount() + ", bytes=" + getUsedBytes() + "]";
+  }
+
+  static final class ChainKey {
+
+    private final byte[] data;
+    private final int hash;
+
+    ChainKey(byte[] data) {
+      this.data = data;
+      this.hash = Arrays.hashCode(data);
+    }
+
+    byte[] data() {
+      return data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ChainKey)) {
+        return false;
+      }
+      ChainKey other = (ChainKey) o;
+      return hash == other.hash && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  // Immutable apart from the CLOCK reference bit; extending a chain replaces the entry.
+  static final class ChainEntry {
+
+    final ChainKey key;
+    final byte[] chain;
+    final int rounds;
+    final long weight;
+    volatile boolean referenced = false;
+
+    ChainEntry(ChainKey key, byte[] chain, int rounds) {
+      this.key = key;
+      this.chain = chain;
+      this.rounds = rounds;
+      this.weight = ENTRY_OVERHEAD_BYTES + key.data().length + (long) chain.length;
+    }
+
+    int offsetOf(int round) {
+      return (round - 1) * ServerConfig.HASH_RESULT_SIZE;
+    }
+  }
+
+  static final class Waiter {
+
+    final Channel channel;
+    final long requestId;
+    final int iterations;
+
+    Waiter(Channel channel, long requestId, int iterations) {
+      this.channel = channel;
+      this.requestId = requestId;
+      this.iterations = iterations;
+    }
+  }
+
+  static final class InFlight {
+
+    private final int rounds;
+    private List<Waiter> waiters;
+    private boolean completed = false;
+
+    InFlight(int rounds) {
+      this.rounds = rounds;
+    }
+
+    synchronized boolean attach(Waiter waiter) {
+      if (completed || waiter.iterations > rounds) {
+        return false;
+      }
+      if (waiters == null) {
+        waiters = new ArrayList<>(4);
+      }
+      waiters.add(waiter);
+      return true;
+    }
+
+    synchronized List<Waiter> complete() {
+      completed = true;
+      List<Waiter> result = waiters == null ? Collections.emptyList() : waiters;
+      waiters = null;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package main.java.handler;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import main.java.channel.Channel;
+import main.java.message.MessageEncoder;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import main.java.server.ServerMetrics;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
+import main.java.util.log.RateLimitedLog;
+
+// Hashes payloads too large for HASH_REQUEST. Chunks are fed to a per-stream MessageDigest on
+// the I/O thread straight from the read buffer; after HASH_STREAM_END the remaining iteration
+// rounds run inline or on the business pool like any other request.
+//
+// Every BEGIN gets exactly one answer: HASH_RESPONSE, SERVER_BUSY or HASH_STREAM_ERROR. A stream
+// that fails part way is kept (without its data) until END so later chunks are dropped quietly;
+// chunks and END for an id with no open stream are ignored.
+public class HashStreamHandler {
+
+  private static final RateLimitedLog REQUEST_LOG = new RateLimitedLog(
+      "HashStreamHandler invalid request");
+  private static final RateLimitedLog ERROR_LOG = new RateLimitedLog("HashStreamHandler error");
+
+  public static final byte STATUS_TOO_MANY_STREAMS = 1;
+  public static final byte STATUS_DUPLICATE_STREAM = 2;
+  public static final byte STATUS_STREAM_TOO_LARGE = 3;
+  public static final byte STATUS_INVALID_ITERATIONS = 4;
+
+  private final BusinessExecutor businessExecutor;
+  private final long maxStreamBytes;
+  private final MessageEncoder messageEncoder = MessageEncoder.getInstance();
+  private final BufferPool bufferPool = BufferPool.getInstance();
+
+  private static final class Stream {
+
+    final MessageDigest digest;
+    long requestId;
+    int iterations;
+    long bytes;
+    boolean open;
+    boolean failed;
+
+    Stream() {
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("SHA-256 algorithm not available", e);
+      }
+    }
+  }
+
+  // Streams of one connection, attached to the channel. Slots and their digests are reused, and
+  // the table is small enough that a linear scan beats boxing the id for a map lookup.
+  private static final class StreamTable {
+
+    final Stream[] streams = new Stream[ServerConfig.STREAM_MAX_CONCURRENT];
+
+    Stream find(long requestId) {
+      for (Stream stream : streams) {
+        if (stream != null && stream.open && stream.requestId == requestId) {
+          return stream;
+        }
+      }
+      return null;
+    }
+
+    Stream freeSlot() {
+      for (int i = 0; i < streams.length; i++) {
+        if (streams[i] == null) {
+          streams[i] = new Stream();
+        }
+        if (!streams[i].open) {
+          return streams[i];
+        }
+      }
+      return null;
+    }
+  }
+
+  public HashStreamHandler(BusinessExecutor businessExecutor) {
+    this(businessExecutor, ServerConfig.STREAM_MAX_BYTES);
+  }
+
+  HashStreamHandler(BusinessExecutor businessExecutor, long maxStreamBytes) {
+    if (maxStreamBytes <= 0) {
+      throw new IllegalArgumentException("Max stream bytes must be positive: " + maxStreamBytes);
+    }
+    this.businessExecutor = businessExecutor;
+    this.maxStreamBytes = maxStreamBytes;
+  }
+
+  public void handle(MessageView message, Channel channel) {
+    switch (message.getType()) {
+      case HASH_STREAM_BEGIN -> begin(message, channel);
+      case HASH_STREAM_CHUNK -> chunk(message, channel);
+      case HASH_STREAM_END -> end(message, channel);
+      default -> REQUEST_LOG.log("Unexpected message type: " + message.getType());
+    }
+  }
+
+  private void begin(MessageView message, Channel channel) {
+    if (message.getPayloadLength() != ServerConfig.STREAM_BEGIN_PAYLOAD_SIZE
+        || message.getLong(0) < 0) {
+      REQUEST_LOG.log("Invalid HASH_STREAM_BEGIN");
+      channel.close();
+      return;
+    }
+    long requestId = message.getLong(0);
+    int iterations = message.getInt(ServerConfig.REQUEST_ID_SIZE);
+    channel.requestAccepted();
+
+    if (iterations < 1 || iterations > ServerConfig.MAX_ITERATIONS) {
+      sendError(channel, requestId, STATUS_INVALID_ITERATIONS);
+      return;
+    }
+    StreamTable table = (StreamTable) channel.attachment();
+    if (table == null) {
+      table = new StreamTable();
+      channel.attach(table);
+    }
+    if (table.find(requestId) != null) {
+      sendError(channel, requestId, STATUS_DUPLICATE_STREAM);
+      return;
+    }
+    Stream stream = table.freeSlot();
+    if (stream == null) {
+      sendError(channel, requestId, STATUS_TOO_MANY_STREAMS);
+      return;
+    }
+
+    stream.digest.reset();
+    stream.requestId = requestId;
+    stream.iterations = iterations;
+    stream.bytes = 0;
+    stream.failed = false;
+    stream.open = true;
+    ServerMetrics.STREAMS_STARTED.increment();
+  }
+
+  private void chunk(MessageView message, Channel channel) {
+    int payloadLength = message.getPayloadLength();
+    if (payloadLength < ServerConfig.REQUEST_ID_SIZE) {
+      REQUEST_LOG.log("Invalid HASH_STREAM_CHUNK payload size: " + payloadLength);
+      channel.close();
+      return;
+    }
+    Stream stream = findStream(channel, message.getLong(0));
+    if (stream == null || stream.failed) {
+      return;
+    }
+
+    int length = payloadLength - ServerConfig.REQUEST_ID_SIZE;
+    stream.bytes += length;
+    if (stream.bytes > maxStreamBytes) {
+      stream.failed = true;
+      stream.digest.reset();
+      sendError(channel, stream.requestId, STATUS_STREAM_TOO_LARGE);
+      return;
+    }
+    message.updateDigest(stream.digest, ServerConfig.REQUEST_ID_SIZE, length);
+    ServerMetrics.STREAM_BYTES.add(length);
+  }
+
+  private void end(MessageView message, Channel channel) {
+    if (message.getPayloadLength() != ServerConfig.STREAM_END_PAYLOAD_SIZE) {
+      REQUEST_LOG.log("Invalid HASH_STREAM_END payload size: " + message.getPayloadLength());
+      channel.close();
+      return;
+    }
+    Stream stream = findStream(channel, message.getLong(0));
+    if (stream == null) {
+      return;
+    }
+    stream.open = false;
+    if (stream.failed) {
+      return;
+    }
+
+    long requestId = stream.requestId;
+    int iterations = stream.iterations;
+    byte[] hash = new byte[ServerConfig.HASH_RESULT_SIZE];
+    try {
+      stream.digest.digest(hash, 0, hash.length);
+    } catch (DigestException e) {
+      throw new IllegalStateException("SHA-256 digest failed", e);
+    }
+
+    // Remaining rounds hash 32 bytes each, one compression-function call per round.
+    int rounds = iterations - 1;
+    if (rounds == 0 || (ServerConfig.INLINE_EXECUTION_ENABLED && channel.getInlineController()
+        .tryRunInline(rounds))) {
+      completeRounds(stream.digest, channel, requestId, iterations, hash);
+      return;
+    }
+    BusinessTask task = BusinessTask.of(() -> {
+      HashContext context = HashContext.acquire();
+      try {
+        completeRounds(context.digest, channel, requestId, iterations, hash);
+      } finally {
+        HashContext.release(context);
+      }
+    }, () -> sendServerBusy(channel, requestId), channel, rounds);
+    if (!businessExecutor.trySubmit(task)) {
+      sendServerBusy(channel, requestId);
+    }
+  }
+
+  private static Stream findStream(Channel channel, long requestId) {
+    StreamTable table = (StreamTable) channel.attachment();
+    return table != null ? table.find(requestId) : null;
+  }
+
+  private void completeRounds(MessageDigest digest, Channel channel, long requestId,
+      int iterations, byte[] hash) {
+    if (!channel.isActive()) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      for (int i = 1; i < iterations; i++) {
+        digest.update(hash);
+        digest.digest(hash, 0, hash.length);
+      }
+    } catch (DigestException e) {
+      ERROR_LOG.log("Error finishing stream " + requestId + ": " + e.getMessage());
+      channel.closeAsync();
+      return;
+    }
+    ServerMetrics.hashLatency(iterations).recordNanos(System.nanoTime() - start);
+
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    messageEncoder.encodeHashResponse(response.buffer(), requestId, iterations, hash);
+    channel.queueResponse(response);
+  }
+
+  private void sendError(Channel channel, long requestId, byte status) {
+    ServerMetrics.STREAM_ERRORS.increment();
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    messageEncoder.encodeHashStreamError(response.buffer(), requestId, status);
+    channel.queueResponse(response);
+  }
+
+  private void sendServerBusy(Channel channel, long requestId) {
+    if (channel.isActive()) {
+      PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+      messageEncoder.encodeServerBusy(response.buffer(), requestId);
+      channel.queueResponse(response);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package main.java.handler;
+
+import java.nio.charset.StandardCharsets;
+import main.java.channel.Channel;
+import main.java.message.MessageEncoder;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
+import main.java.util.log.RateLimitedLog;
+import main.java.util.metrics.MetricsRegistry;
+
+// Answers STATS_REQUEST with the same Prometheus text the admin endpoint serves. A scrape walks
+// every registered series, which grows with the number of loops and labels, so it runs on the
+// business pool rather than the event loop and is shed with SERVER_BUSY like any other task.
+public class StatsRequestHandler {
+
+  private static final RateLimitedLog REQUEST_LOG = new RateLimitedLog(
+      "StatsRequestHandler invalid request");
+  private static final RateLimitedLog ERROR_LOG = new RateLimitedLog(
+      "StatsRequestHandler error");
+  // Fair-scheduling charge for a scrape, in the business queue's SHA-256 block units.
+  private static final int SCRAPE_COST = 64;
+
+  private final MetricsRegistry registry;
+  private final BusinessExecutor businessExecutor;
+  private final MessageEncoder messageEncoder = MessageEncoder.getInstance();
+  private final BufferPool bufferPool = BufferPool.getInstance();
+
+  public StatsRequestHandler(MetricsRegistry registry, BusinessExecutor businessExecutor) {
+    this.registry = registry;
+    this.businessExecutor = businessExecutor;
+  }
+
+  public void handle(MessageView message, Channel channel) {
+    if (message.getType() != MessageType.STATS_REQUEST) {
+      REQUEST_LOG.log("Unexpected message type: " + message.getType());
+      return;
+    }
+    if (message.getPayloadLength() != ServerConfig.REQUEST_ID_SIZE) {
+      REQUEST_LOG.log("Invalid STATS_REQUEST payload size: " + message.getPayloadLength());
+      channel.close();
+      return;
+    }
+
+    long requestId = message.getLong(0);
+    channel.requestAccepted();
+    BusinessTask task = BusinessTask.of(() -> respond(channel, requestId),
+        () -> sendServerBusy(channel, requestId), channel, SCRAPE_COST);
+    if (!businessExecutor.trySubmit(task)) {
+      sendServerBusy(channel, requestId);
+    }
+  }
+
+  private void respond(Channel channel, long requestId) {
+    if (!channel.isActive()) {
+      return;
+    }
+    try {
+      byte[] text = registry.scrape().getBytes(StandardCharsets.UTF_8);
+      PooledBuffer response = bufferPool.allocate(
+          ServerConfig.HEADER_SIZE + ServerConfig.STATS_RESPONSE_HEADER_SIZE + text.length);
+      try {
+        messageEncoder.encodeStatsResponse(response.buffer(), requestId, text);
+      } catch (RuntimeException e) {
+        response.release();
+        throw e;
+      }
+      channel.queueResponse(response);
+    } catch (RuntimeException e) {
+      ERROR_LOG.log("Error answering STATS_REQUEST " + requestId + ": " + e.getMessage(), e);
+      channel.closeAsync();
+    }
+  }
+
+  private void sendServerBusy(Channel channel, long requestId) {
+    if (!channel.isActive()) {
+      return;
+    }
+    PooledBuffer response = bufferPool.allocate(ServerConfig.RESPONSE_BUFFER_CAPACITY);
+    messageEncoder.encodeServerBusy(response.buffer(), requestId);
+    channel.queueResponse(response);
+  }
+}
@@ -18,58 +18,59 @@ public class MessageDecoder {
 
   public static class DecodeException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     public DecodeException(String message) {
       super(message);
     }
   }
 
-  public List<Message> decode(ByteBuffer buffer) throws DecodeException {
-    List<Message> messages = new ArrayList<>();
-
-    while (buffer.remaining() >= ServerConfig.HEADER_SIZE) {
-      int startPos = buffer.position();
-      int length = buffer.getInt();
-      short typeValue = buffer.getShort();
-
-      if (length < 0 || length > ServerConfig.MAX_PAYLOAD_SIZE) {
-        throw new DecodeException("Invalid message length: " + length);
-      }
-
-      if (!isValidMessageType(typeValue)) {
-        throw new DecodeException("Invalid message type: " + typeValue);
-      }
-
-      if (buffer.remaining() < length) {
-        buffer.position(startPos);
-        break;
-      }
+  @FunctionalInterface
+  public interface FrameListener<T> {
 
-      try {
-        ByteBuffer payload = extractPayload(buffer, length);
-        messages.add(new Message(typeValue, payload));
-      } catch (Exception e) {
-        throw new DecodeException("Failed to create message: " + e.getMessage());
-      }
-    }
+    void onMessage(T context, MessageView message) throws DecodeException;
+  }
 
+  public List<Message> decode(ByteBuffer buffer) throws DecodeException {
+    List<Message> messages = new ArrayList<>();
+    decode(buffer, new MessageView(), messages, (list, view) -> list.add(view.toMessage()));
     return messages;
   }
 
-  private boolean isValidMessageType(short typeValue) {
+  // The view is only valid inside the callback; buffer is left at the first incomplete frame.
+  public <T> int decode(ByteBuffer buffer, MessageView view, T context, FrameListener<T> listener)
+      throws DecodeException {
+    int frames = 0;
+
     try {
-      MessageType.fromValue(typeValue);
-      return true;
-    } catch (IllegalArgumentException e) {
-      return false;
+      while (buffer.remaining() >= ServerConfig.HEADER_SIZE) {
+        int startPos = buffer.position();
+        int length = buffer.getInt(startPos);
+        short typeValue = buffer.getShort(startPos + 4);
+
+        MessageType type = MessageType.lookup(typeValue);
+        if (type == null) {
+          throw new DecodeException("Invalid message type: " + typeValue);
+        }
+
+        if (length < 0 || length > type.getMaxPayloadSize()) {
+          throw new DecodeException("Invalid message length: " + length);
+        }
+
+        int payloadOffset = startPos + ServerConfig.HEADER_SIZE;
+        if (buffer.limit() - payloadOffset < length) {
+          break;
+        }
+
+        view.wrap(type, buffer, payloadOffset, length);
+        listener.onMessage(context, view);
+        buffer.position(payloadOffset + length);
+        frames++;
+      }
+    } finally {
+      view.clear();
     }
-  }
 
-  private ByteBuffer extractPayload(ByteBuffer buffer, int length) {
-    int oldLimit = buffer.limit();
-    buffer.limit(buffer.position() + length);
-    ByteBuffer payload = buffer.slice().asReadOnlyBuffer();
-    buffer.limit(oldLimit);
-    buffer.position(buffer.position() + length);
-    return payload;
+    return frames;
   }
 }
@@ -35,4 +35,113 @@ public class MessageEncoder {
 
     return buffer;
   }
+
+  public void encodeHashResponse(ByteBuffer target, long requestId, int iterations,
+      byte[] hashResult) {
+    if (hashResult.length != ServerConfig.HASH_RESULT_SIZE) {
+      throw new IllegalArgumentException("Invalid hash result size: " + hashResult.length);
+    }
+    encodeHashResponse(target, requestId, iterations, hashResult, 0);
+  }
+
+  public void encodeHashResponse(ByteBuffer target, long requestId, int iterations,
+      byte[] hashResult, int offset) {
+    if (offset < 0 || offset + ServerConfig.HASH_RESULT_SIZE > hashResult.length) {
+      throw new IllegalArgumentException(
+          "Invalid hash result offset " + offset + " for array of " + hashResult.length);
+    }
+    if (target.remaining() < ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for HASH_RESPONSE: " + target.remaining());
+    }
+
+    target.putInt(ServerConfig.RESPONSE_PAYLOAD_SIZE);
+    target.putShort(MessageType.HASH_RESPONSE.getValue());
+    target.putLong(requestId);
+    target.putInt(iterations);
+    target.putInt(ServerConfig.HASH_RESULT_SIZE);
+    target.put(hashResult, offset, ServerConfig.HASH_RESULT_SIZE);
+    target.flip();
+  }
+
+  public void encodeServerBusy(ByteBuffer target, long requestId) {
+    if (target.remaining() < ServerConfig.HEADER_SIZE + ServerConfig.SERVER_BUSY_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for SERVER_BUSY: " + target.remaining());
+    }
+
+    target.putInt(ServerConfig.SERVER_BUSY_PAYLOAD_SIZE);
+    target.putShort(MessageType.SERVER_BUSY.getValue());
+    target.putLong(requestId);
+    target.flip();
+  }
+
+  // REQUEST_ABORTED: requestId(8), reason(1).
+  public void encodeRequestAborted(ByteBuffer target, long requestId, byte reason) {
+    if (target.remaining() < ServerConfig.HEADER_SIZE + ServerConfig.REQUEST_ABORTED_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for REQUEST_ABORTED: " + target.remaining());
+    }
+
+    target.putInt(ServerConfig.REQUEST_ABORTED_PAYLOAD_SIZE);
+    target.putShort(MessageType.REQUEST_ABORTED.getValue());
+    target.putLong(requestId);
+    target.put(reason);
+    target.flip();
+  }
+
+  // HASH_BATCH_RESPONSE: batchId(8), itemCount(4), then status(1) and hash(32) per item. Failed
+  // items carry a zero hash.
+  public void encodeHashBatchResponse(ByteBuffer target, long batchId, int count,
+      byte[] statuses, byte[] hashes) {
+    int payloadSize = ServerConfig.BATCH_RESPONSE_HEADER_SIZE
+        + count * ServerConfig.BATCH_RESPONSE_ITEM_SIZE;
+    if (target.remaining() < ServerConfig.HEADER_SIZE + payloadSize) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for HASH_BATCH_RESPONSE: " + target.remaining());
+    }
+    if (statuses.length < count || hashes.length < count * ServerConfig.HASH_RESULT_SIZE) {
+      throw new IllegalArgumentException("Batch results shorter than item count " + count);
+    }
+
+    target.putInt(payloadSize);
+    target.putShort(MessageType.HASH_BATCH_RESPONSE.getValue());
+    target.putLong(batchId);
+    target.putInt(count);
+    for (int i = 0; i < count; i++) {
+      target.put(statuses[i]);
+      target.put(hashes, i * ServerConfig.HASH_RESULT_SIZE, ServerConfig.HASH_RESULT_SIZE);
+    }
+    target.flip();
+  }
+
+  // HASH_STREAM_ERROR: requestId(8), status(1).
+  public void encodeHashStreamError(ByteBuffer target, long requestId, byte status) {
+    if (target.remaining() < ServerConfig.HEADER_SIZE + ServerConfig.STREAM_ERROR_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for HASH_STREAM_ERROR: " + target.remaining());
+    }
+
+    target.putInt(ServerConfig.STREAM_ERROR_PAYLOAD_SIZE);
+    target.putShort(MessageType.HASH_STREAM_ERROR.getValue());
+    target.putLong(requestId);
+    target.put(status);
+    target.flip();
+  }
+
+  // STATS_RESPONSE: requestId(8), textLength(4), UTF-8 text.
+  public void encodeStatsResponse(ByteBuffer target, long requestId, byte[] text) {
+    int payloadSize = ServerConfig.STATS_RESPONSE_HEADER_SIZE + text.length;
+    if (target.remaining() < ServerConfig.HEADER_SIZE + payloadSize) {
+      throw new IllegalArgumentException(
+          "Target buffer too small for STATS_RESPONSE: " + target.remaining());
+    }
+
+    target.putInt(payloadSize);
+    target.putShort(MessageType.STATS_RESPONSE.getValue());
+    target.putLong(requestId);
+    target.putInt(text.length);
+    target.put(text);
+    target.flip();
+  }
 }
@@ -1,33 +1,58 @@
 package main.java.message;
 
-import java.util.HashMap;
-import java.util.Map;
+import main.java.server.ServerConfig;
 
 public enum MessageType {
-  HASH_REQUEST((short) 1), HASH_RESPONSE((short) 2);
+  HASH_REQUEST((short) 1), HASH_RESPONSE((short) 2), SERVER_BUSY((short) 3),
+  STATS_REQUEST((short) 4), STATS_RESPONSE((short) 5),
+  HASH_BATCH_REQUEST((short) 6, ServerConfig.BATCH_REQUEST_MAX_PAYLOAD_SIZE),
+  HASH_BATCH_RESPONSE((short) 7), HASH_STREAM_BEGIN((short) 8),
+  HASH_STREAM_CHUNK((short) 9, ServerConfig.STREAM_CHUNK_MAX_PAYLOAD_SIZE),
+  HASH_STREAM_END((short) 10), HASH_STREAM_ERROR((short) 11), HASH_REQUEST_V2((short) 12),
+  CANCEL_REQUEST((short) 13), REQUEST_ABORTED((short) 14);
 
   private final short value;
-  private static final Map<Short, MessageType> VALUE_CACHE = new HashMap<>();
+  // Largest payload the decoder accepts for this type.
+  private final int maxPayloadSize;
+  private static final MessageType[] VALUE_TABLE;
 
   static {
+    int maxValue = 0;
     for (MessageType type : values()) {
-      VALUE_CACHE.put(type.value, type);
+      maxValue = Math.max(maxValue, type.value);
+    }
+    VALUE_TABLE = new MessageType[maxValue + 1];
+    for (MessageType type : values()) {
+      VALUE_TABLE[type.value] = type;
     }
   }
 
   MessageType(short value) {
+    this(value, ServerConfig.MAX_PAYLOAD_SIZE);
+  }
+
+  MessageType(short value, int maxPayloadSize) {
     this.value = value;
+    this.maxPayloadSize = maxPayloadSize;
   }
 
   public static MessageType fromValue(short value) {
-    MessageType type = VALUE_CACHE.get(value);
+    MessageType type = lookup(value);
     if (type == null) {
       throw new IllegalArgumentException("Unknown message type: " + value);
     }
     return type;
   }
 
+  public static MessageType lookup(short value) {
+    return value >= 0 && value < VALUE_TABLE.length ? VALUE_TABLE[value] : null;
+  }
+
   public short getValue() {
     return value;
   }
+
+  public int getMaxPayloadSize() {
+    return maxPayloadSize;
+  }
 }
@@ -0,0 +1,91 @@
+package main.java.message;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+public final class MessageView {
+
+  private MessageType type;
+  private ByteBuffer buffer;
+  private int payloadOffset;
+  private int payloadLength;
+
+  void wrap(MessageType type, ByteBuffer buffer, int payloadOffset, int payloadLength) {
+    this.type = type;
+    this.buffer = buffer;
+    this.payloadOffset = payloadOffset;
+    this.payloadLength = payloadLength;
+  }
+
+  void clear() {
+    this.type = null;
+    this.buffer = null;
+  }
+
+  public MessageType getType() {
+    return type;
+  }
+
+  public short getTypeValue() {
+    return type.getValue();
+  }
+
+  public int getPayloadLength() {
+    return payloadLength;
+  }
+
+  public long getLong(int index) {
+    checkIndex(index, Long.BYTES);
+    return buffer.getLong(payloadOffset + index);
+  }
+
+  public int getInt(int index) {
+    checkIndex(index, Integer.BYTES);
+    return buffer.getInt(payloadOffset + index);
+  }
+
+  public short getShort(int index) {
+    checkIndex(index, Short.BYTES);
+    return buffer.getShort(payloadOffset + index);
+  }
+
+  public byte getByte(int index) {
+    checkIndex(index, Byte.BYTES);
+    return buffer.get(payloadOffset + index);
+  }
+
+  public void getBytes(int index, byte[] dst, int dstOffset, int length) {
+    checkIndex(index, length);
+    buffer.get(payloadOffset + index, dst, dstOffset, length);
+  }
+
+  public ByteBuffer slicePayload(int index, int length) {
+    checkIndex(index, length);
+    return buffer.slice(payloadOffset + index, length).asReadOnlyBuffer();
+  }
+
+  // Feeds part of the payload to digest straight from the read buffer, without a slice.
+  public void updateDigest(MessageDigest digest, int index, int length) {
+    checkIndex(index, length);
+    int position = buffer.position();
+    int limit = buffer.limit();
+    buffer.limit(payloadOffset + index + length).position(payloadOffset + index);
+    try {
+      digest.update(buffer);
+    } finally {
+      buffer.limit(limit).position(position);
+    }
+  }
+
+  public Message toMessage() {
+    return new Message(type.getValue(), buffer.slice(payloadOffset, payloadLength));
+  }
+
+  private void checkIndex(int index, int length) {
+    if (index < 0 || length < 0 || index + length > payloadLength) {
+      throw new IndexOutOfBoundsException(
+          "Payload access out of bounds: index=" + index + ", length=" + length + ", payload="
+              + payloadLength);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package main.java.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import main.java.util.NioThreadFactory;
+import main.java.util.metrics.MetricsRegistry;
+
+// Small HTTP listener for operators: GET /metrics returns the registry in Prometheus text format.
+public class AdminServer implements AutoCloseable {
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer httpServer;
+  private final ExecutorService executor;
+  private final MetricsRegistry registry;
+
+  public AdminServer(InetSocketAddress address, MetricsRegistry registry) throws IOException {
+    this.registry = registry;
+    this.executor = Executors.newSingleThreadExecutor(new NioThreadFactory("admin-http"));
+    this.httpServer = HttpServer.create(address, 0);
+    httpServer.createContext(ServerConfig.ADMIN_METRICS_PATH, this::handleMetrics);
+    httpServer.setExecutor(executor);
+  }
+
+  public void start() {
+    httpServer.start();
+    System.out.println("AdminServer listening on " + httpServer.getAddress()
+        + ServerConfig.ADMIN_METRICS_PATH);
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      if (!ServerConfig.ADMIN_METRICS_PATH.equals(exchange.getRequestURI().getPath())) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    httpServer.stop(0);
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
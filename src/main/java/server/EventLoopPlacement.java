@@ -0,0 +1,120 @@
+package main.java.server;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import main.java.util.metrics.MetricsRegistry;
+
+// Picks the event loop for a newly accepted connection. Shared by all acceptors, so round robin
+// really rotates over every loop instead of each acceptor keeping its own counter.
+public class EventLoopPlacement {
+
+  public enum Strategy {
+    ROUND_ROBIN, LEAST_CONNECTIONS, LEAST_PENDING_TASKS, POWER_OF_TWO;
+
+    public static Strategy parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException | NullPointerException e) {
+        throw new IllegalArgumentException("Unknown placement strategy: " + value);
+      }
+    }
+  }
+
+  private final NioEventLoop[] eventLoops;
+  private final Strategy strategy;
+  private final AtomicLong counter = new AtomicLong(0);
+
+  public EventLoopPlacement(NioEventLoop[] eventLoops, Strategy strategy) {
+    if (eventLoops == null || eventLoops.length == 0) {
+      throw new IllegalArgumentException("At least one event loop is required");
+    }
+    if (strategy == null) {
+      throw new IllegalArgumentException("Strategy cannot be null");
+    }
+    this.eventLoops = eventLoops;
+    this.strategy = strategy;
+    registerMetrics();
+  }
+
+  private void registerMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    registry.gauge("jam_event_loop_connection_imbalance_permille",
+        "Connections on the busiest loop relative to the mean, x1000 (1000 = balanced).",
+        () -> imbalancePermille(false));
+    registry.gauge("jam_event_loop_load_imbalance_permille",
+        "Highest loop load score relative to the mean, x1000 (1000 = balanced).",
+        () -> imbalancePermille(true));
+  }
+
+  public NioEventLoop next() {
+    NioEventLoop loop = switch (strategy) {
+      case ROUND_ROBIN -> eventLoops[(int) (counter.getAndIncrement() % eventLoops.length)];
+      case LEAST_CONNECTIONS -> leastConnections();
+      case LEAST_PENDING_TASKS -> leastPendingTasks();
+      case POWER_OF_TWO -> powerOfTwo();
+    };
+    loop.recordPlacement();
+    return loop;
+  }
+
+  // Scans start at a rotating offset so ties do not all land on loop 0.
+  private NioEventLoop leastConnections() {
+    int start = (int) (counter.getAndIncrement() % eventLoops.length);
+    NioEventLoop best = eventLoops[start];
+    for (int i = 1; i < eventLoops.length; i++) {
+      NioEventLoop candidate = eventLoops[(start + i) % eventLoops.length];
+      if (candidate.getAssignedChannelCount() < best.getAssignedChannelCount()) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private NioEventLoop leastPendingTasks() {
+    int start = (int) (counter.getAndIncrement() % eventLoops.length);
+    NioEventLoop best = eventLoops[start];
+    for (int i = 1; i < eventLoops.length; i++) {
+      NioEventLoop candidate = eventLoops[(start + i) % eventLoops.length];
+      int pending = candidate.getPendingTaskCount();
+      int bestPending = best.getPendingTaskCount();
+      if (pending < bestPending || (pending == bestPending
+          && candidate.getAssignedChannelCount() < best.getAssignedChannelCount())) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  // Two random loops, keep the lighter one: close to least-loaded without every acceptor
+  // herding onto the same loop between score updates.
+  private NioEventLoop powerOfTwo() {
+    if (eventLoops.length == 1) {
+      return eventLoops[0];
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(eventLoops.length);
+    int second = random.nextInt(eventLoops.length - 1);
+    if (second >= first) {
+      second++;
+    }
+    NioEventLoop a = eventLoops[first];
+    NioEventLoop b = eventLoops[second];
+    return a.getLoadScore() <= b.getLoadScore() ? a : b;
+  }
+
+  private long imbalancePermille(boolean byLoadScore) {
+    long max = 0;
+    long total = 0;
+    for (NioEventLoop loop : eventLoops) {
+      long value = byLoadScore ? loop.getLoadScore() : loop.getActiveChannelCount();
+      max = Math.max(max, value);
+      total += value;
+    }
+    return total == 0 ? 1000 : max * 1000 * eventLoops.length / total;
+  }
+
+  public Strategy getStrategy() {
+    return strategy;
+  }
+}
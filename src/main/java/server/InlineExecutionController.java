@@ -0,0 +1,63 @@
+package main.java.server;
+
+// Decides which requests are cheap enough to run on the event-loop thread. The cost threshold is
+// tuned AIMD-style from how long each loop iteration stays busy after select() returns.
+public final class InlineExecutionController {
+
+  private final long latencyBudgetNanos;
+  private final int maxThreshold;
+  // Written only by the owning loop thread; volatile so the metrics scrape reads current values.
+  private volatile int threshold;
+  private volatile long inlineExecutions = 0;
+  private volatile long budgetExceeded = 0;
+  private boolean inlineThisIteration = false;
+
+  public InlineExecutionController(long latencyBudgetNanos, int initialThreshold,
+      int maxThreshold) {
+    if (latencyBudgetNanos <= 0) {
+      throw new IllegalArgumentException("Latency budget must be positive: " + latencyBudgetNanos);
+    }
+    if (initialThreshold < 0 || initialThreshold > maxThreshold) {
+      throw new IllegalArgumentException(
+          "Initial threshold must be within [0, " + maxThreshold + "]: " + initialThreshold);
+    }
+    this.latencyBudgetNanos = latencyBudgetNanos;
+    this.threshold = initialThreshold;
+    this.maxThreshold = maxThreshold;
+  }
+
+  public boolean tryRunInline(int cost) {
+    if (cost > threshold) {
+      return false;
+    }
+    inlineExecutions++;
+    inlineThisIteration = true;
+    return true;
+  }
+
+  // Only iterations that actually ran inline work are blamed for overshooting the budget; any
+  // iteration with spare headroom lets the threshold creep back up.
+  void onIterationComplete(long busyNanos) {
+    if (busyNanos > latencyBudgetNanos) {
+      if (inlineThisIteration) {
+        budgetExceeded++;
+        threshold >>= 1;
+      }
+    } else if (busyNanos < latencyBudgetNanos / 2 && threshold < maxThreshold) {
+      threshold++;
+    }
+    inlineThisIteration = false;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  public long getInlineExecutions() {
+    return inlineExecutions;
+  }
+
+  public long getBudgetExceededCount() {
+    return budgetExceeded;
+  }
+}
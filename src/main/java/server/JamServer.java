@@ -1,49 +1,130 @@
 package main.java.server;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import main.java.channel.ChannelHandler;
 import main.java.handler.BusinessExecutor;
+import main.java.handler.HashBatchRequestHandler;
 import main.java.handler.HashRequestHandler;
+import main.java.handler.HashStreamHandler;
+import main.java.handler.StatsRequestHandler;
 import main.java.message.MessageDecoder;
+import main.java.util.buffer.BufferPool;
+import main.java.util.log.AsyncLogger;
+import main.java.util.metrics.MetricsRegistry;
 
 public class JamServer implements AutoCloseable {
 
+  public enum Transport {
+    NIO, VIRTUAL_THREAD;
+
+    public static Transport parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException | NullPointerException e) {
+        throw new IllegalArgumentException("Unknown transport: " + value);
+      }
+    }
+  }
+
+  private final Transport transport;
   private final NioAcceptor[] connectionAcceptors;
   private final NioEventLoop[] eventLoops;
+  private final EventLoopPlacement placement;
+  private final VirtualThreadAcceptor[] virtualThreadAcceptors;
   private final BusinessExecutor businessExecutor;
+  private final HashRequestHandler businessHandler;
+  private final AdminServer adminServer;
+  private final TlsContext tlsContext;
   private volatile boolean running;
 
   public JamServer(int port) throws IOException {
+    this(port, Transport.parse(ServerConfig.TRANSPORT));
+  }
+
+  public JamServer(int port, Transport transport) throws IOException {
+    this(port, transport, ServerConfig.TLS_ENABLED);
+  }
+
+  public JamServer(int port, Transport transport, boolean tls) throws IOException {
+    if (tls && transport != Transport.NIO) {
+      throw new IllegalArgumentException("TLS requires the NIO transport");
+    }
     InetSocketAddress address = new InetSocketAddress(port);
+    this.transport = transport;
     this.running = true;
+    this.tlsContext = tls ? TlsContext.create() : null;
 
     MessageDecoder decoder = MessageDecoder.getInstance();
     this.businessExecutor = new BusinessExecutor();
-    HashRequestHandler businessHandler = new HashRequestHandler(businessExecutor);
-    ChannelHandler channelHandler = new ChannelHandler(decoder, businessHandler);
+    this.businessHandler = new HashRequestHandler(businessExecutor);
+    MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+    ChannelHandler channelHandler = new ChannelHandler(decoder, businessHandler,
+        new StatsRequestHandler(metricsRegistry, businessExecutor),
+        new HashBatchRequestHandler(businessExecutor, businessHandler),
+        new HashStreamHandler(businessExecutor));
     AtomicLong connectionCounter = new AtomicLong(0);
+    metricsRegistry.gauge("jam_connections_active", "Open client connections.",
+        connectionCounter::get);
+
+    int acceptorCount = ServerConfig.ACCEPTOR_COUNT;
+    if (transport == Transport.VIRTUAL_THREAD) {
+      this.eventLoops = null;
+      this.placement = null;
+      this.connectionAcceptors = null;
+      this.virtualThreadAcceptors = new VirtualThreadAcceptor[acceptorCount];
+      ServerSocketChannel listenChannel = VirtualThreadAcceptor.openListenChannel(address);
+      for (int i = 0; i < acceptorCount; i++) {
+        this.virtualThreadAcceptors[i] = new VirtualThreadAcceptor(listenChannel, channelHandler,
+            connectionCounter, i + 1);
+        this.virtualThreadAcceptors[i].start();
+      }
+    } else {
+      int eventLoopSize = ServerConfig.EVENT_LOOP_COUNT;
+      this.eventLoops = new NioEventLoop[eventLoopSize];
+      for (int i = 0; i < eventLoopSize; i++) {
+        this.eventLoops[i] = new NioEventLoop(i, channelHandler, connectionCounter, tlsContext);
+        this.eventLoops[i].start();
+      }
 
-    int eventLoopSize = ServerConfig.EVENT_LOOP_COUNT;
-    this.eventLoops = new NioEventLoop[eventLoopSize];
-    for (int i = 0; i < eventLoopSize; i++) {
-      this.eventLoops[i] = new NioEventLoop(i, channelHandler, connectionCounter);
-      this.eventLoops[i].start();
+      this.virtualThreadAcceptors = null;
+      this.placement = new EventLoopPlacement(eventLoops,
+          EventLoopPlacement.Strategy.parse(ServerConfig.PLACEMENT_STRATEGY));
+      this.connectionAcceptors = new NioAcceptor[acceptorCount];
+      for (int i = 0; i < acceptorCount; i++) {
+        this.connectionAcceptors[i] = new NioAcceptor(address, placement, connectionCounter,
+            i + 1);
+        this.connectionAcceptors[i].start();
+      }
     }
 
-    int acceptorCount = ServerConfig.ACCEPTOR_COUNT;
-    this.connectionAcceptors = new NioAcceptor[acceptorCount];
-    for (int i = 0; i < acceptorCount; i++) {
-      this.connectionAcceptors[i] = new NioAcceptor(address, eventLoops, connectionCounter, i + 1);
-      this.connectionAcceptors[i].start();
+    if (ServerConfig.ADMIN_PORT > 0) {
+      InetSocketAddress adminAddress = ServerConfig.ADMIN_HOST != null
+          ? new InetSocketAddress(ServerConfig.ADMIN_HOST, ServerConfig.ADMIN_PORT)
+          : new InetSocketAddress(InetAddress.getLoopbackAddress(), ServerConfig.ADMIN_PORT);
+      this.adminServer = new AdminServer(adminAddress, metricsRegistry);
+      this.adminServer.start();
+    } else {
+      this.adminServer = null;
     }
 
+    String workers = eventLoops != null ? eventLoops.length + " event loops"
+        : "a virtual thread per connection";
+    String placementInfo = placement != null ? ", placement: " + placement.getStrategy() : "";
+    String selectedKeysInfo = eventLoops != null ? ", selected keys: "
+        + (eventLoops[0].isSelectedKeySetOptimized() ? "array" : "JDK set") : "";
     System.out.println(
         "JamServer started on port " + port + " with " + acceptorCount + " acceptors and "
-            + eventLoopSize + " event loops.");
+            + workers + " (transport: " + transport + (tlsContext != null ? " + TLS" : "")
+            + placementInfo + selectedKeysInfo + ", business executor: "
+            + businessExecutor.getMode()
+            + ", batch SHA-256 engine: " + businessHandler.getBatchEngineName() + ").");
   }
 
   @Override
@@ -54,6 +135,10 @@ public class JamServer implements AutoCloseable {
     running = false;
     System.out.println("Server shutdown sequence initiated...");
 
+    if (adminServer != null) {
+      adminServer.close();
+    }
+
     if (connectionAcceptors != null) {
       System.out.println("Closing NioAcceptors...");
       for (NioAcceptor acceptor : connectionAcceptors) {
@@ -63,6 +148,15 @@ public class JamServer implements AutoCloseable {
       }
     }
 
+    if (virtualThreadAcceptors != null) {
+      System.out.println("Closing VirtualThreadAcceptors...");
+      for (VirtualThreadAcceptor acceptor : virtualThreadAcceptors) {
+        if (acceptor != null) {
+          acceptor.close();
+        }
+      }
+    }
+
     if (eventLoops != null) {
       System.out.println("Closing NioEventLoops...");
       for (NioEventLoop loop : eventLoops) {
@@ -72,14 +166,29 @@ public class JamServer implements AutoCloseable {
       }
     }
 
+    if (tlsContext != null) {
+      tlsContext.close();
+    }
+
     if (businessExecutor != null) {
       System.out.println("Closing BusinessExecutor...");
       businessExecutor.close();
+      System.out.println("Business executor stats: " + businessExecutor.statsSummary());
     }
 
+    System.out.println("Buffer pool stats: " + BufferPool.getInstance());
+    if (businessHandler.getResultCache() != null) {
+      System.out.println("Hash cache stats: " + businessHandler.getResultCache());
+    }
+    // The writer thread is a daemon; drain what the loops logged before the JVM exits.
+    AsyncLogger.getInstance().flush(1, TimeUnit.SECONDS);
     System.out.println("Server shutdown completed.");
   }
 
+  public Transport getTransport() {
+    return transport;
+  }
+
   public void shutdownGracefully(long timeout, TimeUnit unit) {
     System.out.println("Attempting graceful shutdown...");
     try {
@@ -14,23 +14,35 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import main.java.util.NioThreadFactory;
+import main.java.util.SelectedKeySet;
+import main.java.util.log.RateLimitedLog;
 
 public class NioAcceptor implements Closeable {
 
-  private final NioEventLoop[] eventLoops;
+  private static final RateLimitedLog SELECT_LOG = new RateLimitedLog("NioAcceptor select error");
+  private static final RateLimitedLog REJECTED_LOG = new RateLimitedLog(
+      "NioAcceptor connection rejected");
+  private static final RateLimitedLog ACCEPT_LOG = new RateLimitedLog("NioAcceptor accept error");
+
+  private final EventLoopPlacement placement;
   private final ServerSocketChannel serverChannel;
+  private final SelectionKey acceptKey;
   private final Selector selector;
+  private final SelectedKeySet selectedKeySet;
   private final ExecutorService executor;
   private final AtomicLong connectionCounter;
-  private final AtomicLong workerCounter = new AtomicLong(0);
   private volatile boolean shutdown = false;
+  // Acceptor thread only: OP_ACCEPT is off until acceptResumeNanos after an accept() failure.
+  private boolean acceptPaused = false;
+  private long acceptResumeNanos;
 
-  public NioAcceptor(InetSocketAddress listenAddress, NioEventLoop[] eventLoops,
+  public NioAcceptor(InetSocketAddress listenAddress, EventLoopPlacement placement,
       AtomicLong connectionCounter, int acceptorId) throws IOException { // acceptorId 추가
-    this.eventLoops = eventLoops;
+    this.placement = placement;
     this.connectionCounter = connectionCounter;
 
     this.selector = Selector.open();
+    this.selectedKeySet = ServerConfig.SELECTOR_OPTIMIZED ? SelectedKeySet.install(selector) : null;
     this.executor = Executors.newSingleThreadExecutor(
         new NioThreadFactory("acceptor-pool-" + acceptorId));
 
@@ -50,7 +62,7 @@ public class NioAcceptor implements Closeable {
     serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, ServerConfig.RECEIVE_BUFFER_SIZE);
     serverChannel.configureBlocking(false);
     serverChannel.socket().bind(listenAddress, ServerConfig.BACKLOG);
-    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
     System.out.println("NioAcceptor #" + acceptorId + " listening on " + listenAddress);
   }
@@ -63,31 +75,63 @@ public class NioAcceptor implements Closeable {
     System.out.println("NioAcceptor run loop started.");
     while (!Thread.currentThread().isInterrupted() && !shutdown) {
       try {
-        selector.select(1000);
+        selector.select(selectTimeoutMillis());
 
         if (shutdown) {
           break;
         }
 
-        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-        while (it.hasNext()) {
-          SelectionKey key = it.next();
-          it.remove();
-          if (key.isValid() && key.isAcceptable()) {
-            acceptConnections(key);
+        if (selectedKeySet != null) {
+          int count = selectedKeySet.size();
+          for (int i = 0; i < count; i++) {
+            SelectionKey key = selectedKeySet.get(i);
+            if (key.isValid() && key.isAcceptable()) {
+              acceptConnections(key);
+            }
+          }
+          selectedKeySet.clear();
+        } else {
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (key.isValid() && key.isAcceptable()) {
+              acceptConnections(key);
+            }
           }
         }
       } catch (IOException e) {
         if (!shutdown) {
-          e.printStackTrace();
+          SELECT_LOG.log("Error in NioAcceptor select: " + e.getMessage(), e);
         }
       } catch (Exception e) {
-        e.printStackTrace();
+        SELECT_LOG.log("Unexpected error in NioAcceptor: " + e.getMessage(), e);
       }
     }
     System.out.println("NioAcceptor run loop terminated.");
   }
 
+  // Turns OP_ACCEPT back on once the backoff has passed, or shortens the wait until it does.
+  private long selectTimeoutMillis() {
+    if (!acceptPaused) {
+      return 1000;
+    }
+    long remaining = acceptResumeNanos - System.nanoTime();
+    if (remaining > 0) {
+      return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+    acceptPaused = false;
+    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+    return 1000;
+  }
+
+  private void pauseAccepting() {
+    acceptPaused = true;
+    acceptResumeNanos = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(ServerConfig.ACCEPT_ERROR_BACKOFF_MILLIS);
+    acceptKey.interestOps(0);
+  }
+
   private void acceptConnections(SelectionKey key) {
     ServerSocketChannel server = (ServerSocketChannel) key.channel();
     while (true) {
@@ -99,7 +143,8 @@ public class NioAcceptor implements Closeable {
         }
 
         if (connectionCounter.get() >= ServerConfig.MAX_CONNECTIONS) {
-          System.err.println("Connection rejected: Max connections reached.");
+          REJECTED_LOG.log("Connection rejected: Max connections reached.");
+          ServerMetrics.CONNECTIONS_REJECTED.increment();
           client.close();
           continue;
         }
@@ -108,14 +153,20 @@ public class NioAcceptor implements Closeable {
         client.setOption(StandardSocketOptions.TCP_NODELAY, true);
         client.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
 
-        int processorIndex = (int) (workerCounter.getAndIncrement() % eventLoops.length);
-        eventLoops[processorIndex].registerChannel(client);
+        placement.next().registerChannel(client);
+        ServerMetrics.CONNECTIONS_ACCEPTED.increment();
 
       } catch (IOException e) {
-        System.err.println("Error accepting connection: " + e.getMessage());
+        ACCEPT_LOG.log("Error accepting connection: " + e.getMessage());
+        if (client == null) {
+          // accept() itself failed (e.g. out of file descriptors). The listen socket stays
+          // ready, so a level-triggered select would spin on it until the backoff passes.
+          pauseAccepting();
+          break;
+        }
         closeClientOnError(client);
       } catch (Exception e) {
-        System.err.println("Error configuring or registering connection: " + e.getMessage());
+        ACCEPT_LOG.log("Error configuring or registering connection: " + e.getMessage());
         closeClientOnError(client);
       }
     }
@@ -126,7 +177,7 @@ public class NioAcceptor implements Closeable {
       try {
         client.close();
       } catch (IOException e) {
-        System.err.println("Error closing client channel: " + e.getMessage());
+        ACCEPT_LOG.log("Error closing client channel: " + e.getMessage());
       }
     }
   }
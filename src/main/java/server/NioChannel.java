@@ -1,20 +1,37 @@
 package main.java.server;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import main.java.channel.Channel;
 import main.java.channel.ChannelHandler;
+import main.java.channel.InFlightRequests;
+import main.java.util.HashedTimingWheel;
+import main.java.util.buffer.BufferPool;
+import main.java.util.buffer.PooledBuffer;
 
-public class NioChannel implements Closeable {
+public class NioChannel implements Channel {
 
   private static final AtomicLong CHANNEL_ID_GENERATOR = new AtomicLong(0);
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+  private static final long IDLE_TIMEOUT_NANOS =
+      ServerConfig.CHANNEL_IDLE_TIMEOUT_SECONDS * 1_000_000_000L;
+  private static final long READ_TIMEOUT_NANOS =
+      ServerConfig.CHANNEL_READ_TIMEOUT_SECONDS * 1_000_000_000L;
+  private static final long WRITE_TIMEOUT_NANOS =
+      ServerConfig.CHANNEL_WRITE_TIMEOUT_SECONDS * 1_000_000_000L;
+  private static final long RECHECK_NANOS = minPositive(IDLE_TIMEOUT_NANOS,
+      minPositive(READ_TIMEOUT_NANOS, WRITE_TIMEOUT_NANOS));
 
   private final long channelId;
   private final SocketChannel socketChannel;
@@ -22,31 +39,105 @@ public class NioChannel implements Closeable {
   private final NioEventLoop eventLoop;
   private final ChannelHandler handler;
   private final AtomicLong connectionCounter;
-  private final AtomicBoolean active = new AtomicBoolean(true);
+  // Only cleared on the event-loop thread, so a volatile flag is enough.
+  private volatile boolean active = true;
 
-  private final ByteBuffer readBuffer;
-  private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+  // Reads go into the loop's shared buffer. Bytes of an incomplete frame are carried to the
+  // next read in a pooled buffer sized to fit them, and released once a read ends on a frame
+  // boundary, so idle connections hold no read buffer at all.
+  private PooledBuffer leftover;
+  private final Deque<PooledBuffer> writeQueue = new ArrayDeque<>(
+      ServerConfig.CHANNEL_WRITE_QUEUE_INITIAL_CAPACITY);
+  private boolean flushScheduled = false;
 
+  // Backpressure accounting; only touched on the event-loop thread.
+  private int outstandingRequests = 0;
+  private long queuedResponseBytes = 0;
+  private boolean readSuspended = false;
+  private int readSuspendCount = 0;
+
+  // Timeouts. Reads and writes only stamp these fields; the single wheel timer re-evaluates
+  // them when it fires and is pulled earlier only when a shorter deadline starts. Created on the
+  // first armTimeout(), after registration, so the constructor does not hand out this.
+  private HashedTimingWheel.Timeout timeout;
+  private long lastActivityNanos;
+  private long lastWriteProgressNanos;
+  private long partialFrameSinceNanos;
+  private boolean partialFrame = false;
+  private Object attachment;
+  private final InFlightRequests inFlightRequests = new InFlightRequests();
+
+  // TLS; all null/unused for plaintext channels. Ciphertext is read into the loop's shared net
+  // buffer and unwrapped into its shared read buffer, so only a trailing partial record
+  // (netLeftover) or records the socket would not take (netOut) hold pooled buffers.
+  private final TlsContext tlsContext;
+  private final SSLEngine sslEngine;
+  private final int tlsPacketSize;
+  private final int tlsApplicationSize;
+  private PooledBuffer netLeftover;
+  private PooledBuffer netOut;
+  private int netOutResponses = 0;
+  private boolean handshaking = false;
+  // Delegated tasks are running on the handshake pool; the engine must not be touched.
+  private boolean tlsTaskRunning = false;
+  private long handshakeStartMillis;
+  private long handshakeStartNanos;
+
+  // tlsContext is null for plaintext connections.
   public NioChannel(SocketChannel socketChannel, SelectionKey selectionKey, NioEventLoop eventLoop,
-      ChannelHandler handler, AtomicLong connectionCounter) {
+      ChannelHandler handler, AtomicLong connectionCounter, TlsContext tlsContext)
+      throws SSLException {
     this.channelId = CHANNEL_ID_GENERATOR.incrementAndGet();
     this.socketChannel = socketChannel;
     this.selectionKey = selectionKey;
     this.eventLoop = eventLoop;
     this.handler = handler;
     this.connectionCounter = connectionCounter;
-    this.readBuffer = ByteBuffer.allocateDirect(ServerConfig.READ_BUFFER_SIZE);
+    this.lastActivityNanos = eventLoop.currentTimeNanos();
+    this.tlsContext = tlsContext;
+    if (tlsContext != null) {
+      this.sslEngine = tlsContext.newEngine();
+      this.tlsPacketSize = sslEngine.getSession().getPacketBufferSize();
+      this.tlsApplicationSize = sslEngine.getSession().getApplicationBufferSize();
+      sslEngine.beginHandshake();
+      handshaking = true;
+      handshakeStartMillis = System.currentTimeMillis();
+      handshakeStartNanos = System.nanoTime();
+      // An unfinished handshake is held to the read timeout, like an unfinished frame.
+      partialFrame = true;
+      partialFrameSinceNanos = lastActivityNanos;
+    } else {
+      this.sslEngine = null;
+      this.tlsPacketSize = 0;
+      this.tlsApplicationSize = 0;
+    }
   }
 
+  // Called by the loop once the key is attached; starts the channel's timeouts.
+  void registered() {
+    if (handshaking && READ_TIMEOUT_NANOS > 0) {
+      armTimeout(partialFrameSinceNanos + READ_TIMEOUT_NANOS);
+    }
+    if (RECHECK_NANOS > 0) {
+      armTimeout(lastActivityNanos + RECHECK_NANOS);
+    }
+  }
+
+  @Override
   public boolean isActive() {
-    return active.get() && socketChannel.isOpen() && selectionKey.isValid();
+    return active && socketChannel.isOpen() && selectionKey.isValid();
   }
 
   public void handleRead() {
     if (!isActive()) {
       return;
     }
+    if (sslEngine != null) {
+      handleTlsRead();
+      return;
+    }
 
+    ByteBuffer readBuffer = prepareReadBuffer();
     int bytesRead;
     try {
       bytesRead = socketChannel.read(readBuffer);
@@ -62,16 +153,215 @@ public class NioChannel implements Closeable {
     }
 
     if (bytesRead > 0) {
+      ServerMetrics.BYTES_READ.add(bytesRead);
+      lastActivityNanos = eventLoop.currentTimeNanos();
       readBuffer.flip();
-      try {
-        handler.channelRead(this, readBuffer);
-      } finally {
-        if (readBuffer.hasRemaining()) {
-          readBuffer.compact();
-        } else {
-          readBuffer.clear();
+      dispatchRead(readBuffer);
+    }
+  }
+
+  // The loop's read buffer, in write mode, starting with this channel's partial frame if any.
+  private ByteBuffer prepareReadBuffer() {
+    ByteBuffer readBuffer = eventLoop.getReadBuffer();
+    readBuffer.clear();
+    if (leftover != null) {
+      ByteBuffer pending = leftover.buffer();
+      readBuffer.put(0, pending, 0, pending.position());
+      readBuffer.position(pending.position());
+    }
+    return readBuffer;
+  }
+
+  private void dispatchRead(ByteBuffer readBuffer) {
+    try {
+      handler.channelRead(this, readBuffer);
+    } finally {
+      trackPartialFrame(readBuffer.position() > 0, readBuffer.hasRemaining());
+      if (readBuffer.hasRemaining() && active) {
+        leftover = saveRemaining(leftover, readBuffer);
+      } else {
+        releaseLeftover();
+      }
+    }
+  }
+
+  private static PooledBuffer saveRemaining(PooledBuffer saved, ByteBuffer source) {
+    int remaining = source.remaining();
+    if (saved != null && saved.capacity() < remaining) {
+      saved.release();
+      saved = null;
+    }
+    if (saved == null) {
+      saved = BufferPool.getInstance().allocate(remaining);
+    }
+    ByteBuffer pending = saved.buffer();
+    pending.clear();
+    pending.put(source);
+    return saved;
+  }
+
+  private void releaseLeftover() {
+    if (leftover != null) {
+      leftover.release();
+      leftover = null;
+    }
+  }
+
+  private void handleTlsRead() {
+    ByteBuffer netBuffer = prepareNetBuffer();
+    int bytesRead;
+    try {
+      bytesRead = socketChannel.read(netBuffer);
+    } catch (IOException e) {
+      handler.exceptionCaught(this, e);
+      internalClose();
+      return;
+    }
+
+    if (bytesRead == -1) {
+      internalClose();
+      return;
+    }
+    if (bytesRead > 0) {
+      ServerMetrics.BYTES_READ.add(bytesRead);
+      lastActivityNanos = eventLoop.currentTimeNanos();
+      netBuffer.flip();
+      unwrapInbound(netBuffer);
+    }
+  }
+
+  private ByteBuffer prepareNetBuffer() {
+    ByteBuffer netBuffer = eventLoop.getNetReadBuffer();
+    netBuffer.clear();
+    if (netLeftover != null) {
+      ByteBuffer pending = netLeftover.buffer();
+      netBuffer.put(0, pending, 0, pending.position());
+      netBuffer.position(pending.position());
+    }
+    return netBuffer;
+  }
+
+  // Unwraps every complete record in netBuffer. Plaintext is handed to the handler whenever the
+  // read buffer could not take another full record, and once more at the end.
+  private void unwrapInbound(ByteBuffer netBuffer) {
+    ByteBuffer readBuffer = prepareReadBuffer();
+    int carried = readBuffer.position();
+    boolean closed = false;
+    try {
+      while (active && !tlsTaskRunning && netBuffer.hasRemaining()) {
+        if (readBuffer.remaining() < tlsApplicationSize) {
+          readBuffer.flip();
+          dispatchRead(readBuffer);
+          readBuffer = prepareReadBuffer();
+          carried = readBuffer.position();
+          continue;
+        }
+        SSLEngineResult result = sslEngine.unwrap(netBuffer, readBuffer);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+          break;
+        }
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+          closed = true;
+          break;
+        }
+        if (!onHandshakeStatus(result.getHandshakeStatus())
+            || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+          break;
         }
       }
+    } catch (IOException e) {
+      handler.exceptionCaught(this, e);
+      internalClose();
+      return;
+    }
+
+    if (active && readBuffer.position() > carried) {
+      readBuffer.flip();
+      dispatchRead(readBuffer);
+    }
+    if (closed) {
+      internalClose();
+    } else if (netBuffer.hasRemaining() && active) {
+      netLeftover = saveRemaining(netLeftover, netBuffer);
+    } else if (netLeftover != null) {
+      netLeftover.release();
+      netLeftover = null;
+    }
+  }
+
+  // Returns false if unwrapping has to stop for now.
+  private boolean onHandshakeStatus(HandshakeStatus status) throws IOException {
+    switch (status) {
+      case NEED_TASK:
+        runDelegatedTasks();
+        return false;
+      case FINISHED:
+        handshakeFinished();
+        flushTls();
+        return active;
+      case NEED_WRAP:
+        flushTls();
+        return active;
+      default:
+        return true;
+    }
+  }
+
+  private void runDelegatedTasks() {
+    setTlsTaskRunning(true);
+    if (!tlsContext.runDelegatedTasks(sslEngine,
+        () -> eventLoop.addTask(this::delegatedTasksDone))) {
+      internalClose();
+    }
+  }
+
+  private void delegatedTasksDone() {
+    setTlsTaskRunning(false);
+    if (!isActive()) {
+      return;
+    }
+    driveTls();
+  }
+
+  // Moves the handshake along after tasks or a write: sends what the engine wants to send, then
+  // unwraps records that arrived while it was waiting.
+  private void driveTls() {
+    // Requests sent right behind the client's Finished are still waiting in netLeftover too.
+    boolean wasHandshaking = handshaking;
+    try {
+      flushTls();
+    } catch (IOException e) {
+      handler.exceptionCaught(this, e);
+      internalClose();
+      return;
+    }
+    if (active && wasHandshaking && !tlsTaskRunning && netOut == null && netLeftover != null) {
+      ByteBuffer netBuffer = prepareNetBuffer();
+      netBuffer.flip();
+      unwrapInbound(netBuffer);
+    }
+  }
+
+  private void handshakeFinished() {
+    handshaking = false;
+    partialFrame = false;
+    TlsContext.recordHandshake(sslEngine.getSession(), handshakeStartMillis, handshakeStartNanos);
+  }
+
+  private void setTlsTaskRunning(boolean running) {
+    tlsTaskRunning = running;
+    if (!isActive()) {
+      return;
+    }
+    try {
+      int interestOps = selectionKey.interestOps();
+      if (running) {
+        selectionKey.interestOps(interestOps & ~SelectionKey.OP_READ);
+      } else if (!readSuspended) {
+        selectionKey.interestOps(interestOps | SelectionKey.OP_READ);
+      }
+    } catch (CancelledKeyException e) {
+      internalClose();
     }
   }
 
@@ -80,6 +370,10 @@ public class NioChannel implements Closeable {
       return;
     }
 
+    if (sslEngine != null) {
+      driveTls();
+      return;
+    }
     try {
       flush();
     } catch (IOException e) {
@@ -88,17 +382,65 @@ public class NioChannel implements Closeable {
     }
   }
 
+  void flushIfPending() {
+    flushScheduled = false;
+    if (selectionKey.isValid() && (selectionKey.interestOps() & SelectionKey.OP_WRITE) != 0) {
+      return;
+    }
+    handleWrite();
+  }
+
   private void flush() throws IOException {
-    ByteBuffer buffer;
-    while ((buffer = writeQueue.peek()) != null) {
-      socketChannel.write(buffer);
-      if (buffer.hasRemaining()) {
+    ByteBuffer[] batch = eventLoop.getWriteBatch();
+    PooledBuffer[] pooledBatch = eventLoop.getPooledWriteBatch();
+    while (!writeQueue.isEmpty()) {
+      int count = 0;
+      PooledBuffer buffer;
+      while (count < batch.length && (buffer = writeQueue.poll()) != null) {
+        pooledBatch[count] = buffer;
+        batch[count++] = buffer.buffer();
+      }
+
+      long written;
+      try {
+        written = socketChannel.write(batch, 0, count);
+      } catch (IOException e) {
+        requeue(pooledBatch, 0, count);
+        throw e;
+      } finally {
+        Arrays.fill(batch, 0, count, null);
+      }
+
+      queuedResponseBytes -= written;
+      ServerMetrics.BYTES_WRITTEN.add(written);
+      if (written > 0) {
+        lastWriteProgressNanos = eventLoop.currentTimeNanos();
+        lastActivityNanos = lastWriteProgressNanos;
+      }
+
+      int completed = 0;
+      long now = System.nanoTime();
+      while (completed < count && !pooledBatch[completed].buffer().hasRemaining()) {
+        ServerMetrics.RESPONSE_FLUSH_LATENCY.recordNanos(
+            now - pooledBatch[completed].acquiredAtNanos());
+        pooledBatch[completed].release();
+        pooledBatch[completed++] = null;
+      }
+      eventLoop.recordWrite(completed);
+
+      if (completed < count) {
+        requeue(pooledBatch, completed, count);
+        registerWriteInterestIfNeeded();
+        updateBackpressure();
         return;
       }
-      writeQueue.poll();
     }
+    updateBackpressure();
+    clearWriteInterest();
+  }
 
-    if (writeQueue.isEmpty() && selectionKey.isValid()) {
+  private void clearWriteInterest() {
+    if (selectionKey.isValid()) {
       final int interestOps = selectionKey.interestOps();
       if ((interestOps & SelectionKey.OP_WRITE) != 0) {
         try {
@@ -110,19 +452,315 @@ public class NioChannel implements Closeable {
     }
   }
 
-  public void queueResponse(ByteBuffer buffer) {
+  // Writes records left over from the last call, then wraps whatever the engine has to send:
+  // handshake messages, or queued responses once the handshake is done.
+  private void flushTls() throws IOException {
+    if (tlsTaskRunning) {
+      return;
+    }
+    while (true) {
+      if (netOut != null && !writeNetOut()) {
+        registerWriteInterestIfNeeded();
+        updateBackpressure();
+        return;
+      }
+      HandshakeStatus status = sslEngine.getHandshakeStatus();
+      if (status == HandshakeStatus.NEED_TASK) {
+        runDelegatedTasks();
+        return;
+      }
+      if (status != HandshakeStatus.NEED_WRAP
+          && (status != HandshakeStatus.NOT_HANDSHAKING || writeQueue.isEmpty())) {
+        break;
+      }
+      if (!wrapOutbound(status == HandshakeStatus.NOT_HANDSHAKING) || !active) {
+        break;
+      }
+    }
+    updateBackpressure();
+    clearWriteInterest();
+  }
+
+  // Packs records into one pooled buffer until it could not hold another full record. Returns
+  // false if nothing was produced.
+  private boolean wrapOutbound(boolean responses) throws SSLException {
+    ByteBuffer[] batch = eventLoop.getWriteBatch();
+    PooledBuffer[] pooledBatch = eventLoop.getPooledWriteBatch();
+    int count = 0;
+    PooledBuffer buffer;
+    while (responses && count < batch.length && (buffer = writeQueue.poll()) != null) {
+      pooledBatch[count] = buffer;
+      batch[count++] = buffer.buffer();
+    }
+
+    PooledBuffer out = BufferPool.getInstance().allocate(tlsPacketSize);
+    ByteBuffer dst = out.buffer();
+    int completed = 0;
+    try {
+      while (dst.remaining() >= tlsPacketSize) {
+        SSLEngineResult result = sslEngine.wrap(batch, completed, count - completed, dst);
+        queuedResponseBytes -= result.bytesConsumed();
+        while (completed < count && !batch[completed].hasRemaining()) {
+          completed++;
+        }
+        if (result.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+          handshakeFinished();
+        }
+        if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesProduced() == 0
+            || (responses ? completed == count
+            : sslEngine.getHandshakeStatus() != HandshakeStatus.NEED_WRAP)) {
+          break;
+        }
+      }
+    } finally {
+      long now = System.nanoTime();
+      for (int i = 0; i < completed; i++) {
+        ServerMetrics.RESPONSE_FLUSH_LATENCY.recordNanos(now - pooledBatch[i].acquiredAtNanos());
+        pooledBatch[i].release();
+        pooledBatch[i] = null;
+      }
+      requeue(pooledBatch, completed, count);
+      Arrays.fill(batch, 0, count, null);
+    }
+
+    dst.flip();
+    if (!dst.hasRemaining()) {
+      out.release();
+      return false;
+    }
+    netOut = out;
+    netOutResponses += completed;
+    return true;
+  }
+
+  // Returns true once netOut has been written in full and released.
+  private boolean writeNetOut() throws IOException {
+    ByteBuffer out = netOut.buffer();
+    int written = socketChannel.write(out);
+    ServerMetrics.BYTES_WRITTEN.add(written);
+    if (written > 0) {
+      lastWriteProgressNanos = eventLoop.currentTimeNanos();
+      lastActivityNanos = lastWriteProgressNanos;
+    }
+    if (out.hasRemaining()) {
+      eventLoop.recordWrite(0);
+      return false;
+    }
+    eventLoop.recordWrite(netOutResponses);
+    netOutResponses = 0;
+    netOut.release();
+    netOut = null;
+    return true;
+  }
+
+  private boolean hasPendingWrites() {
+    return !writeQueue.isEmpty() || netOut != null;
+  }
+
+  private void requeue(PooledBuffer[] pooledBatch, int from, int to) {
+    for (int i = to - 1; i >= from; i--) {
+      writeQueue.offerFirst(pooledBatch[i]);
+      pooledBatch[i] = null;
+    }
+  }
+
+  @Override
+  public void queueResponse(PooledBuffer buffer) {
     if (!isActive()) {
+      buffer.release();
+      return;
+    }
+
+    if (eventLoop.inEventLoop()) {
+      enqueueResponse(buffer);
+      scheduleFlush();
       return;
     }
 
     eventLoop.addTask(() -> {
       if (isActive()) {
-        writeQueue.offer(buffer);
-        registerWriteInterestIfNeeded();
+        enqueueResponse(buffer);
+        scheduleFlush();
+      } else {
+        buffer.release();
+      }
+    });
+  }
+
+  @Override
+  public void queueResponses(PooledBuffer[] buffers, int count) {
+    if (!isActive()) {
+      releaseAll(buffers, count);
+      return;
+    }
+
+    if (eventLoop.inEventLoop()) {
+      for (int i = 0; i < count; i++) {
+        enqueueResponse(buffers[i]);
+      }
+      scheduleFlush();
+      return;
+    }
+
+    eventLoop.addTask(() -> {
+      if (isActive()) {
+        for (int i = 0; i < count; i++) {
+          enqueueResponse(buffers[i]);
+        }
+        scheduleFlush();
+      } else {
+        releaseAll(buffers, count);
       }
     });
   }
 
+  private void enqueueResponse(PooledBuffer buffer) {
+    if (writeQueue.isEmpty() && WRITE_TIMEOUT_NANOS > 0) {
+      lastWriteProgressNanos = eventLoop.currentTimeNanos();
+      armTimeout(lastWriteProgressNanos + WRITE_TIMEOUT_NANOS);
+    }
+    writeQueue.offer(buffer);
+    queuedResponseBytes += buffer.buffer().remaining();
+    outstandingRequests--;
+  }
+
+  @Override
+  public void requestAccepted() {
+    outstandingRequests++;
+    updateBackpressure();
+  }
+
+  private void updateBackpressure() {
+    if (!readSuspended) {
+      if (outstandingRequests >= ServerConfig.CHANNEL_OUTSTANDING_REQUESTS_HIGH_WATERMARK
+          || queuedResponseBytes >= ServerConfig.CHANNEL_QUEUED_BYTES_HIGH_WATERMARK) {
+        setReadInterest(false);
+      }
+    } else if (outstandingRequests <= ServerConfig.CHANNEL_OUTSTANDING_REQUESTS_LOW_WATERMARK
+        && queuedResponseBytes <= ServerConfig.CHANNEL_QUEUED_BYTES_LOW_WATERMARK) {
+      setReadInterest(true);
+    }
+  }
+
+  private void setReadInterest(boolean enabled) {
+    if (!isActive()) {
+      return;
+    }
+    try {
+      int interestOps = selectionKey.interestOps();
+      if (enabled) {
+        if (!tlsTaskRunning) {
+          selectionKey.interestOps(interestOps | SelectionKey.OP_READ);
+        }
+        readSuspended = false;
+        // A partial frame cannot complete while reads are off; restart its clock.
+        partialFrameSinceNanos = eventLoop.currentTimeNanos();
+        eventLoop.recordReadResumed();
+      } else {
+        selectionKey.interestOps(interestOps & ~SelectionKey.OP_READ);
+        readSuspended = true;
+        readSuspendCount++;
+        eventLoop.recordReadSuspended();
+      }
+    } catch (CancelledKeyException e) {
+      internalClose();
+    }
+  }
+
+  // progress: the handler consumed at least one frame; leftover: bytes of an incomplete frame
+  // remain. A pipelining client always has a partial frame, so the clock restarts on progress.
+  private void trackPartialFrame(boolean progress, boolean leftover) {
+    if (!leftover) {
+      partialFrame = false;
+      return;
+    }
+    if (progress || !partialFrame) {
+      partialFrame = true;
+      partialFrameSinceNanos = eventLoop.currentTimeNanos();
+      if (READ_TIMEOUT_NANOS > 0) {
+        armTimeout(partialFrameSinceNanos + READ_TIMEOUT_NANOS);
+      }
+    }
+  }
+
+  // Only moves the timer earlier; a later deadline is picked up when the timer fires.
+  private void armTimeout(long deadlineNanos) {
+    if (!active) {
+      return;
+    }
+    if (timeout == null) {
+      timeout = new HashedTimingWheel.Timeout(this::onTimeout);
+    }
+    if (!timeout.isScheduled() || deadlineNanos - timeout.getDeadlineNanos() < 0) {
+      eventLoop.getTimingWheel().schedule(timeout, deadlineNanos);
+    }
+  }
+
+  private void onTimeout(long nowNanos) {
+    if (!isActive()) {
+      return;
+    }
+    long next = Long.MAX_VALUE;
+    if (WRITE_TIMEOUT_NANOS > 0 && hasPendingWrites()) {
+      long deadline = lastWriteProgressNanos + WRITE_TIMEOUT_NANOS;
+      if (nowNanos - deadline >= 0) {
+        ServerMetrics.WRITE_TIMEOUTS.increment();
+        internalClose();
+        return;
+      }
+      next = Math.min(next, deadline);
+    }
+    if (READ_TIMEOUT_NANOS > 0 && partialFrame && !readSuspended) {
+      long deadline = partialFrameSinceNanos + READ_TIMEOUT_NANOS;
+      if (nowNanos - deadline >= 0) {
+        ServerMetrics.READ_TIMEOUTS.increment();
+        internalClose();
+        return;
+      }
+      next = Math.min(next, deadline);
+    }
+    if (IDLE_TIMEOUT_NANOS > 0 && !hasPendingWrites() && outstandingRequests == 0) {
+      long deadline = lastActivityNanos + IDLE_TIMEOUT_NANOS;
+      if (nowNanos - deadline >= 0) {
+        ServerMetrics.IDLE_TIMEOUTS.increment();
+        internalClose();
+        return;
+      }
+      next = Math.min(next, deadline);
+    }
+    // Nothing is due; requests in flight or suspended reads are checked again later.
+    eventLoop.getTimingWheel().schedule(timeout,
+        next == Long.MAX_VALUE ? nowNanos + RECHECK_NANOS : next);
+  }
+
+  private static long minPositive(long a, long b) {
+    if (a <= 0) {
+      return Math.max(b, 0);
+    }
+    return b <= 0 ? a : Math.min(a, b);
+  }
+
+  public boolean isReadSuspended() {
+    return readSuspended;
+  }
+
+  public int getReadSuspendCount() {
+    return readSuspendCount;
+  }
+
+  private static void releaseAll(PooledBuffer[] buffers, int count) {
+    for (int i = 0; i < count; i++) {
+      buffers[i].release();
+    }
+  }
+
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      eventLoop.scheduleFlush(this);
+    }
+  }
+
   private void registerWriteInterestIfNeeded() {
     if (!isActive() || !selectionKey.isValid()) {
       return;
@@ -139,8 +777,17 @@ public class NioChannel implements Closeable {
   }
 
   private void internalClose() {
-    if (active.compareAndSet(true, false)) {
+    if (active) {
+      active = false;
+      inFlightRequests.closeAll();
       connectionCounter.decrementAndGet();
+      eventLoop.channelClosed();
+      if (timeout != null) {
+        eventLoop.getTimingWheel().cancel(timeout);
+      }
+      if (sslEngine != null) {
+        closeTls();
+      }
       try {
         if (selectionKey.isValid()) {
           selectionKey.cancel();
@@ -149,19 +796,78 @@ public class NioChannel implements Closeable {
       try {
         socketChannel.close();
       } catch (IOException e) { /* Ignore */ }
-      writeQueue.clear();
+      PooledBuffer buffer;
+      while ((buffer = writeQueue.poll()) != null) {
+        buffer.release();
+      }
+      releaseLeftover();
+      queuedResponseBytes = 0;
+      outstandingRequests = 0;
+    }
+  }
+
+  // Sends close_notify if it fits in the socket buffer right away; the peer sees a plain EOF
+  // otherwise.
+  private void closeTls() {
+    if (handshaking) {
+      ServerMetrics.TLS_HANDSHAKE_FAILURES.increment();
+    }
+    sslEngine.closeOutbound();
+    if (!handshaking && !tlsTaskRunning && netOut == null && socketChannel.isOpen()) {
+      PooledBuffer out = BufferPool.getInstance().allocate(tlsPacketSize);
+      try {
+        sslEngine.wrap(EMPTY_BUFFER, out.buffer());
+        out.buffer().flip();
+        socketChannel.write(out.buffer());
+      } catch (IOException e) { /* Ignore */ } finally {
+        out.release();
+      }
+    }
+    if (netOut != null) {
+      netOut.release();
+      netOut = null;
+    }
+    if (netLeftover != null) {
+      netLeftover.release();
+      netLeftover = null;
     }
   }
 
+  @Override
   public void closeAsync() {
     eventLoop.addTask(this::internalClose);
   }
 
+  @Override
+  public InFlightRequests inFlightRequests() {
+    return inFlightRequests;
+  }
+
   @Override
   public void close() {
     closeAsync();
   }
 
+  public NioEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  @Override
+  public InlineExecutionController getInlineController() {
+    return eventLoop.getInlineController();
+  }
+
+  @Override
+  public Object attachment() {
+    return attachment;
+  }
+
+  @Override
+  public void attach(Object attachment) {
+    this.attachment = attachment;
+  }
+
+  @Override
   public long getChannelId() {
     return channelId;
   }
@@ -2,70 +2,200 @@ package main.java.server;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Queue;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import main.java.channel.ChannelHandler;
+import main.java.util.HashedTimingWheel;
+import main.java.util.MpscArrayQueue;
 import main.java.util.NioThreadFactory;
+import main.java.util.SelectedKeySet;
+import main.java.util.buffer.PooledBuffer;
+import main.java.util.log.RateLimitedLog;
+import main.java.util.metrics.MetricsRegistry;
 
 public class NioEventLoop implements Closeable {
 
+  private static final RateLimitedLog LOOP_LOG = new RateLimitedLog("NioEventLoop error");
+  private static final RateLimitedLog REJECTED_LOG = new RateLimitedLog(
+      "NioEventLoop connection rejected");
+  private static final RateLimitedLog CHANNEL_LOG = new RateLimitedLog(
+      "NioEventLoop channel error");
+
   private final int id;
   private final Selector selector;
+  // Null when the selector keeps the JDK's selected-key set.
+  private final SelectedKeySet selectedKeySet;
   private final ExecutorService executor;
-  private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+  private final MpscArrayQueue<Runnable> taskQueue = new MpscArrayQueue<>(
+      ServerConfig.TASK_QUEUE_CAPACITY);
+  // Loop-thread only: tasks the loop adds to itself while taskQueue is full. Once non-empty, the
+  // loop's later tasks queue here too, so they keep their order; drained after taskQueue.
+  private final ArrayDeque<Runnable> overflowTasks = new ArrayDeque<>();
+  // true while the loop is awake or a wakeup has already been issued; producers only call
+  // selector.wakeup() when they flip it from false.
+  private final AtomicBoolean wakeupPending = new AtomicBoolean(true);
   private final ChannelHandler channelHandler;
   private final AtomicLong connectionCounter;
+  // Every channel on the loop reads into this buffer; only partial frames are copied out.
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(
+      ServerConfig.LOOP_READ_BUFFER_SIZE);
+  // With TLS, ciphertext is read here and unwrapped into readBuffer.
+  private final TlsContext tlsContext;
+  private final ByteBuffer netReadBuffer;
+  private final ByteBuffer[] writeBatch = new ByteBuffer[ServerConfig.MAX_GATHERING_WRITE_BUFFERS];
+  private final PooledBuffer[] pooledWriteBatch =
+      new PooledBuffer[ServerConfig.MAX_GATHERING_WRITE_BUFFERS];
+  private final List<NioChannel> pendingFlushes = new ArrayList<>();
+  private final AtomicLong writeSyscalls = new AtomicLong(0);
+  private final AtomicLong responsesWritten = new AtomicLong(0);
+  private final AtomicLong readSuspensions = new AtomicLong(0);
+  private final AtomicLong readResumptions = new AtomicLong(0);
+  private final InlineExecutionController inlineController = new InlineExecutionController(
+      ServerConfig.INLINE_LOOP_LATENCY_BUDGET_NANOS, ServerConfig.INLINE_INITIAL_COST_THRESHOLD,
+      ServerConfig.INLINE_MAX_COST_THRESHOLD);
+  // Written only by the loop thread; read by metrics scrapes and placement.
+  private volatile int activeChannels = 0;
+  // Channels handed to the loop whose registration task has not run yet.
+  private final AtomicInteger pendingRegistrations = new AtomicInteger(0);
+  private final AtomicLong placements = new AtomicLong(0);
+  // Smoothed share of wall time spent outside select(), in 1/1000ths.
+  private volatile int busyPermille = 0;
+  private final HashedTimingWheel timingWheel;
+  // Clock sampled once per loop iteration; channels use it instead of calling nanoTime().
+  private long loopTimeNanos = System.nanoTime();
+  private long loadWindowStart = System.nanoTime();
+  private long loadWindowIdleNanos = 0;
+  private volatile Thread thread;
   private volatile boolean shutdown = false;
 
   public NioEventLoop(int id, ChannelHandler channelHandler, AtomicLong connectionCounter)
       throws IOException {
+    this(id, channelHandler, connectionCounter, null);
+  }
+
+  public NioEventLoop(int id, ChannelHandler channelHandler, AtomicLong connectionCounter,
+      TlsContext tlsContext) throws IOException {
     this.id = id;
+    this.tlsContext = tlsContext;
+    this.netReadBuffer = tlsContext != null
+        ? ByteBuffer.allocateDirect(ServerConfig.LOOP_READ_BUFFER_SIZE) : null;
     this.selector = Selector.open();
+    this.selectedKeySet = ServerConfig.SELECTOR_OPTIMIZED ? SelectedKeySet.install(selector) : null;
     this.channelHandler = channelHandler;
     this.connectionCounter = connectionCounter;
+    this.timingWheel = new HashedTimingWheel(ServerConfig.TIMER_WHEEL_SIZE,
+        ServerConfig.TIMER_TICK_NANOS, loopTimeNanos);
     this.executor = Executors.newSingleThreadExecutor(new NioThreadFactory("event-loop-" + id));
   }
 
+  private void registerMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    String loop = Integer.toString(id);
+    registry.gauge("jam_event_loop_active_connections", "Connections registered with the loop.",
+        () -> activeChannels, "loop", loop);
+    registry.counterFunction("jam_event_loop_write_syscalls_total",
+        "Gathering write calls issued by the loop.", writeSyscalls::get, "loop", loop);
+    registry.counterFunction("jam_event_loop_responses_written_total",
+        "Responses fully written by the loop.", responsesWritten::get, "loop", loop);
+    registry.counterFunction("jam_event_loop_read_suspensions_total",
+        "Times a channel stopped reading because of backpressure.", readSuspensions::get,
+        "loop", loop);
+    registry.counterFunction("jam_event_loop_inline_executions_total",
+        "Requests computed inline on the loop thread.", inlineController::getInlineExecutions,
+        "loop", loop);
+    registry.gauge("jam_event_loop_pending_tasks", "Tasks waiting in the loop's queue.",
+        taskQueue::size, "loop", loop);
+    registry.gauge("jam_event_loop_busy_permille",
+        "Smoothed share of time the loop spends outside select(), x1000.", () -> busyPermille,
+        "loop", loop);
+    registry.gauge("jam_event_loop_load_score",
+        "Load score used for connection placement.", this::getLoadScore, "loop", loop);
+    registry.counterFunction("jam_event_loop_placements_total",
+        "Connections placed on the loop by the acceptors.", placements::get, "loop", loop);
+  }
+
+  // Metrics are registered here rather than in the constructor, which must not publish this.
   public void start() {
+    registerMetrics();
     executor.execute(this::run);
   }
 
   public void addTask(Runnable task) {
-    if (task != null && !shutdown) {
-      taskQueue.offer(task);
+    if (task == null || shutdown) {
+      return;
+    }
+
+    if (inEventLoop()) {
+      if (!overflowTasks.isEmpty() || !taskQueue.offer(task)) {
+        overflowTasks.addLast(task);
+      }
+      return;
+    }
+    while (!taskQueue.offer(task)) {
+      // Back-pressure other producers until the loop catches up.
+      if (shutdown) {
+        return;
+      }
+      selector.wakeup();
+      Thread.yield();
+    }
+    if (wakeupPending.compareAndSet(false, true)) {
       selector.wakeup();
     }
   }
 
+  public boolean inEventLoop() {
+    return Thread.currentThread() == thread;
+  }
+
   private void executeTasks() {
     Runnable task;
     while ((task = taskQueue.poll()) != null) {
-      try {
-        task.run();
-      } catch (Exception e) {
-        System.err.println("Error executing task in event loop #" + id + ": " + e.getMessage());
-        e.printStackTrace();
-      }
+      runTask(task);
+    }
+    while ((task = overflowTasks.pollFirst()) != null) {
+      runTask(task);
+    }
+  }
+
+  private void runTask(Runnable task) {
+    try {
+      task.run();
+    } catch (Exception e) {
+      LOOP_LOG.log("Error executing task in event loop #" + id + ": " + e.getMessage(), e);
     }
   }
 
   private void run() {
+    thread = Thread.currentThread();
     while (!Thread.currentThread().isInterrupted() && !shutdown) {
       try {
         executeTasks();
 
-        int selected = selector.select(ServerConfig.SELECT_TIMEOUT);
+        wakeupPending.set(false);
+        long selectStart = System.nanoTime();
+        // Tasks run above may have scheduled flushes; those must not wait out a blocking select.
+        int selected = taskQueue.isEmpty() && overflowTasks.isEmpty() && pendingFlushes.isEmpty()
+            ? selector.select(ServerConfig.SELECT_TIMEOUT) : selector.selectNow();
+        wakeupPending.set(true);
+        long busyStart = System.nanoTime();
+        loopTimeNanos = busyStart;
+        loadWindowIdleNanos += busyStart - selectStart;
 
         executeTasks();
 
@@ -73,7 +203,9 @@ public class NioEventLoop implements Closeable {
           break;
         }
 
-        if (selected > 0) {
+        if (selectedKeySet != null) {
+          processSelectedKeys(selectedKeySet);
+        } else if (selected > 0) {
           Set<SelectionKey> selectedKeys = selector.selectedKeys();
           Iterator<SelectionKey> it = selectedKeys.iterator();
           while (it.hasNext()) {
@@ -83,25 +215,152 @@ public class NioEventLoop implements Closeable {
           }
         }
 
+        flushPendingChannels();
+        long busyEnd = System.nanoTime();
+        loopTimeNanos = busyEnd;
+        timingWheel.advance(busyEnd);
+        inlineController.onIterationComplete(busyEnd - busyStart);
+        updateBusyRatio(busyEnd);
+
       } catch (ClosedSelectorException e) {
         break;
       } catch (IOException e) {
-        System.err.println("IOException in event loop #" + id + ": " + e.getMessage());
-        e.printStackTrace();
+        LOOP_LOG.log("IOException in event loop #" + id + ": " + e.getMessage(), e);
       } catch (Exception e) {
-        System.err.println("Unexpected error in event loop #" + id + ": " + e.getMessage());
-        e.printStackTrace();
+        LOOP_LOG.log("Unexpected error in event loop #" + id + ": " + e.getMessage(), e);
       }
     }
     closeSelectorAndChannels();
   }
 
+  private void updateBusyRatio(long now) {
+    long window = now - loadWindowStart;
+    if (window < ServerConfig.LOOP_LOAD_WINDOW_NANOS) {
+      return;
+    }
+    long busy = Math.max(0, window - loadWindowIdleNanos);
+    int sample = (int) Math.min(1000, busy * 1000 / window);
+    busyPermille = (busyPermille + sample) / 2;
+    loadWindowStart = now;
+    loadWindowIdleNanos = 0;
+  }
+
+  // Connections plus queued tasks, weighted up to 2x by how busy the loop has been, so a loop
+  // carrying a few heavy clients looks as loaded as one carrying many idle ones.
+  public long getLoadScore() {
+    return (long) (getAssignedChannelCount() + taskQueue.size()) * (1000 + busyPermille);
+  }
+
+  public int getAssignedChannelCount() {
+    return activeChannels + pendingRegistrations.get();
+  }
+
+  public int getPendingTaskCount() {
+    return taskQueue.size();
+  }
+
+  public int getBusyPermille() {
+    return busyPermille;
+  }
+
+  void recordPlacement() {
+    placements.incrementAndGet();
+  }
+
+  // The following are only valid on the event-loop thread.
+  long currentTimeNanos() {
+    return loopTimeNanos;
+  }
+
+  HashedTimingWheel getTimingWheel() {
+    return timingWheel;
+  }
+
+  public InlineExecutionController getInlineController() {
+    return inlineController;
+  }
+
+  void scheduleFlush(NioChannel channel) {
+    pendingFlushes.add(channel);
+  }
+
+  private void flushPendingChannels() {
+    // Channels may queue more responses while flushing; those are picked up by index.
+    for (int i = 0; i < pendingFlushes.size(); i++) {
+      pendingFlushes.get(i).flushIfPending();
+    }
+    pendingFlushes.clear();
+  }
+
+  ByteBuffer getReadBuffer() {
+    return readBuffer;
+  }
+
+  ByteBuffer getNetReadBuffer() {
+    return netReadBuffer;
+  }
+
+  ByteBuffer[] getWriteBatch() {
+    return writeBatch;
+  }
+
+  PooledBuffer[] getPooledWriteBatch() {
+    return pooledWriteBatch;
+  }
+
+  void recordWrite(int responses) {
+    writeSyscalls.incrementAndGet();
+    if (responses > 0) {
+      responsesWritten.addAndGet(responses);
+    }
+  }
+
+  void channelClosed() {
+    activeChannels--;
+  }
+
+  public int getActiveChannelCount() {
+    return activeChannels;
+  }
+
+  void recordReadSuspended() {
+    readSuspensions.incrementAndGet();
+  }
+
+  void recordReadResumed() {
+    readResumptions.incrementAndGet();
+  }
+
+  public long getReadSuspensionCount() {
+    return readSuspensions.get();
+  }
+
+  public long getReadResumptionCount() {
+    return readResumptions.get();
+  }
+
+  public long getWriteSyscallCount() {
+    return writeSyscalls.get();
+  }
+
+  public long getResponsesWrittenCount() {
+    return responsesWritten.get();
+  }
+
+  public double getWriteSyscallsPerResponse() {
+    long responses = responsesWritten.get();
+    return responses == 0 ? 0.0 : (double) writeSyscalls.get() / responses;
+  }
+
   public void registerChannel(SocketChannel channel) {
+    pendingRegistrations.incrementAndGet();
     addTask(() -> {
+      pendingRegistrations.decrementAndGet();
       try {
         if (connectionCounter.get() >= ServerConfig.MAX_CONNECTIONS) {
-          System.err.println(
+          REJECTED_LOG.log(
               "Connection rejected during registration (queued): Max connections reached.");
+          ServerMetrics.CONNECTIONS_REJECTED.increment();
           try {
             channel.close();
           } catch (IOException ignored) {
@@ -112,15 +371,16 @@ public class NioEventLoop implements Closeable {
         channel.configureBlocking(false);
         SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
         NioChannel nioChannel = new NioChannel(channel, key, this, channelHandler,
-            connectionCounter);
+            connectionCounter, tlsContext);
         key.attach(nioChannel);
+        nioChannel.registered();
 
         connectionCounter.incrementAndGet();
+        activeChannels++;
 
       } catch (Exception e) {
-        System.err.println(
-            "Error registering channel in event loop #" + id + ": " + e.getMessage());
-        e.printStackTrace();
+        CHANNEL_LOG.log("Error registering channel in event loop #" + id + ": " + e.getMessage(),
+            e);
         try {
           channel.close();
         } catch (IOException ignored) {
@@ -129,6 +389,19 @@ public class NioEventLoop implements Closeable {
     });
   }
 
+  private void processSelectedKeys(SelectedKeySet keys) {
+    // processKey may close channels but never selects, so the set cannot grow under us.
+    int count = keys.size();
+    for (int i = 0; i < count; i++) {
+      processKey(keys.get(i));
+    }
+    keys.clear();
+  }
+
+  boolean isSelectedKeySetOptimized() {
+    return selectedKeySet != null;
+  }
+
   private void processKey(SelectionKey key) {
     NioChannel channel = (NioChannel) key.attachment();
 
@@ -149,10 +422,9 @@ public class NioEventLoop implements Closeable {
     } catch (CancelledKeyException e) {
       closeChannel(key, channel);
     } catch (Exception e) {
-      System.err.println(
+      CHANNEL_LOG.log(
           "Error processing key for channel #" + (channel != null ? channel.getChannelId()
-              : "unknown") + ": " + e.getMessage());
-      e.printStackTrace();
+              : "unknown") + ": " + e.getMessage(), e);
       closeChannel(key, channel);
     }
   }
@@ -167,7 +439,7 @@ public class NioEventLoop implements Closeable {
           key.channel().close();
         }
       } catch (Exception e) {
-        System.err.println("Error closing orphaned key: " + e.getMessage());
+        CHANNEL_LOG.log("Error closing orphaned key: " + e.getMessage());
       }
     }
   }
@@ -181,7 +453,7 @@ public class NioEventLoop implements Closeable {
         selector.close();
       }
     } catch (IOException e) {
-      System.err.println("Error closing selector #" + id + ": " + e.getMessage());
+      LOOP_LOG.log("Error closing selector #" + id + ": " + e.getMessage());
     }
   }
 
@@ -208,6 +480,10 @@ public class NioEventLoop implements Closeable {
       executor.shutdownNow();
       Thread.currentThread().interrupt();
     }
-    System.out.println("EventLoop #" + id + " shutdown completed.");
+    System.out.println("EventLoop #" + id + " shutdown completed. writes=" + writeSyscalls.get()
+        + ", responses=" + responsesWritten.get() + ", syscalls/response="
+        + String.format("%.3f", getWriteSyscallsPerResponse()) + ", inline="
+        + inlineController.getInlineExecutions() + ", inlineThreshold="
+        + inlineController.getThreshold() + ", readSuspensions=" + readSuspensions.get());
   }
 }
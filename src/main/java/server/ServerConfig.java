@@ -7,24 +7,79 @@ public class ServerConfig {
   public static final int N_CORES = Runtime.getRuntime().availableProcessors();
   public static final int ACCEPTOR_COUNT = 2;
   public static final int EVENT_LOOP_COUNT = N_CORES * 2;
+  // NIO (selector event loops) or VIRTUAL_THREAD (blocking virtual thread per connection).
+  public static final String TRANSPORT = System.getProperty("jam.transport", "NIO");
 
 
   // NioAcceptor Config
   public static final int BACKLOG = 1024;
   public static final int RECEIVE_BUFFER_SIZE = 65536;
   public static final int MAX_CONNECTIONS = 30000;
+  // After accept() itself fails (e.g. EMFILE), acceptors stop accepting for this long; the
+  // listen socket stays ready, so retrying at once would spin.
+  public static final long ACCEPT_ERROR_BACKOFF_MILLIS = 100;
+  // ROUND_ROBIN, LEAST_CONNECTIONS, LEAST_PENDING_TASKS or POWER_OF_TWO.
+  public static final String PLACEMENT_STRATEGY = System.getProperty("jam.placement",
+      "POWER_OF_TWO");
 
   // NioEventLoop Config
   public static final long SELECT_TIMEOUT = 500; // ms
+  // Swap each selector's selected-key HashSet for an array the loop walks by index (falls back
+  // to the JDK set when its internals cannot be reached).
+  public static final boolean SELECTOR_OPTIMIZED = Boolean.parseBoolean(
+      System.getProperty("jam.selector.optimized", "true"));
+  public static final long LOOP_LOAD_WINDOW_NANOS = 100_000_000;
+  public static final int MAX_GATHERING_WRITE_BUFFERS = 256;
+  public static final int TASK_QUEUE_CAPACITY = 65536;
+  public static final boolean INLINE_EXECUTION_ENABLED = true;
+  public static final long INLINE_LOOP_LATENCY_BUDGET_NANOS = 200_000;
+  public static final int INLINE_INITIAL_COST_THRESHOLD = 4; // SHA-256 blocks
+  public static final int INLINE_MAX_COST_THRESHOLD = 64;
 
   // NioChannel Config
-  public static final int READ_BUFFER_SIZE = 1024;
+  public static final int READ_BUFFER_SIZE = 1024; // per connection, virtual-thread transport
+  public static final int LOOP_READ_BUFFER_SIZE = 64 * 1024; // shared by an event loop's channels
+  public static final int CHANNEL_WRITE_QUEUE_INITIAL_CAPACITY = 4;
+  public static final int CHANNEL_OUTSTANDING_REQUESTS_HIGH_WATERMARK = 1024;
+  public static final int CHANNEL_OUTSTANDING_REQUESTS_LOW_WATERMARK = 256;
+  public static final long CHANNEL_QUEUED_BYTES_HIGH_WATERMARK = 256 * 1024;
+  public static final long CHANNEL_QUEUED_BYTES_LOW_WATERMARK = 64 * 1024;
+  // Channel timeouts in seconds; 0 disables. Idle: no traffic and nothing in flight. Read: a
+  // partial frame that has not completed (slowloris). Write: queued responses not draining.
+  public static final long CHANNEL_IDLE_TIMEOUT_SECONDS = Long.getLong("jam.timeout.idle", 300);
+  public static final long CHANNEL_READ_TIMEOUT_SECONDS = Long.getLong("jam.timeout.read", 10);
+  public static final long CHANNEL_WRITE_TIMEOUT_SECONDS = Long.getLong("jam.timeout.write", 30);
+  public static final int TIMER_WHEEL_SIZE = 512;
+  public static final long TIMER_TICK_NANOS = 100_000_000;
 
   // BusinessExecutor Config
+  public static final String BUSINESS_EXECUTOR_MODE = System.getProperty("jam.business.mode",
+      "FIXED_POOL");
   public static final int BUSINESS_THREAD_COUNT = N_CORES;
+  public static final int BUSINESS_VIRTUAL_MAX_CONCURRENCY = Integer.getInteger(
+      "jam.business.maxConcurrency", 0);
   public static final int DEFAULT_SHUTDOWN_TIMEOUT_SECONDS = 5;
+  public static final int BUSINESS_QUEUE_MAX_DEPTH = Integer.getInteger("jam.business.queueDepth",
+      8192);
+  public static final long BUSINESS_QUEUE_TARGET_DELAY_NANOS = 10_000_000;
+  public static final long BUSINESS_QUEUE_INTERVAL_NANOS = 100_000_000;
+  // FIFO or FAIR (per-connection deficit round robin weighted by SHA-256 blocks per task).
+  public static final String BUSINESS_SCHEDULING = System.getProperty("jam.business.scheduling",
+      "FAIR");
+  public static final int BUSINESS_FAIR_QUANTUM = 128; // blocks of credit per connection turn
+  public static final long BUSINESS_FAIR_MAX_WAIT_NANOS = 50_000_000; // starvation limit
 
   // HashRequestHandler Config
+  public static final boolean HASH_BATCH_ENABLED = true;
+  public static final int HASH_BATCH_MAX_SIZE = 64;
+  public static final boolean HASH_CACHE_ENABLED = true;
+  public static final int HASH_CACHE_MAX_ENTRIES = 65536;
+  public static final long HASH_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+  // Off by default: the Vector API engine only beats intrinsified MessageDigest with 512-bit
+  // vectors (see README), and it is slower on AVX2 and narrower hosts.
+  public static final boolean SHA256_VECTOR_ENABLED = Boolean.parseBoolean(
+      System.getProperty("jam.sha256.vector", "false"));
+  public static final int SHA256_VECTOR_MIN_BATCH = 4;
   public static final int MAX_ITERATIONS = 100;
   public static final int MAX_DATA_LENGTH = 128;
   public static final int HASH_RESULT_SIZE = 32;
@@ -35,11 +90,88 @@ public class ServerConfig {
       REQUEST_ID_SIZE + ITERATIONS_SIZE + DATA_LENGTH_SIZE;
   public static final int RESPONSE_PAYLOAD_SIZE =
       REQUEST_ID_SIZE + ITERATIONS_SIZE + DATA_LENGTH_SIZE + HASH_RESULT_SIZE;
+  // HASH_REQUEST_V2: requestId(8), timeoutMillis(4, 0 = none), iterations(4), dataLength(4), data.
+  // CANCEL_REQUEST: requestId(8). REQUEST_ABORTED: requestId(8), reason(1).
+  public static final int TIMEOUT_SIZE = 4;
+  public static final int REQUEST_V2_HEADER_SIZE = REQUEST_ID_SIZE + TIMEOUT_SIZE
+      + ITERATIONS_SIZE + DATA_LENGTH_SIZE;
+  public static final int CANCEL_REQUEST_PAYLOAD_SIZE = REQUEST_ID_SIZE;
+  public static final int REQUEST_ABORTED_PAYLOAD_SIZE = REQUEST_ID_SIZE + 1;
 
   // MessageDecoder Config
   public static final int HEADER_SIZE = 6;
   public static final int MAX_PAYLOAD_SIZE = 256;
+  public static final int MAX_FRAME_SIZE = 16384; // header included, for the largest frame types
+
+  // BufferPool Config
+  public static final int BUFFER_POOL_MIN_CHUNK_SIZE = 64;
+  public static final int BUFFER_POOL_MAX_CHUNK_SIZE = 32768; // fits a TLS record
+  public static final int BUFFER_POOL_SLAB_SIZE = 65536;
+  public static final long BUFFER_POOL_MAX_MEMORY = 64L * 1024 * 1024;
+  public static final int BUFFER_POOL_THREAD_CACHE_SIZE = 64;
+  public static final long BUFFER_POOL_LEAK_AGE_NANOS = 30_000_000_000L;
+
+  // HashBatchRequestHandler Config
+  // HASH_BATCH_REQUEST: batchId(8), itemCount(4), then per item iterations(4), dataLength(4), data.
+  // HASH_BATCH_RESPONSE: batchId(8), itemCount(4), then per item status(1), hash(32).
+  // The payload cap keeps a whole frame, and so any partial-frame leftover, in one pool chunk.
+  // It is fixed, not negotiated: read buffers are sized for MAX_FRAME_SIZE, so there is no
+  // larger cap a connection could be offered.
+  public static final int BATCH_REQUEST_MAX_PAYLOAD_SIZE = MAX_FRAME_SIZE - HEADER_SIZE;
+  public static final int BATCH_REQUEST_MAX_ITEMS = 256;
+  public static final int BATCH_REQUEST_SPLIT_COST = 512; // SHA-256 blocks per forked task
+  public static final int BATCH_COUNT_SIZE = 4;
+  public static final int BATCH_REQUEST_HEADER_SIZE = REQUEST_ID_SIZE + BATCH_COUNT_SIZE;
+  public static final int BATCH_ITEM_HEADER_SIZE = ITERATIONS_SIZE + DATA_LENGTH_SIZE;
+  public static final int BATCH_RESPONSE_HEADER_SIZE = REQUEST_ID_SIZE + BATCH_COUNT_SIZE;
+  public static final int BATCH_RESPONSE_ITEM_SIZE = 1 + HASH_RESULT_SIZE;
+
+  // HashStreamHandler Config
+  // HASH_STREAM_BEGIN: requestId(8), iterations(4). HASH_STREAM_CHUNK: requestId(8), data.
+  // HASH_STREAM_END: requestId(8). Answered by HASH_RESPONSE or HASH_STREAM_ERROR.
+  // Chunks are never buffered, so a connection holds at most STREAM_MAX_CONCURRENT digests.
+  public static final int STREAM_CHUNK_MAX_PAYLOAD_SIZE = MAX_FRAME_SIZE - HEADER_SIZE;
+  public static final int STREAM_MAX_CONCURRENT = Integer.getInteger("jam.stream.maxConcurrent",
+      4);
+  public static final long STREAM_MAX_BYTES = Long.getLong("jam.stream.maxBytes",
+      1024L * 1024 * 1024);
+  public static final int STREAM_BEGIN_PAYLOAD_SIZE = REQUEST_ID_SIZE + ITERATIONS_SIZE;
+  public static final int STREAM_END_PAYLOAD_SIZE = REQUEST_ID_SIZE;
+  public static final int STREAM_ERROR_PAYLOAD_SIZE = REQUEST_ID_SIZE + 1;
 
   // MessageEncoder Config
   public static final int RESPONSE_BUFFER_CAPACITY = 64; // HASH_RESPONSE: 6 + 8 + 4 + 4 + 32 = 54 bytes
+  public static final int SERVER_BUSY_PAYLOAD_SIZE = REQUEST_ID_SIZE;
+  public static final int STATS_RESPONSE_HEADER_SIZE = REQUEST_ID_SIZE + DATA_LENGTH_SIZE;
+
+  // TLS Config (NIO transport only)
+  // jam.tls requires both the keystore (a file, or a classpath resource) and its password; there
+  // is no default for either. `gradle devKeystore` generates a self-signed one for testing.
+  // Resumption: TLS 1.3 clients get stateless session tickets; TLS 1.2 clients without ticket
+  // support fall back to the server-side session cache.
+  public static final boolean TLS_ENABLED = Boolean.getBoolean("jam.tls");
+  public static final String TLS_KEYSTORE_PATH = System.getProperty("jam.tls.keystore");
+  public static final String TLS_KEYSTORE_PASSWORD = System.getProperty(
+      "jam.tls.keystorePassword");
+  public static final String TLS_PROTOCOLS = System.getProperty("jam.tls.protocols",
+      "TLSv1.3,TLSv1.2");
+  public static final boolean TLS_SESSION_TICKETS = Boolean.parseBoolean(
+      System.getProperty("jam.tls.sessionTickets", "true"));
+  public static final int TLS_SESSION_CACHE_SIZE = 20000;
+  public static final int TLS_SESSION_TIMEOUT_SECONDS = 3600;
+  public static final int TLS_HANDSHAKE_THREADS = N_CORES; // run SSLEngine delegated tasks
+
+  // AsyncLogger Config
+  // Each call site may log LOG_RATE_LIMIT messages per window; the rest are counted and reported
+  // as a single "suppressed" line per call site when the window is swept.
+  public static final int LOG_QUEUE_CAPACITY = 4096;
+  public static final int LOG_RATE_LIMIT = Integer.getInteger("jam.log.rateLimit", 10);
+  public static final long LOG_RATE_WINDOW_NANOS = 1_000_000_000L;
+
+  // Admin / metrics Config
+  public static final int ADMIN_PORT = Integer.getInteger("jam.admin.port", 9090); // <= 0 disables
+  // The endpoint has no authentication, so it listens on loopback unless jam.admin.host names
+  // another address, e.g. 0.0.0.0 for every interface.
+  public static final String ADMIN_HOST = System.getProperty("jam.admin.host");
+  public static final String ADMIN_METRICS_PATH = "/metrics";
 }
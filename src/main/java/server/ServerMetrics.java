@@ -0,0 +1,91 @@
+package main.java.server;
+
+import main.java.util.metrics.Counter;
+import main.java.util.metrics.Histogram;
+import main.java.util.metrics.MetricsRegistry;
+
+// Metrics recorded on the request path. Components that already keep their own counters
+// (event loops, executor, buffer pool, cache) expose them to the registry as functions instead.
+public final class ServerMetrics {
+
+  private static final MetricsRegistry REGISTRY = MetricsRegistry.getInstance();
+
+  public static final Counter CONNECTIONS_ACCEPTED = REGISTRY.counter(
+      "jam_connections_accepted_total", "Connections accepted and handed to an event loop.");
+  public static final Counter CONNECTIONS_REJECTED = REGISTRY.counter(
+      "jam_connections_rejected_total", "Connections closed because MAX_CONNECTIONS was reached.");
+  public static final Counter BYTES_READ = REGISTRY.counter("jam_bytes_read_total",
+      "Bytes read from client sockets.");
+  public static final Counter BYTES_WRITTEN = REGISTRY.counter("jam_bytes_written_total",
+      "Bytes written to client sockets.");
+  public static final Counter FRAMES_DECODED = REGISTRY.counter("jam_frames_decoded_total",
+      "Frames decoded from client sockets.");
+  public static final Counter DECODE_ERRORS = REGISTRY.counter("jam_decode_errors_total",
+      "Connections closed because of a malformed frame.");
+  public static final Counter IDLE_TIMEOUTS = REGISTRY.counter("jam_channel_timeouts_total",
+      "Connections closed by a timeout.", "reason", "idle");
+  public static final Counter READ_TIMEOUTS = REGISTRY.counter("jam_channel_timeouts_total",
+      "Connections closed by a timeout.", "reason", "read");
+  public static final Counter WRITE_TIMEOUTS = REGISTRY.counter("jam_channel_timeouts_total",
+      "Connections closed by a timeout.", "reason", "write");
+  public static final Counter BATCH_REQUESTS = REGISTRY.counter(
+      "jam_hash_batch_requests_total", "HASH_BATCH_REQUEST frames accepted.");
+  public static final Counter BATCH_ITEMS = REGISTRY.counter("jam_hash_batch_items_total",
+      "Items carried by accepted HASH_BATCH_REQUEST frames.");
+  public static final Counter BATCH_ITEM_FAILURES = REGISTRY.counter(
+      "jam_hash_batch_item_failures_total", "Batch items answered with a non-OK status.");
+  public static final Counter REQUESTS_EXPIRED = REGISTRY.counter("jam_requests_expired_total",
+      "HASH_REQUEST_V2 requests dropped because their deadline passed before they ran.");
+  public static final Counter REQUESTS_CANCELLED = REGISTRY.counter(
+      "jam_requests_cancelled_total", "Requests aborted by a CANCEL_REQUEST from the client.");
+  public static final Counter STREAMS_STARTED = REGISTRY.counter("jam_hash_streams_total",
+      "HASH_STREAM_BEGIN frames that opened a stream.");
+  public static final Counter STREAM_BYTES = REGISTRY.counter("jam_hash_stream_bytes_total",
+      "Bytes hashed from HASH_STREAM_CHUNK frames.");
+  public static final Counter STREAM_ERRORS = REGISTRY.counter("jam_hash_stream_errors_total",
+      "Streams answered with HASH_STREAM_ERROR.");
+  public static final Counter TLS_FULL_HANDSHAKES = REGISTRY.counter("jam_tls_handshakes_total",
+      "TLS handshakes completed.", "session", "full");
+  public static final Counter TLS_RESUMED_HANDSHAKES = REGISTRY.counter(
+      "jam_tls_handshakes_total", "TLS handshakes completed.", "session", "resumed");
+  public static final Counter TLS_HANDSHAKE_FAILURES = REGISTRY.counter(
+      "jam_tls_handshake_failures_total",
+      "Connections closed before their TLS handshake finished.");
+  public static final Counter TLS_DELEGATED_TASKS = REGISTRY.counter(
+      "jam_tls_delegated_tasks_total", "SSLEngine delegated tasks run off the event loops.");
+  public static final Histogram TLS_HANDSHAKE_LATENCY = REGISTRY.histogram(
+      "jam_tls_handshake_seconds",
+      "Time from registering a connection to its TLS handshake finishing.");
+  public static final Histogram BUSINESS_QUEUE_WAIT = REGISTRY.histogram(
+      "jam_business_queue_wait_seconds", "Time tasks spent queued for the business executor.");
+  public static final Histogram RESPONSE_FLUSH_LATENCY = REGISTRY.histogram(
+      "jam_response_flush_seconds",
+      "Time from encoding a response to its last byte being written to the socket.");
+
+  // Hash latency is split by iteration count, since cost grows linearly with it.
+  private static final int[] ITERATION_BUCKET_BOUNDS = {1, 10, 50, ServerConfig.MAX_ITERATIONS};
+  private static final Histogram[] HASH_LATENCY_BY_ITERATIONS =
+      new Histogram[ServerConfig.MAX_ITERATIONS + 1];
+
+  static {
+    int low = 1;
+    for (int high : ITERATION_BUCKET_BOUNDS) {
+      Histogram histogram = REGISTRY.histogram("jam_hash_latency_seconds",
+          "Time to compute a hash response, by iteration count.", "iterations",
+          low == high ? Integer.toString(low) : low + "-" + high);
+      for (int i = low; i <= high; i++) {
+        HASH_LATENCY_BY_ITERATIONS[i] = histogram;
+      }
+      low = high + 1;
+    }
+    HASH_LATENCY_BY_ITERATIONS[0] = HASH_LATENCY_BY_ITERATIONS[1];
+  }
+
+  private ServerMetrics() {
+  }
+
+  public static Histogram hashLatency(int iterations) {
+    return HASH_LATENCY_BY_ITERATIONS[Math.min(Math.max(iterations, 0),
+        ServerConfig.MAX_ITERATIONS)];
+  }
+}
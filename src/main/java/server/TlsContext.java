@@ -0,0 +1,127 @@
+package main.java.server;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import main.java.util.NioThreadFactory;
+
+// Server-side TLS state shared by every event loop: the SSLContext with its session cache, and
+// the pool that runs SSLEngine delegated tasks. Those tasks carry the handshake's key exchange
+// and signature, which would otherwise stall every other connection on the loop.
+public final class TlsContext implements Closeable {
+
+  private static final String TICKET_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+  private final SSLContext sslContext;
+  private final String[] protocols;
+  private final ExecutorService handshakeExecutor;
+
+  private TlsContext(SSLContext sslContext, String[] protocols) {
+    this.sslContext = sslContext;
+    this.protocols = protocols;
+    this.handshakeExecutor = Executors.newFixedThreadPool(ServerConfig.TLS_HANDSHAKE_THREADS,
+        new NioThreadFactory("tls-handshake"));
+  }
+
+  public static TlsContext create() throws IOException {
+    // Read once when JSSE initializes, so it has to be set before the first SSLContext.
+    if (System.getProperty(TICKET_PROPERTY) == null) {
+      System.setProperty(TICKET_PROPERTY, Boolean.toString(ServerConfig.TLS_SESSION_TICKETS));
+    }
+    if (ServerConfig.TLS_KEYSTORE_PATH == null || ServerConfig.TLS_KEYSTORE_PASSWORD == null) {
+      throw new IOException("TLS needs -Djam.tls.keystore=<file> and "
+          + "-Djam.tls.keystorePassword=<password>");
+    }
+    char[] password = ServerConfig.TLS_KEYSTORE_PASSWORD.toCharArray();
+    try (InputStream in = openKeyStore(ServerConfig.TLS_KEYSTORE_PATH)) {
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      keyStore.load(in, password);
+      KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(
+          KeyManagerFactory.getDefaultAlgorithm());
+      keyManagers.init(keyStore, password);
+
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagers.getKeyManagers(), null, null);
+      SSLSessionContext sessions = sslContext.getServerSessionContext();
+      sessions.setSessionCacheSize(ServerConfig.TLS_SESSION_CACHE_SIZE);
+      sessions.setSessionTimeout(ServerConfig.TLS_SESSION_TIMEOUT_SECONDS);
+      return new TlsContext(sslContext, ServerConfig.TLS_PROTOCOLS.split("\\s*,\\s*"));
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot load TLS keystore " + ServerConfig.TLS_KEYSTORE_PATH + ": "
+          + e.getMessage(), e);
+    }
+  }
+
+  private static InputStream openKeyStore(String path) throws IOException {
+    if (Files.isRegularFile(Path.of(path))) {
+      return new FileInputStream(path);
+    }
+    InputStream in = TlsContext.class.getClassLoader().getResourceAsStream(path);
+    if (in == null) {
+      throw new IOException("TLS keystore not found as a file or on the classpath: " + path);
+    }
+    return in;
+  }
+
+  SSLEngine newEngine() {
+    SSLEngine engine = sslContext.createSSLEngine();
+    engine.setUseClientMode(false);
+    engine.setEnabledProtocols(protocols);
+    return engine;
+  }
+
+  // Runs the engine's pending tasks on the handshake pool, then onDone. Returns false if the
+  // pool has shut down; the caller must then drop the connection.
+  boolean runDelegatedTasks(SSLEngine engine, Runnable onDone) {
+    try {
+      handshakeExecutor.execute(() -> {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+          task.run();
+          ServerMetrics.TLS_DELEGATED_TASKS.increment();
+        }
+        onDone.run();
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  // A session created before this handshake started came out of the cache or a ticket.
+  static void recordHandshake(SSLSession session, long startMillis, long startNanos) {
+    if (session.getCreationTime() < startMillis) {
+      ServerMetrics.TLS_RESUMED_HANDSHAKES.increment();
+    } else {
+      ServerMetrics.TLS_FULL_HANDSHAKES.increment();
+    }
+    ServerMetrics.TLS_HANDSHAKE_LATENCY.recordNanos(System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public void close() {
+    handshakeExecutor.shutdown();
+    try {
+      if (!handshakeExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+        handshakeExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      handshakeExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package main.java.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import main.java.channel.ChannelHandler;
+import main.java.util.NioThreadFactory;
+import main.java.util.log.RateLimitedLog;
+
+// Blocking accept loop for the virtual-thread transport: every accepted socket gets a reader
+// virtual thread (and, through VirtualThreadChannel, a writer) instead of an event-loop slot.
+// All acceptors block in accept() on one shared listen socket from openListenChannel(), so
+// running several of them does not depend on SO_REUSEPORT.
+public class VirtualThreadAcceptor implements Closeable {
+
+  private static final RateLimitedLog REJECTED_LOG = new RateLimitedLog(
+      "VirtualThreadAcceptor connection rejected");
+  private static final RateLimitedLog ACCEPT_LOG = new RateLimitedLog(
+      "VirtualThreadAcceptor accept error");
+
+  private final int acceptorId;
+  private final ServerSocketChannel serverChannel;
+  private final ExecutorService executor;
+  private final ChannelHandler channelHandler;
+  private final AtomicLong connectionCounter;
+  private final ThreadFactory readerFactory;
+  private final ThreadFactory writerFactory;
+  private final Set<VirtualThreadChannel> channels = ConcurrentHashMap.newKeySet();
+  private volatile boolean shutdown = false;
+
+  public VirtualThreadAcceptor(ServerSocketChannel serverChannel, ChannelHandler channelHandler,
+      AtomicLong connectionCounter, int acceptorId) {
+    this.acceptorId = acceptorId;
+    this.channelHandler = channelHandler;
+    this.connectionCounter = connectionCounter;
+    this.executor = Executors.newSingleThreadExecutor(
+        new NioThreadFactory("vt-acceptor-pool-" + acceptorId));
+    this.readerFactory = NioThreadFactory.virtual("vt-reader-" + acceptorId);
+    this.writerFactory = NioThreadFactory.virtual("vt-writer-" + acceptorId);
+
+    this.serverChannel = serverChannel;
+  }
+
+  // Blocking listen socket shared by every VirtualThreadAcceptor on the address.
+  public static ServerSocketChannel openListenChannel(InetSocketAddress listenAddress)
+      throws IOException {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, ServerConfig.RECEIVE_BUFFER_SIZE);
+      serverChannel.bind(listenAddress, ServerConfig.BACKLOG);
+    } catch (IOException e) {
+      serverChannel.close();
+      throw e;
+    }
+    System.out.println("VirtualThreadAcceptors listening on " + listenAddress);
+    return serverChannel;
+  }
+
+  public void start() {
+    executor.execute(this::run);
+  }
+
+  private void run() {
+    while (!Thread.currentThread().isInterrupted() && !shutdown) {
+      SocketChannel client = null;
+      try {
+        client = serverChannel.accept();
+
+        if (connectionCounter.get() >= ServerConfig.MAX_CONNECTIONS) {
+          REJECTED_LOG.log("Connection rejected: Max connections reached.");
+          ServerMetrics.CONNECTIONS_REJECTED.increment();
+          client.close();
+          continue;
+        }
+
+        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        client.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+        VirtualThreadChannel channel = new VirtualThreadChannel(client, channelHandler,
+            connectionCounter, channels::remove);
+        connectionCounter.incrementAndGet();
+        channels.add(channel);
+        readerFactory.newThread(() -> channel.run(writerFactory)).start();
+        ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (IOException e) {
+        if (!shutdown) {
+          ACCEPT_LOG.log("Error accepting connection: " + e.getMessage());
+        }
+        if (client == null && !backOff()) {
+          break;
+        }
+        closeClientOnError(client);
+      } catch (Exception e) {
+        ACCEPT_LOG.log("Error starting connection thread: " + e.getMessage());
+        closeClientOnError(client);
+      }
+    }
+    System.out.println("VirtualThreadAcceptor #" + acceptorId + " accept loop terminated.");
+  }
+
+  // accept() itself failed (e.g. out of file descriptors) and would fail again at once. Returns
+  // false if interrupted while waiting.
+  private boolean backOff() {
+    try {
+      Thread.sleep(ServerConfig.ACCEPT_ERROR_BACKOFF_MILLIS);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void closeClientOnError(SocketChannel client) {
+    if (client != null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        ACCEPT_LOG.log("Error closing client channel: " + e.getMessage());
+      }
+    }
+  }
+
+  public int getActiveChannelCount() {
+    return channels.size();
+  }
+
+  @Override
+  public void close() {
+    if (shutdown) {
+      return;
+    }
+    shutdown = true;
+    System.out.println("Shutting down VirtualThreadAcceptor #" + acceptorId + "...");
+
+    // Closing the listen socket unblocks accept() in every acceptor sharing it; closing it
+    // again from the others is a no-op.
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      ACCEPT_LOG.log("Error closing listen socket: " + e.getMessage(), e);
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+
+    int open = channels.size();
+    for (VirtualThreadChannel channel : channels) {
+      channel.close();
+    }
+    System.out.println("VirtualThreadAcceptor #" + acceptorId + " shutdown completed. closed="
+        + open + " connections.");
+  }
+}
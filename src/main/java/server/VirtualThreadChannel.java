@@ -0,0 +1,321 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import main.java.channel.Channel;
+import main.java.channel.ChannelHandler;
+import main.java.channel.InFlightRequests;
+import main.java.util.buffer.PooledBuffer;
+
+// Blocking counterpart of NioChannel: one virtual thread blocks in read() and runs the handler
+// pipeline, a second drains the response queue with blocking gathering writes. Backpressure
+// parks the reader instead of clearing OP_READ.
+public class VirtualThreadChannel implements Channel {
+
+  private static final AtomicLong CHANNEL_ID_GENERATOR = new AtomicLong(0);
+
+  private final long channelId;
+  private final SocketChannel socketChannel;
+  private final ChannelHandler handler;
+  private final AtomicLong connectionCounter;
+  private final Consumer<VirtualThreadChannel> onClose;
+  private final AtomicBoolean active = new AtomicBoolean(true);
+  private ByteBuffer readBuffer;
+  private final InlineExecutionController inlineController = new InlineExecutionController(
+      ServerConfig.INLINE_LOOP_LATENCY_BUDGET_NANOS, ServerConfig.INLINE_INITIAL_COST_THRESHOLD,
+      ServerConfig.INLINE_MAX_COST_THRESHOLD);
+
+  // Multi-consumer so that a producer racing with close() can release what it just queued.
+  private final Queue<PooledBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger outstandingRequests = new AtomicInteger(0);
+  private final AtomicLong queuedResponseBytes = new AtomicLong(0);
+  private final ReentrantLock backpressureLock = new ReentrantLock();
+  private final Condition resumeReading = backpressureLock.newCondition();
+  private volatile boolean readSuspended = false;
+  private volatile boolean writerWaiting = false;
+  private volatile Thread writer;
+  private Object attachment;
+  private final InFlightRequests inFlightRequests = new InFlightRequests();
+
+  public VirtualThreadChannel(SocketChannel socketChannel, ChannelHandler handler,
+      AtomicLong connectionCounter, Consumer<VirtualThreadChannel> onClose) {
+    this.channelId = CHANNEL_ID_GENERATOR.incrementAndGet();
+    this.socketChannel = socketChannel;
+    this.handler = handler;
+    this.connectionCounter = connectionCounter;
+    this.onClose = onClose;
+    this.readBuffer = ByteBuffer.allocateDirect(ServerConfig.READ_BUFFER_SIZE);
+  }
+
+  // Starts the writer and runs the read loop on the calling (virtual) thread.
+  void run(ThreadFactory writerFactory) {
+    writer = writerFactory.newThread(this::writeLoop);
+    writer.start();
+    readLoop();
+  }
+
+  private void readLoop() {
+    try {
+      while (active.get()) {
+        awaitReadable();
+        int bytesRead = socketChannel.read(readBuffer);
+        if (bytesRead < 0) {
+          break;
+        }
+        if (bytesRead == 0) {
+          continue;
+        }
+
+        long busyStart = System.nanoTime();
+        ServerMetrics.BYTES_READ.add(bytesRead);
+        readBuffer.flip();
+        try {
+          handler.channelRead(this, readBuffer);
+        } finally {
+          if (readBuffer.hasRemaining()) {
+            readBuffer.compact();
+            growIfFull();
+          } else {
+            readBuffer.clear();
+          }
+        }
+        inlineController.onIterationComplete(System.nanoTime() - busyStart);
+      }
+    } catch (IOException e) {
+      if (active.get()) {
+        handler.exceptionCaught(this, e);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      internalClose();
+    }
+  }
+
+  // A batch frame can exceed READ_BUFFER_SIZE; grow once to hold the largest frame accepted.
+  private void growIfFull() {
+    if (readBuffer.hasRemaining()
+        || readBuffer.capacity() >= ServerConfig.HEADER_SIZE
+        + ServerConfig.BATCH_REQUEST_MAX_PAYLOAD_SIZE) {
+      return;
+    }
+    ByteBuffer larger = ByteBuffer.allocateDirect(
+        ServerConfig.HEADER_SIZE + ServerConfig.BATCH_REQUEST_MAX_PAYLOAD_SIZE);
+    readBuffer.flip();
+    larger.put(readBuffer);
+    readBuffer = larger;
+  }
+
+  private void writeLoop() {
+    ByteBuffer[] batch = new ByteBuffer[ServerConfig.MAX_GATHERING_WRITE_BUFFERS];
+    PooledBuffer[] pooledBatch = new PooledBuffer[ServerConfig.MAX_GATHERING_WRITE_BUFFERS];
+    int count = 0;
+    try {
+      while (true) {
+        PooledBuffer buffer;
+        while (count < batch.length && (buffer = writeQueue.poll()) != null) {
+          pooledBatch[count] = buffer;
+          batch[count++] = buffer.buffer();
+        }
+
+        if (count == 0) {
+          if (!active.get()) {
+            return;
+          }
+          writerWaiting = true;
+          if (writeQueue.isEmpty() && active.get()) {
+            LockSupport.park(this);
+          }
+          writerWaiting = false;
+          continue;
+        }
+
+        long written = 0;
+        int first = 0;
+        while (first < count) {
+          written += socketChannel.write(batch, first, count - first);
+          while (first < count && !batch[first].hasRemaining()) {
+            first++;
+          }
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          ServerMetrics.RESPONSE_FLUSH_LATENCY.recordNanos(now - pooledBatch[i].acquiredAtNanos());
+          pooledBatch[i].release();
+          pooledBatch[i] = null;
+        }
+        Arrays.fill(batch, 0, count, null);
+        count = 0;
+        ServerMetrics.BYTES_WRITTEN.add(written);
+        queuedResponseBytes.addAndGet(-written);
+        resumeReadingIfDrained();
+      }
+    } catch (IOException e) {
+      if (active.get()) {
+        handler.exceptionCaught(this, e);
+      }
+    } finally {
+      for (int i = 0; i < count; i++) {
+        pooledBatch[i].release();
+      }
+      internalClose();
+      releaseQueued();
+    }
+  }
+
+  @Override
+  public boolean isActive() {
+    return active.get();
+  }
+
+  @Override
+  public void queueResponse(PooledBuffer buffer) {
+    if (!active.get()) {
+      buffer.release();
+      return;
+    }
+    enqueueResponse(buffer);
+    wakeWriter();
+  }
+
+  @Override
+  public void queueResponses(PooledBuffer[] buffers, int count) {
+    if (!active.get()) {
+      for (int i = 0; i < count; i++) {
+        buffers[i].release();
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      enqueueResponse(buffers[i]);
+    }
+    wakeWriter();
+  }
+
+  private void enqueueResponse(PooledBuffer buffer) {
+    queuedResponseBytes.addAndGet(buffer.buffer().remaining());
+    outstandingRequests.decrementAndGet();
+    writeQueue.offer(buffer);
+  }
+
+  private void wakeWriter() {
+    if (!active.get()) {
+      // Lost a race with close(); the writer may already be gone.
+      releaseQueued();
+      return;
+    }
+    if (writerWaiting) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  @Override
+  public void requestAccepted() {
+    outstandingRequests.incrementAndGet();
+  }
+
+  // Same watermarks as NioChannel: stop reading at the high mark, resume at the low mark.
+  private void awaitReadable() throws InterruptedException {
+    if (outstandingRequests.get() < ServerConfig.CHANNEL_OUTSTANDING_REQUESTS_HIGH_WATERMARK
+        && queuedResponseBytes.get() < ServerConfig.CHANNEL_QUEUED_BYTES_HIGH_WATERMARK) {
+      return;
+    }
+    backpressureLock.lock();
+    try {
+      readSuspended = true;
+      while (active.get() && !isDrained()) {
+        resumeReading.await();
+      }
+    } finally {
+      readSuspended = false;
+      backpressureLock.unlock();
+    }
+  }
+
+  private boolean isDrained() {
+    return outstandingRequests.get() <= ServerConfig.CHANNEL_OUTSTANDING_REQUESTS_LOW_WATERMARK
+        && queuedResponseBytes.get() <= ServerConfig.CHANNEL_QUEUED_BYTES_LOW_WATERMARK;
+  }
+
+  private void resumeReadingIfDrained() {
+    if (readSuspended && (isDrained() || !active.get())) {
+      backpressureLock.lock();
+      try {
+        resumeReading.signal();
+      } finally {
+        backpressureLock.unlock();
+      }
+    }
+  }
+
+  private void releaseQueued() {
+    PooledBuffer buffer;
+    while ((buffer = writeQueue.poll()) != null) {
+      buffer.release();
+    }
+  }
+
+  private void internalClose() {
+    if (active.compareAndSet(true, false)) {
+      inFlightRequests.closeAll();
+      connectionCounter.decrementAndGet();
+      try {
+        socketChannel.close();
+      } catch (IOException e) { /* Ignore */ }
+      resumeReadingIfDrained();
+      Thread writerThread = writer;
+      if (writerThread != null) {
+        LockSupport.unpark(writerThread);
+      }
+      onClose.accept(this);
+    }
+  }
+
+  @Override
+  public InFlightRequests inFlightRequests() {
+    return inFlightRequests;
+  }
+
+  @Override
+  public InlineExecutionController getInlineController() {
+    return inlineController;
+  }
+
+  @Override
+  public void closeAsync() {
+    internalClose();
+  }
+
+  @Override
+  public void close() {
+    internalClose();
+  }
+
+  @Override
+  public Object attachment() {
+    return attachment;
+  }
+
+  @Override
+  public void attach(Object attachment) {
+    this.attachment = attachment;
+  }
+
+  @Override
+  public long getChannelId() {
+    return channelId;
+  }
+}
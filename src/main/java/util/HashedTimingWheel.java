@@ -0,0 +1,124 @@
+package main.java.util;
+
+import java.util.function.LongConsumer;
+
+// Single-threaded hashed timing wheel. Timeouts are intrusive list nodes owned by the caller, so
+// schedule/cancel are O(1) and never allocate; a node can be rescheduled any number of times.
+// Expiry callbacks may reschedule or cancel their own timeout, but no other.
+public final class HashedTimingWheel {
+
+  public static final class Timeout {
+
+    private final LongConsumer task;
+    private Timeout prev;
+    private Timeout next;
+    private int bucket = -1;
+    private long remainingRounds;
+    private long deadlineNanos;
+
+    public Timeout(LongConsumer task) {
+      if (task == null) {
+        throw new IllegalArgumentException("Task cannot be null");
+      }
+      this.task = task;
+    }
+
+    public boolean isScheduled() {
+      return bucket >= 0;
+    }
+
+    public long getDeadlineNanos() {
+      return deadlineNanos;
+    }
+  }
+
+  private final Timeout[] buckets;
+  private final int mask;
+  private final long tickNanos;
+  private long currentTick = 0;
+  private long nextTickNanos;
+  private int size = 0;
+
+  public HashedTimingWheel(int wheelSize, long tickNanos, long startNanos) {
+    if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+      throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+    }
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Tick must be positive: " + tickNanos);
+    }
+    this.buckets = new Timeout[wheelSize];
+    this.mask = wheelSize - 1;
+    this.tickNanos = tickNanos;
+    this.nextTickNanos = startNanos + tickNanos;
+  }
+
+  // Fires no earlier than deadlineNanos and at most one tick, plus however late the owner calls
+  // advance(), after it.
+  public void schedule(Timeout timeout, long deadlineNanos) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+    }
+    long delay = Math.max(0, deadlineNanos - (nextTickNanos - tickNanos));
+    long ticks = Math.max(1, (delay + tickNanos - 1) / tickNanos);
+    int index = (int) ((currentTick + ticks) & mask);
+    timeout.remainingRounds = (ticks - 1) / buckets.length;
+    timeout.deadlineNanos = deadlineNanos;
+    timeout.bucket = index;
+    timeout.prev = null;
+    timeout.next = buckets[index];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    buckets[index] = timeout;
+    size++;
+  }
+
+  public void cancel(Timeout timeout) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+    }
+  }
+
+  public void advance(long nowNanos) {
+    while (nowNanos - nextTickNanos >= 0) {
+      currentTick++;
+      nextTickNanos += tickNanos;
+      if (size > 0) {
+        expireBucket((int) (currentTick & mask), nowNanos);
+      }
+    }
+  }
+
+  private void expireBucket(int index, long nowNanos) {
+    Timeout timeout = buckets[index];
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+      } else {
+        unlink(timeout);
+        timeout.task.accept(nowNanos);
+      }
+      timeout = next;
+    }
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      buckets[timeout.bucket] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.bucket = -1;
+    size--;
+  }
+
+  public int size() {
+    return size;
+  }
+}
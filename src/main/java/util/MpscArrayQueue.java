@@ -0,0 +1,74 @@
+package main.java.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded multi-producer/single-consumer ring buffer. Only one thread may call poll().
+public final class MpscArrayQueue<E> {
+
+  private final AtomicReferenceArray<E> buffer;
+  private final int mask;
+  private final int capacity;
+  private final AtomicLong producerIndex = new AtomicLong(0);
+  private final AtomicLong consumerIndex = new AtomicLong(0);
+
+  public MpscArrayQueue(int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("Capacity must be >= 2: " + capacity);
+    }
+    int actualCapacity = Integer.highestOneBit(capacity - 1) << 1;
+    this.buffer = new AtomicReferenceArray<>(actualCapacity);
+    this.mask = actualCapacity - 1;
+    this.capacity = actualCapacity;
+  }
+
+  public boolean offer(E element) {
+    if (element == null) {
+      throw new NullPointerException("Element cannot be null");
+    }
+
+    long index;
+    do {
+      index = producerIndex.get();
+      if (index - consumerIndex.get() >= capacity) {
+        return false;
+      }
+    } while (!producerIndex.compareAndSet(index, index + 1));
+
+    buffer.lazySet((int) (index & mask), element);
+    return true;
+  }
+
+  public E poll() {
+    long index = consumerIndex.get();
+    int offset = (int) (index & mask);
+    E element = buffer.get(offset);
+    if (element == null) {
+      if (index == producerIndex.get()) {
+        return null;
+      }
+      // A producer has claimed the slot but not published the element yet.
+      do {
+        Thread.onSpinWait();
+        element = buffer.get(offset);
+      } while (element == null);
+    }
+
+    buffer.lazySet(offset, null);
+    consumerIndex.lazySet(index + 1);
+    return element;
+  }
+
+  public boolean isEmpty() {
+    return consumerIndex.get() == producerIndex.get();
+  }
+
+  public int size() {
+    long size = producerIndex.get() - consumerIndex.get();
+    return (int) Math.max(0, Math.min(size, capacity));
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+}
@@ -2,21 +2,37 @@ package main.java.util;
 
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import main.java.util.log.RateLimitedLog;
 
 
 public class NioThreadFactory implements ThreadFactory {
 
   private static final AtomicInteger poolNumber = new AtomicInteger(1);
+  private static final Thread.UncaughtExceptionHandler UNCAUGHT_EXCEPTION_HANDLER =
+      (t, e) -> UncaughtLog.LOG.log("Uncaught exception in thread " + t.getName(), e);
+
+  // Held apart so the log is created on first use: AsyncLogger builds its writer thread with
+  // this factory, and creating the log during this class's initialization would be circular.
+  private static final class UncaughtLog {
+
+    static final RateLimitedLog LOG = new RateLimitedLog("Uncaught exception");
+  }
+
   private final AtomicInteger threadNumber = new AtomicInteger(1);
   private final String namePrefix;
   private final boolean daemon;
   private final int priority;
+  private final boolean virtual;
 
   public NioThreadFactory(String poolName) {
     this(poolName, true, Thread.NORM_PRIORITY);
   }
 
   public NioThreadFactory(String poolName, boolean daemon, int priority) {
+    this(poolName, daemon, priority, false);
+  }
+
+  private NioThreadFactory(String poolName, boolean daemon, int priority, boolean virtual) {
     if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
       throw new IllegalArgumentException("Invalid thread priority: " + priority);
     }
@@ -27,15 +43,26 @@ public class NioThreadFactory implements ThreadFactory {
     this.namePrefix = poolName + "-" + poolNumber.getAndIncrement() + "-thread-";
     this.daemon = daemon;
     this.priority = priority;
+    this.virtual = virtual;
+  }
+
+  // Virtual threads are always daemon threads and ignore priority.
+  public static NioThreadFactory virtual(String poolName) {
+    return new NioThreadFactory(poolName, true, Thread.NORM_PRIORITY, true);
   }
 
   @Override
   public Thread newThread(Runnable r) {
-    Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+    String name = namePrefix + threadNumber.getAndIncrement();
+    if (virtual) {
+      return Thread.ofVirtual().name(name).uncaughtExceptionHandler(UNCAUGHT_EXCEPTION_HANDLER)
+          .unstarted(r);
+    }
+
+    Thread thread = new Thread(r, name);
     thread.setDaemon(daemon);
     thread.setPriority(priority);
-    thread.setUncaughtExceptionHandler((t, e) -> System.err.println(
-        "Uncaught exception in thread " + t.getName() + ": " + e.getMessage()));
+    thread.setUncaughtExceptionHandler(UNCAUGHT_EXCEPTION_HANDLER);
     return thread;
   }
 }
@@ -0,0 +1,214 @@
+package main.java.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Method;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Array-backed replacement for the JDK selector's selected-key HashSet, so select() stops
+// allocating HashMap nodes and the owner walks the ready keys by index and clears them in one
+// pass instead of removing them one by one through an iterator.
+//
+// The selector calls contains() for every ready key and remove() for every deregistered one, so
+// both go through an open-addressed identity index kept beside the array: a slot holds the key's
+// array index + 1, 0 when empty, or REMOVED. remove() moves the last key into the hole, so it
+// must not run while the owner walks the array; the selector only calls it inside select().
+// Single-threaded, like the selector's own set.
+public final class SelectedKeySet extends AbstractSet<SelectionKey> {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int REMOVED = -1;
+
+  private SelectionKey[] keys = new SelectionKey[INITIAL_CAPACITY];
+  // Twice the array's length, so at least half the slots stay empty and probes are short.
+  private int[] index = new int[INITIAL_CAPACITY * 2];
+  // slotOf[i] is the index slot of keys[i], which lets clear() reset only the slots in use.
+  private int[] slotOf = new int[INITIAL_CAPACITY];
+  private int size = 0;
+  private int usedSlots = 0; // live plus REMOVED
+
+  private SelectedKeySet() {
+  }
+
+  // Swaps the set into the selector. Returns null if the selector is not the JDK
+  // implementation or its fields are out of reach; the caller then keeps the JDK set.
+  public static SelectedKeySet install(Selector selector) {
+    SelectedKeySet set = new SelectedKeySet();
+    try {
+      Class<?> selectorImpl = Class.forName("sun.nio.ch.SelectorImpl", false,
+          ClassLoader.getSystemClassLoader());
+      if (!selectorImpl.isInstance(selector)) {
+        return null;
+      }
+      Field selectedKeys = selectorImpl.getDeclaredField("selectedKeys");
+      Field publicSelectedKeys = selectorImpl.getDeclaredField("publicSelectedKeys");
+      try {
+        // Works when started with --add-opens java.base/sun.nio.ch=ALL-UNNAMED.
+        selectedKeys.setAccessible(true);
+        publicSelectedKeys.setAccessible(true);
+        selectedKeys.set(selector, set);
+        publicSelectedKeys.set(selector, set);
+      } catch (InaccessibleObjectException e) {
+        putWithUnsafe(selector, selectedKeys, set);
+        putWithUnsafe(selector, publicSelectedKeys, set);
+      }
+      return set;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  // sun.misc.Unsafe writes fields of non-opened packages; looked up reflectively so the build
+  // does not depend on jdk.unsupported.
+  private static void putWithUnsafe(Object target, Field field, Object value)
+      throws ReflectiveOperationException {
+    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+    Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+    theUnsafe.setAccessible(true);
+    Object unsafe = theUnsafe.get(null);
+    Method objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
+    Method putObject = unsafeClass.getMethod("putObject", Object.class, long.class,
+        Object.class);
+    long offset = (long) objectFieldOffset.invoke(unsafe, field);
+    putObject.invoke(unsafe, target, offset, value);
+  }
+
+  @Override
+  public boolean add(SelectionKey key) {
+    if (key == null) {
+      return false;
+    }
+    int slot = probe(key);
+    if (index[slot] != 0) {
+      return false;
+    }
+    if (usedSlots == keys.length) {
+      rehash();
+      slot = probe(key);
+    }
+    keys[size] = key;
+    slotOf[size] = slot;
+    index[slot] = size + 1;
+    size++;
+    usedSlots++;
+    return true;
+  }
+
+  public SelectionKey get(int i) {
+    return keys[i];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o != null && index[probe(o)] > 0;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    int slot = probe(o);
+    int i = index[slot] - 1;
+    if (i < 0) {
+      return false;
+    }
+    index[slot] = REMOVED;
+    int last = --size;
+    if (i != last) {
+      keys[i] = keys[last];
+      slotOf[i] = slotOf[last];
+      index[slotOf[i]] = i + 1;
+    }
+    keys[last] = null;
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    if (usedSlots == size) {
+      for (int i = 0; i < size; i++) {
+        index[slotOf[i]] = 0;
+      }
+    } else {
+      // REMOVED slots are not reachable from slotOf.
+      Arrays.fill(index, 0);
+    }
+    Arrays.fill(keys, 0, size, null);
+    size = 0;
+    usedSlots = 0;
+  }
+
+  // Returns the slot holding o, or the empty slot where it would go.
+  private int probe(Object o) {
+    int mask = index.length - 1;
+    int h = System.identityHashCode(o);
+    int slot = (h ^ (h >>> 16)) & mask;
+    while (true) {
+      int entry = index[slot];
+      if (entry == 0 || (entry > 0 && keys[entry - 1] == o)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  // Drops REMOVED slots, growing the array first if it is full.
+  private void rehash() {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      slotOf = Arrays.copyOf(slotOf, size * 2);
+      index = new int[size * 4];
+    } else {
+      Arrays.fill(index, 0);
+    }
+    for (int i = 0; i < size; i++) {
+      int slot = probe(keys[i]);
+      slotOf[i] = slot;
+      index[slot] = i + 1;
+    }
+    usedSlots = size;
+  }
+
+  @Override
+  public Iterator<SelectionKey> iterator() {
+    return new Iterator<>() {
+      private int position = 0;
+      private boolean removable = false;
+
+      @Override
+      public boolean hasNext() {
+        return position < size;
+      }
+
+      @Override
+      public SelectionKey next() {
+        if (position >= size) {
+          throw new NoSuchElementException();
+        }
+        removable = true;
+        return keys[position++];
+      }
+
+      // remove() fills the hole with the last key, so visit this position again.
+      @Override
+      public void remove() {
+        if (!removable) {
+          throw new IllegalStateException();
+        }
+        removable = false;
+        SelectedKeySet.this.remove(keys[--position]);
+      }
+    };
+  }
+}
@@ -0,0 +1,314 @@
+package main.java.util.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import main.java.server.ServerConfig;
+import main.java.util.metrics.MetricsRegistry;
+
+// Power-of-two size classes carved from shared direct-memory slabs. A platform thread allocates
+// from and releases to its own LocalCache without locking, and trades half a cache at a time with
+// the size class when it runs empty or full. The size classes' free lists are guarded by their
+// monitors, not lock-free; virtual threads, which have no cache, take that lock per buffer.
+public final class BufferPool {
+
+  private static final BufferPool INSTANCE = new BufferPool(ServerConfig.BUFFER_POOL_MIN_CHUNK_SIZE,
+      ServerConfig.BUFFER_POOL_MAX_CHUNK_SIZE, ServerConfig.BUFFER_POOL_SLAB_SIZE,
+      ServerConfig.BUFFER_POOL_MAX_MEMORY, ServerConfig.BUFFER_POOL_THREAD_CACHE_SIZE);
+
+  static {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    registry.counterFunction("jam_buffer_pool_hits_total", "Allocations served from the pool.",
+        INSTANCE::getHitCount);
+    registry.counterFunction("jam_buffer_pool_misses_total",
+        "Allocations that carved a new slab or fell back to an unpooled buffer.",
+        INSTANCE::getMissCount);
+    registry.gauge("jam_buffer_pool_outstanding", "Pooled buffers currently allocated.",
+        INSTANCE::getOutstandingCount);
+    registry.gauge("jam_buffer_pool_memory_bytes", "Direct memory reserved by pool slabs.",
+        INSTANCE::getPooledMemory);
+    registry.gauge("jam_buffer_pool_leak_suspects",
+        "Pooled buffers held longer than the leak age without being released.",
+        INSTANCE::countLeakSuspects);
+    registry.counterFunction("jam_buffer_pool_illegal_releases_total",
+        "Releases of buffers that were already back in the pool.",
+        INSTANCE::getIllegalReleaseCount);
+  }
+
+  private final int minChunkShift;
+  private final SizeClass[] sizeClasses;
+  private final int slabSize;
+  private final long maxPoolMemory;
+  private final int transferBatch;
+  private final ThreadLocal<LocalCache> localCache;
+
+  private final AtomicLong pooledMemory = new AtomicLong(0);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder outstanding = new LongAdder();
+  private final LongAdder illegalReleases = new LongAdder();
+
+  public BufferPool(int minChunkSize, int maxChunkSize, int slabSize, long maxPoolMemory,
+      int threadCacheSize) {
+    if (Integer.bitCount(minChunkSize) != 1 || Integer.bitCount(maxChunkSize) != 1
+        || minChunkSize > maxChunkSize) {
+      throw new IllegalArgumentException(
+          "Chunk sizes must be powers of two with min <= max: " + minChunkSize + ", "
+              + maxChunkSize);
+    }
+    if (slabSize < maxChunkSize) {
+      throw new IllegalArgumentException(
+          "Slab size must hold at least one max chunk: " + slabSize);
+    }
+    if (threadCacheSize < 2) {
+      throw new IllegalArgumentException("Thread cache size must be >= 2: " + threadCacheSize);
+    }
+
+    this.minChunkShift = Integer.numberOfTrailingZeros(minChunkSize);
+    int classCount = Integer.numberOfTrailingZeros(maxChunkSize) - minChunkShift + 1;
+    this.sizeClasses = new SizeClass[classCount];
+    for (int i = 0; i < classCount; i++) {
+      sizeClasses[i] = new SizeClass(minChunkSize << i);
+    }
+    this.slabSize = slabSize;
+    this.maxPoolMemory = maxPoolMemory;
+    this.transferBatch = threadCacheSize / 2;
+    this.localCache = ThreadLocal.withInitial(() -> new LocalCache(classCount, threadCacheSize));
+  }
+
+  public static BufferPool getInstance() {
+    return INSTANCE;
+  }
+
+  public PooledBuffer allocate(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive: " + size);
+    }
+
+    int index = sizeClassIndex(size);
+    PooledBuffer buffer;
+    if (index < 0) {
+      buffer = new PooledBuffer(this, ByteBuffer.allocateDirect(size), -1);
+      misses.increment();
+    } else if (Thread.currentThread().isVirtual()) {
+      buffer = sizeClasses[index].takeOne();
+      if (buffer == null) {
+        buffer = newChunk(index);
+      } else {
+        hits.increment();
+      }
+    } else {
+      LocalCache cache = localCache.get();
+      buffer = cache.pop(index);
+      if (buffer == null && sizeClasses[index].takeBatch(cache, index, transferBatch) == 0) {
+        buffer = newChunk(index);
+      } else {
+        if (buffer == null) {
+          buffer = cache.pop(index);
+        }
+        hits.increment();
+      }
+    }
+
+    outstanding.increment();
+    buffer.acquire();
+    return buffer;
+  }
+
+  void recycle(PooledBuffer buffer) {
+    outstanding.decrement();
+    int index = buffer.sizeClass();
+    if (index < 0) {
+      return;
+    }
+
+    // Virtual threads come and go per task, so they bypass the thread-local caches.
+    if (Thread.currentThread().isVirtual()) {
+      sizeClasses[index].giveOne(buffer);
+      return;
+    }
+
+    LocalCache cache = localCache.get();
+    if (!cache.push(index, buffer)) {
+      sizeClasses[index].giveBatch(cache, index, transferBatch);
+      cache.push(index, buffer);
+    }
+  }
+
+  void recordIllegalRelease() {
+    illegalReleases.increment();
+  }
+
+  private PooledBuffer newChunk(int index) {
+    misses.increment();
+    SizeClass sizeClass = sizeClasses[index];
+    long reserved = pooledMemory.addAndGet(slabSize);
+    if (reserved > maxPoolMemory) {
+      pooledMemory.addAndGet(-slabSize);
+      return new PooledBuffer(this, ByteBuffer.allocateDirect(sizeClass.chunkSize), -1);
+    }
+    return sizeClass.carveSlab(this, index, slabSize);
+  }
+
+  private int sizeClassIndex(int size) {
+    int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+    int index = Math.max(0, shift - minChunkShift);
+    return index < sizeClasses.length ? index : -1;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getOutstandingCount() {
+    return outstanding.sum();
+  }
+
+  public long getIllegalReleaseCount() {
+    return illegalReleases.sum();
+  }
+
+  public long getPooledMemory() {
+    return pooledMemory.get();
+  }
+
+  public long countLeakSuspects() {
+    return countLeakSuspects(ServerConfig.BUFFER_POOL_LEAK_AGE_NANOS);
+  }
+
+  public long countLeakSuspects(long minAgeNanos) {
+    long now = System.nanoTime();
+    long suspects = 0;
+    for (SizeClass sizeClass : sizeClasses) {
+      suspects += sizeClass.countLeakSuspects(now, minAgeNanos);
+    }
+    return suspects;
+  }
+
+  @Override
+  public String toString() {
+    return "BufferPool[hits=" + getHitCount() + ", misses=" + getMissCount() + ", outstanding="
+        + getOutstandingCount() + ", illegalReleases=" + getIllegalReleaseCount()
+        + ", leakSuspects=" + countLeakSuspects() + ", pooledMemory=" + getPooledMemory() + "]";
+  }
+
+  private static final class SizeClass {
+
+    private final int chunkSize;
+    private final List<PooledBuffer> allChunks = new ArrayList<>();
+    private PooledBuffer[] free = new PooledBuffer[64];
+    private int freeCount = 0;
+
+    SizeClass(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    synchronized PooledBuffer takeOne() {
+      if (freeCount == 0) {
+        return null;
+      }
+      PooledBuffer buffer = free[--freeCount];
+      free[freeCount] = null;
+      return buffer;
+    }
+
+    synchronized void giveOne(PooledBuffer buffer) {
+      pushFree(buffer);
+    }
+
+    synchronized int takeBatch(LocalCache cache, int index, int max) {
+      int taken = 0;
+      while (taken < max && freeCount > 0) {
+        PooledBuffer buffer = free[--freeCount];
+        free[freeCount] = null;
+        cache.push(index, buffer);
+        taken++;
+      }
+      return taken;
+    }
+
+    synchronized void giveBatch(LocalCache cache, int index, int count) {
+      for (int i = 0; i < count; i++) {
+        PooledBuffer buffer = cache.pop(index);
+        if (buffer == null) {
+          return;
+        }
+        pushFree(buffer);
+      }
+    }
+
+    synchronized PooledBuffer carveSlab(BufferPool pool, int index, int slabSize) {
+      ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+      int chunks = slabSize / chunkSize;
+      PooledBuffer first = null;
+      for (int i = 0; i < chunks; i++) {
+        PooledBuffer buffer = new PooledBuffer(pool, slab.slice(i * chunkSize, chunkSize), index);
+        allChunks.add(buffer);
+        if (first == null) {
+          first = buffer;
+        } else {
+          pushFree(buffer);
+        }
+      }
+      return first;
+    }
+
+    synchronized long countLeakSuspects(long now, long minAgeNanos) {
+      long suspects = 0;
+      for (PooledBuffer buffer : allChunks) {
+        if (buffer.refCnt() > 0 && now - buffer.acquiredAtNanos() > minAgeNanos) {
+          suspects++;
+        }
+      }
+      return suspects;
+    }
+
+    private void pushFree(PooledBuffer buffer) {
+      if (freeCount == free.length) {
+        free = Arrays.copyOf(free, free.length * 2);
+      }
+      free[freeCount++] = buffer;
+    }
+  }
+
+  private static final class LocalCache {
+
+    private final PooledBuffer[][] stacks;
+    private final int[] counts;
+
+    LocalCache(int classCount, int capacity) {
+      this.stacks = new PooledBuffer[classCount][capacity];
+      this.counts = new int[classCount];
+    }
+
+    PooledBuffer pop(int index) {
+      int count = counts[index];
+      if (count == 0) {
+        return null;
+      }
+      PooledBuffer[] stack = stacks[index];
+      PooledBuffer buffer = stack[--count];
+      stack[count] = null;
+      counts[index] = count;
+      return buffer;
+    }
+
+    boolean push(int index, PooledBuffer buffer) {
+      int count = counts[index];
+      PooledBuffer[] stack = stacks[index];
+      if (count == stack.length) {
+        return false;
+      }
+      stack[count] = buffer;
+      counts[index] = count + 1;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package main.java.util.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class PooledBuffer {
+
+  private final BufferPool pool;
+  private final ByteBuffer buffer;
+  private final int sizeClass;
+  private final AtomicInteger refCnt = new AtomicInteger(0);
+  private volatile long acquiredAtNanos;
+
+  PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+    this.pool = pool;
+    this.buffer = buffer;
+    this.sizeClass = sizeClass;
+  }
+
+  void acquire() {
+    refCnt.set(1);
+    acquiredAtNanos = System.nanoTime();
+    buffer.clear();
+  }
+
+  public ByteBuffer buffer() {
+    return buffer;
+  }
+
+  public int capacity() {
+    return buffer.capacity();
+  }
+
+  public int refCnt() {
+    return refCnt.get();
+  }
+
+  public PooledBuffer retain() {
+    while (true) {
+      int current = refCnt.get();
+      if (current <= 0) {
+        throw new IllegalStateException("Buffer already released");
+      }
+      if (refCnt.compareAndSet(current, current + 1)) {
+        return this;
+      }
+    }
+  }
+
+  public boolean release() {
+    while (true) {
+      int current = refCnt.get();
+      if (current <= 0) {
+        pool.recordIllegalRelease();
+        return false;
+      }
+      if (refCnt.compareAndSet(current, current - 1)) {
+        if (current == 1) {
+          pool.recycle(this);
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+
+  int sizeClass() {
+    return sizeClass;
+  }
+
+  public long acquiredAtNanos() {
+    return acquiredAtNanos;
+  }
+}
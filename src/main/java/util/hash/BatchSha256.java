@@ -0,0 +1,13 @@
+package main.java.util.hash;
+
+// Hashes many independent 32-byte messages (one padded SHA-256 block each) per call.
+public interface BatchSha256 {
+
+  // in and out hold count consecutive 32-byte values and may be the same array.
+  void digest32(byte[] in, byte[] out, int count);
+
+  // Number of messages hashed per pass; 1 for engines without SIMD lanes.
+  int lanes();
+
+  String name();
+}
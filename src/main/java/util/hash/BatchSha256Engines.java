@@ -0,0 +1,73 @@
+package main.java.util.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import main.java.util.log.RateLimitedLog;
+
+public final class BatchSha256Engines {
+
+  private static final String VECTOR_ENGINE_CLASS = "main.java.util.hash.VectorBatchSha256";
+  private static final int SELF_CHECK_MESSAGES = 67;
+  private static final RateLimitedLog ENGINE_LOG = new RateLimitedLog("BatchSha256Engines");
+
+  private BatchSha256Engines() {
+  }
+
+  public static BatchSha256 scalar() {
+    return new DigestBatchSha256();
+  }
+
+  // Returns the vector engine if jdk.incubator.vector is present and it matches MessageDigest
+  // bit for bit; otherwise the MessageDigest-based engine.
+  public static BatchSha256 create(boolean preferVector) {
+    if (!preferVector) {
+      return scalar();
+    }
+
+    BatchSha256 engine;
+    try {
+      engine = (BatchSha256) Class.forName(VECTOR_ENGINE_CLASS).getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      ENGINE_LOG.log("Vector SHA-256 engine unavailable (" + e
+          + "); run with --add-modules jdk.incubator.vector to enable it.");
+      return scalar();
+    }
+
+    if (!matchesMessageDigest(engine)) {
+      ENGINE_LOG.log("Vector SHA-256 engine failed self-check; using MessageDigest.");
+      return scalar();
+    }
+    return engine;
+  }
+
+  public static boolean matchesMessageDigest(BatchSha256 engine) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 algorithm not available", e);
+    }
+
+    Random random = new Random(0x5a256L);
+    byte[] input = new byte[SELF_CHECK_MESSAGES * Sha256Constants.DIGEST_SIZE];
+    random.nextBytes(input);
+    byte[] actual = input.clone();
+
+    for (int round = 0; round < 3; round++) {
+      byte[] expected = new byte[actual.length];
+      for (int i = 0; i < SELF_CHECK_MESSAGES; i++) {
+        int offset = i * Sha256Constants.DIGEST_SIZE;
+        digest.update(actual, offset, Sha256Constants.DIGEST_SIZE);
+        System.arraycopy(digest.digest(), 0, expected, offset, Sha256Constants.DIGEST_SIZE);
+      }
+      engine.digest32(actual, actual, SELF_CHECK_MESSAGES);
+      if (!Arrays.equals(expected, actual)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
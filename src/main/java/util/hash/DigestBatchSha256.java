@@ -0,0 +1,40 @@
+package main.java.util.hash;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Scalar fallback: one MessageDigest call per message, which lets the JDK use its SHA intrinsics.
+public final class DigestBatchSha256 implements BatchSha256 {
+
+  private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not available", e);
+    }
+  });
+
+  @Override
+  public void digest32(byte[] in, byte[] out, int count) {
+    MessageDigest digest = DIGEST.get();
+    try {
+      for (int i = 0, offset = 0; i < count; i++, offset += Sha256Constants.DIGEST_SIZE) {
+        digest.update(in, offset, Sha256Constants.DIGEST_SIZE);
+        digest.digest(out, offset, Sha256Constants.DIGEST_SIZE);
+      }
+    } catch (DigestException e) {
+      throw new IllegalStateException("SHA-256 digest failed", e);
+    }
+  }
+
+  @Override
+  public int lanes() {
+    return 1;
+  }
+
+  @Override
+  public String name() {
+    return "MessageDigest";
+  }
+}
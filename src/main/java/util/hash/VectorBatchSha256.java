@@ -0,0 +1,145 @@
+package main.java.util.hash;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Runs SPECIES.length() single-block SHA-256 compressions side by side, one message per lane.
+// Requires --add-modules jdk.incubator.vector; BatchSha256Engines falls back when it is missing.
+final class VectorBatchSha256 implements BatchSha256 {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+  private static final int[] LANE_WORD_OFFSETS = new int[LANES];
+
+  static {
+    for (int i = 0; i < LANES; i++) {
+      LANE_WORD_OFFSETS[i] = i * Sha256Constants.DIGEST_WORDS;
+    }
+  }
+
+  private static final ThreadLocal<int[]> SCHEDULE = ThreadLocal.withInitial(
+      () -> new int[16 * LANES]);
+  private static final ThreadLocal<int[]> WORDS = ThreadLocal.withInitial(
+      () -> new int[LANES * Sha256Constants.DIGEST_WORDS * 8]);
+
+  @Override
+  public void digest32(byte[] in, byte[] out, int count) {
+    int paddedCount = (count + LANES - 1) / LANES * LANES;
+    int[] words = wordBuffer(paddedCount * Sha256Constants.DIGEST_WORDS);
+
+    int wordCount = count * Sha256Constants.DIGEST_WORDS;
+    for (int i = 0, offset = 0; i < wordCount; i++, offset += 4) {
+      words[i] = (in[offset] & 0xff) << 24 | (in[offset + 1] & 0xff) << 16
+          | (in[offset + 2] & 0xff) << 8 | (in[offset + 3] & 0xff);
+    }
+
+    for (int base = 0; base < paddedCount; base += LANES) {
+      compress(words, base * Sha256Constants.DIGEST_WORDS);
+    }
+
+    for (int i = 0, offset = 0; i < wordCount; i++, offset += 4) {
+      int word = words[i];
+      out[offset] = (byte) (word >>> 24);
+      out[offset + 1] = (byte) (word >>> 16);
+      out[offset + 2] = (byte) (word >>> 8);
+      out[offset + 3] = (byte) word;
+    }
+  }
+
+  private static int[] wordBuffer(int size) {
+    int[] words = WORDS.get();
+    if (words.length < size) {
+      words = new int[size];
+      WORDS.set(words);
+    }
+    return words;
+  }
+
+  // Transposes LANES messages starting at words[offset] into lanes, compresses them and writes
+  // the digests back in place. The message schedule lives in an int[] rather than an IntVector[]
+  // so C2 can keep the vectors unboxed.
+  private static void compress(int[] words, int offset) {
+    int[] w = SCHEDULE.get();
+    for (int j = 0; j < Sha256Constants.DIGEST_WORDS; j++) {
+      IntVector.fromArray(SPECIES, words, offset + j, LANE_WORD_OFFSETS, 0)
+          .intoArray(w, j * LANES);
+    }
+    IntVector.broadcast(SPECIES, Sha256Constants.PAD_WORD_8).intoArray(w, 8 * LANES);
+    IntVector zero = IntVector.zero(SPECIES);
+    for (int j = 9; j < 15; j++) {
+      zero.intoArray(w, j * LANES);
+    }
+    IntVector.broadcast(SPECIES, Sha256Constants.PAD_WORD_15).intoArray(w, 15 * LANES);
+
+    IntVector a = IntVector.broadcast(SPECIES, Sha256Constants.H0[0]);
+    IntVector b = IntVector.broadcast(SPECIES, Sha256Constants.H0[1]);
+    IntVector c = IntVector.broadcast(SPECIES, Sha256Constants.H0[2]);
+    IntVector d = IntVector.broadcast(SPECIES, Sha256Constants.H0[3]);
+    IntVector e = IntVector.broadcast(SPECIES, Sha256Constants.H0[4]);
+    IntVector f = IntVector.broadcast(SPECIES, Sha256Constants.H0[5]);
+    IntVector g = IntVector.broadcast(SPECIES, Sha256Constants.H0[6]);
+    IntVector h = IntVector.broadcast(SPECIES, Sha256Constants.H0[7]);
+
+    for (int t = 0; t < 64; t++) {
+      IntVector wt;
+      if (t < 16) {
+        wt = IntVector.fromArray(SPECIES, w, t * LANES);
+      } else {
+        IntVector w15 = IntVector.fromArray(SPECIES, w, ((t - 15) & 15) * LANES);
+        IntVector w2 = IntVector.fromArray(SPECIES, w, ((t - 2) & 15) * LANES);
+        IntVector s0 = w15.lanewise(VectorOperators.ROR, 7)
+            .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.ROR, 18))
+            .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.LSHR, 3));
+        IntVector s1 = w2.lanewise(VectorOperators.ROR, 17)
+            .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.ROR, 19))
+            .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.LSHR, 10));
+        wt = IntVector.fromArray(SPECIES, w, (t & 15) * LANES).add(s0)
+            .add(IntVector.fromArray(SPECIES, w, ((t - 7) & 15) * LANES)).add(s1);
+        wt.intoArray(w, (t & 15) * LANES);
+      }
+
+      IntVector bigSigma1 = e.lanewise(VectorOperators.ROR, 6)
+          .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 11))
+          .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 25));
+      IntVector ch = e.and(f).lanewise(VectorOperators.XOR,
+          e.lanewise(VectorOperators.NOT).and(g));
+      IntVector t1 = h.add(bigSigma1).add(ch).add(Sha256Constants.K[t]).add(wt);
+
+      IntVector bigSigma0 = a.lanewise(VectorOperators.ROR, 2)
+          .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 13))
+          .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 22));
+      IntVector maj = a.and(b).lanewise(VectorOperators.XOR, a.and(c))
+          .lanewise(VectorOperators.XOR, b.and(c));
+      IntVector t2 = bigSigma0.add(maj);
+
+      h = g;
+      g = f;
+      f = e;
+      e = d.add(t1);
+      d = c;
+      c = b;
+      b = a;
+      a = t1.add(t2);
+    }
+
+    a.add(Sha256Constants.H0[0]).intoArray(words, offset, LANE_WORD_OFFSETS, 0);
+    b.add(Sha256Constants.H0[1]).intoArray(words, offset + 1, LANE_WORD_OFFSETS, 0);
+    c.add(Sha256Constants.H0[2]).intoArray(words, offset + 2, LANE_WORD_OFFSETS, 0);
+    d.add(Sha256Constants.H0[3]).intoArray(words, offset + 3, LANE_WORD_OFFSETS, 0);
+    e.add(Sha256Constants.H0[4]).intoArray(words, offset + 4, LANE_WORD_OFFSETS, 0);
+    f.add(Sha256Constants.H0[5]).intoArray(words, offset + 5, LANE_WORD_OFFSETS, 0);
+    g.add(Sha256Constants.H0[6]).intoArray(words, offset + 6, LANE_WORD_OFFSETS, 0);
+    h.add(Sha256Constants.H0[7]).intoArray(words, offset + 7, LANE_WORD_OFFSETS, 0);
+  }
+
+  @Override
+  public int lanes() {
+    return LANES;
+  }
+
+  @Override
+  public String name() {
+    return "Vector(" + SPECIES + ")";
+  }
+}
@@ -0,0 +1,170 @@
+package main.java.util.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import main.java.server.ServerConfig;
+import main.java.util.MpscArrayQueue;
+import main.java.util.NioThreadFactory;
+import main.java.util.metrics.MetricsRegistry;
+
+// Writes log messages to stderr from one background thread. Callers only format the message and
+// offer it to a lock-free queue, so an I/O or business thread never waits on the stderr lock;
+// when the queue is full the message is dropped and counted instead. Stack traces are rendered
+// by the writer thread. Log through a RateLimitedLog so floods collapse into summaries.
+public final class AsyncLogger {
+
+  private static final AsyncLogger INSTANCE = new AsyncLogger(ServerConfig.LOG_QUEUE_CAPACITY);
+
+  static {
+    MetricsRegistry registry = MetricsRegistry.getInstance();
+    registry.counterFunction("jam_log_messages_total", "Log messages written.",
+        INSTANCE::getWrittenCount);
+    registry.counterFunction("jam_log_messages_dropped_total",
+        "Log messages dropped because the log queue was full.", INSTANCE::getDroppedCount);
+    registry.counterFunction("jam_log_messages_suppressed_total",
+        "Log messages suppressed by per-call-site rate limits.", INSTANCE::getSuppressedCount);
+  }
+
+  private record Event(String message, Throwable cause) {
+  }
+
+  private final MpscArrayQueue<Event> queue;
+  private final List<RateLimitedLog> limiters = new CopyOnWriteArrayList<>();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder suppressed = new LongAdder();
+  private final LongAdder offered = new LongAdder();
+  private final Thread writer;
+  private volatile boolean waiting = false;
+  private volatile long written = 0;
+  private long droppedReported = 0;
+  private long nextSweepNanos;
+
+  private AsyncLogger(int capacity) {
+    this.queue = new MpscArrayQueue<>(capacity);
+    this.nextSweepNanos = System.nanoTime() + ServerConfig.LOG_RATE_WINDOW_NANOS;
+    this.writer = new NioThreadFactory("AsyncLogger").newThread(this::run);
+    writer.start();
+  }
+
+  public static AsyncLogger getInstance() {
+    return INSTANCE;
+  }
+
+  public void log(String message) {
+    log(message, null);
+  }
+
+  // Never blocks. Returns false if the message was dropped.
+  public boolean log(String message, Throwable cause) {
+    if (!queue.offer(new Event(message, cause))) {
+      dropped.increment();
+      return false;
+    }
+    offered.increment();
+    if (waiting) {
+      LockSupport.unpark(writer);
+    }
+    return true;
+  }
+
+  void register(RateLimitedLog limiter) {
+    limiters.add(limiter);
+  }
+
+  void recordSuppressed() {
+    suppressed.increment();
+  }
+
+  // Waits until everything logged before the call has been written, e.g. at shutdown.
+  public void flush(long timeout, TimeUnit unit) {
+    long target = offered.sum();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (written < target && System.nanoTime() - deadline < 0) {
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(1_000_000L);
+    }
+  }
+
+  private void run() {
+    StringBuilder batch = new StringBuilder(1024);
+    while (true) {
+      long count = drain(batch);
+      long now = System.nanoTime();
+      if (now - nextSweepNanos >= 0) {
+        nextSweepNanos = now + ServerConfig.LOG_RATE_WINDOW_NANOS;
+        sweep(batch);
+      }
+      if (batch.length() > 0) {
+        System.err.print(batch);
+        System.err.flush();
+        batch.setLength(0);
+      }
+      if (count > 0) {
+        written += count;
+        continue;
+      }
+
+      // Producers unpark us only while this flag is set; recheck after setting it so a message
+      // published in between is not left waiting for the timeout.
+      waiting = true;
+      if (queue.isEmpty()) {
+        LockSupport.parkNanos(this, Math.max(0, nextSweepNanos - System.nanoTime()));
+      }
+      waiting = false;
+    }
+  }
+
+  private long drain(StringBuilder batch) {
+    long count = 0;
+    Event event;
+    while ((event = queue.poll()) != null) {
+      batch.append(event.message()).append('\n');
+      if (event.cause() != null) {
+        StringWriter trace = new StringWriter();
+        event.cause().printStackTrace(new PrintWriter(trace));
+        batch.append(trace);
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private void sweep(StringBuilder batch) {
+    for (RateLimitedLog limiter : limiters) {
+      long count = limiter.takeSuppressed();
+      if (count > 0) {
+        batch.append(limiter.getName()).append(": ").append(count)
+            .append(" similar messages suppressed\n");
+      }
+    }
+    long droppedNow = dropped.sum();
+    if (droppedNow > droppedReported) {
+      batch.append("Log queue full: ").append(droppedNow - droppedReported)
+          .append(" messages dropped\n");
+      droppedReported = droppedNow;
+    }
+  }
+
+  public long getWrittenCount() {
+    return written;
+  }
+
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  public long getSuppressedCount() {
+    return suppressed.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncLogger[written=" + written + ", dropped=" + dropped.sum() + ", suppressed="
+        + suppressed.sum() + ", queued=" + queue.size() + "]";
+  }
+}
@@ -0,0 +1,73 @@
+package main.java.util.log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import main.java.server.ServerConfig;
+
+// One per call site, held in a static field. Lets up to LOG_RATE_LIMIT messages per window
+// through to the AsyncLogger; the rest only bump a counter, and the logger prints one
+// "<name>: N similar messages suppressed" line per window instead. Once a window's budget is
+// spent, a call is a read and a LongAdder increment, so a flood costs almost nothing.
+public final class RateLimitedLog {
+
+  private final String name;
+  private final int limit;
+  private final long windowNanos;
+  private final AsyncLogger logger;
+  private final AtomicLong windowStart;
+  private final AtomicInteger used = new AtomicInteger(0);
+  private final LongAdder suppressed = new LongAdder();
+
+  public RateLimitedLog(String name) {
+    this(name, ServerConfig.LOG_RATE_LIMIT, ServerConfig.LOG_RATE_WINDOW_NANOS);
+  }
+
+  public RateLimitedLog(String name, int limit, long windowNanos) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit must be >= 1: " + limit);
+    }
+    if (windowNanos <= 0) {
+      throw new IllegalArgumentException("Window must be positive: " + windowNanos);
+    }
+    this.name = name;
+    this.limit = limit;
+    this.windowNanos = windowNanos;
+    this.logger = AsyncLogger.getInstance();
+    this.windowStart = new AtomicLong(System.nanoTime());
+    logger.register(this);
+  }
+
+  public void log(String message) {
+    log(message, null);
+  }
+
+  public void log(String message, Throwable cause) {
+    if (tryAcquire()) {
+      logger.log(message, cause);
+    }
+  }
+
+  // For call sites whose message is expensive to build: format only when this returns true.
+  public boolean tryAcquire() {
+    long now = System.nanoTime();
+    long start = windowStart.get();
+    if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+      used.set(0);
+    }
+    if (used.get() >= limit || used.incrementAndGet() > limit) {
+      suppressed.increment();
+      logger.recordSuppressed();
+      return false;
+    }
+    return true;
+  }
+
+  long takeSuppressed() {
+    return suppressed.sumThenReset();
+  }
+
+  public String getName() {
+    return name;
+  }
+}
@@ -0,0 +1,25 @@
+package main.java.util.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic counter; LongAdder stripes updates across cells so hot paths on different
+// threads do not contend on one cache line.
+public final class Counter {
+
+  private final LongAdder value = new LongAdder();
+
+  Counter() {
+  }
+
+  public void increment() {
+    value.increment();
+  }
+
+  public void add(long delta) {
+    value.add(delta);
+  }
+
+  public long get() {
+    return value.sum();
+  }
+}
@@ -0,0 +1,72 @@
+package main.java.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free latency histogram with power-of-two microsecond buckets (1us .. ~16.8s, then +Inf).
+// Recording is a bucket computation and one atomic add into a per-thread stripe; readers sum
+// the stripes, so a snapshot may be slightly torn but never loses counts.
+public final class Histogram {
+
+  static final int BUCKET_COUNT = 26;
+  private static final int SUM_INDEX = BUCKET_COUNT;
+  private static final int STRIPE_LENGTH = BUCKET_COUNT + 1;
+  private static final int STRIPES = Math.min(16,
+      Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+  private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+  Histogram() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+    }
+  }
+
+  public void recordNanos(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    AtomicLongArray stripe = stripes[stripeIndex()];
+    stripe.getAndIncrement(bucketIndex(nanos));
+    stripe.getAndAdd(SUM_INDEX, nanos);
+  }
+
+  static int bucketIndex(long nanos) {
+    long micros = (nanos + 999) / 1000;
+    if (micros <= 1) {
+      return 0;
+    }
+    return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+  }
+
+  // Upper bound of bucket i in seconds; the last bucket is unbounded.
+  static double upperBoundSeconds(int bucket) {
+    return bucket == BUCKET_COUNT - 1 ? Double.POSITIVE_INFINITY : (1L << bucket) / 1e6;
+  }
+
+  private static int stripeIndex() {
+    long id = Thread.currentThread().threadId();
+    return (int) ((id * 0x9E3779B97F4A7C15L) >>> 60) & (STRIPES - 1);
+  }
+
+  // Fills counts (length BUCKET_COUNT) and returns the total in nanoseconds.
+  long snapshot(long[] counts) {
+    long sum = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        counts[i] += stripe.get(i);
+      }
+      sum += stripe.get(SUM_INDEX);
+    }
+    return sum;
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        count += stripe.get(i);
+      }
+    }
+    return count;
+  }
+}
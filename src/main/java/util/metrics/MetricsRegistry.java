@@ -0,0 +1,172 @@
+package main.java.util.metrics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Process-wide registry rendered in the Prometheus text exposition format (version 0.0.4).
+// Hot paths hold on to the Counter/Histogram they were handed and never touch the registry;
+// registration and scraping synchronize on it.
+public final class MetricsRegistry {
+
+  private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+  private enum Type {
+    COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+    private final String exposition;
+
+    Type(String exposition) {
+      this.exposition = exposition;
+    }
+  }
+
+  private static final class Family {
+
+    private final String name;
+    private final String help;
+    private final Type type;
+    private final Map<String, Object> series = new LinkedHashMap<>();
+
+    Family(String name, String help, Type type) {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+    }
+  }
+
+  private final Map<String, Family> families = new LinkedHashMap<>();
+
+  private MetricsRegistry() {
+  }
+
+  public static MetricsRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  // Registering an existing name and label set returns the existing counter.
+  public synchronized Counter counter(String name, String help, String... labels) {
+    return (Counter) series(name, help, Type.COUNTER, labels, Counter::new, false);
+  }
+
+  public synchronized Histogram histogram(String name, String help, String... labels) {
+    return (Histogram) series(name, help, Type.HISTOGRAM, labels, Histogram::new, false);
+  }
+
+  // Exposes a count kept elsewhere. Re-registering replaces the supplier, so a component
+  // recreated in the same process reports its own state.
+  public synchronized void counterFunction(String name, String help, LongSupplier value,
+      String... labels) {
+    series(name, help, Type.COUNTER, labels, () -> value, true);
+  }
+
+  public synchronized void gauge(String name, String help, LongSupplier value,
+      String... labels) {
+    series(name, help, Type.GAUGE, labels, () -> value, true);
+  }
+
+  private Object series(String name, String help, Type type, String[] labels,
+      Supplier<Object> factory, boolean replace) {
+    Family family = families.get(name);
+    if (family == null) {
+      family = new Family(name, help, type);
+      families.put(name, family);
+    } else if (family.type != type) {
+      throw new IllegalArgumentException(
+          "Metric " + name + " already registered as " + family.type.exposition);
+    }
+
+    String key = formatLabels(labels);
+    Object existing = family.series.get(key);
+    if (existing != null && !replace) {
+      return existing;
+    }
+    Object created = factory.get();
+    family.series.put(key, created);
+    return created;
+  }
+
+  public synchronized String scrape() {
+    StringBuilder out = new StringBuilder(8192);
+    long[] counts = new long[Histogram.BUCKET_COUNT];
+    for (Family family : families.values()) {
+      out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(family.name).append(' ').append(family.type.exposition)
+          .append('\n');
+      for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+        String labels = entry.getKey();
+        Object metric = entry.getValue();
+        if (metric instanceof Counter counter) {
+          appendSample(out, family.name, labels, counter.get());
+        } else if (metric instanceof LongSupplier supplier) {
+          appendSample(out, family.name, labels, supplier.getAsLong());
+        } else {
+          appendHistogram(out, family.name, labels, (Histogram) metric, counts);
+        }
+      }
+    }
+    return out.toString();
+  }
+
+  private static void appendHistogram(StringBuilder out, String name, String labels,
+      Histogram histogram, long[] counts) {
+    Arrays.fill(counts, 0);
+    long sumNanos = histogram.snapshot(counts);
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      double bound = Histogram.upperBoundSeconds(i);
+      String le = Double.isInfinite(bound) ? "+Inf" : String.format(Locale.ROOT, "%.6f", bound);
+      out.append(name).append("_bucket{");
+      if (!labels.isEmpty()) {
+        out.append(labels).append(',');
+      }
+      out.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+    }
+    out.append(name).append("_sum");
+    appendLabels(out, labels);
+    out.append(' ').append(String.format(Locale.ROOT, "%.9f", sumNanos / 1e9)).append('\n');
+    appendSample(out, name + "_count", labels, cumulative);
+  }
+
+  private static void appendSample(StringBuilder out, String name, String labels, long value) {
+    out.append(name);
+    appendLabels(out, labels);
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static void appendLabels(StringBuilder out, String labels) {
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+  }
+
+  private static String formatLabels(String[] labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be name/value pairs");
+    }
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append(labels[i]).append("=\"");
+      String value = labels[i + 1];
+      for (int j = 0; j < value.length(); j++) {
+        char c = value.charAt(j);
+        if (c == '\\' || c == '"') {
+          out.append('\\').append(c);
+        } else if (c == '\n') {
+          out.append("\\n");
+        } else {
+          out.append(c);
+        }
+      }
+      out.append('"');
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,176 @@
+package main.java.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+class InFlightRequestsTest {
+
+  private final InFlightRequests inFlight = new InFlightRequests();
+
+  @Test
+  void cancelReachesOnlyTheNamedRequest() {
+    CancellationToken first = inFlight.register(1, 0, false);
+    CancellationToken second = inFlight.register(2, 0, false);
+    assertEquals(2, inFlight.size());
+
+    assertTrue(inFlight.cancel(1));
+    assertTrue(first.isCancelled());
+    assertFalse(first.isChannelClosed());
+    assertFalse(second.isCancelled());
+    assertEquals(1, inFlight.size());
+
+    // The id is gone after the first cancel, and unknown ids are ignored.
+    assertFalse(inFlight.cancel(1));
+    assertFalse(inFlight.cancel(99));
+  }
+
+  @Test
+  void cancelAfterReleaseIsIgnored() {
+    CancellationToken token = inFlight.register(7, 0, false);
+    token.release();
+    assertEquals(0, inFlight.size());
+    assertFalse(inFlight.cancel(7));
+    assertFalse(token.isCancelled());
+  }
+
+  @Test
+  void closeCascadesToEveryRequestToken() {
+    List<CancellationToken> tokens = new ArrayList<>();
+    for (int id = 0; id < 100; id++) {
+      tokens.add(inFlight.register(id, 0, false));
+    }
+    tokens.get(3).release();
+    assertTrue(inFlight.cancel(5));
+
+    inFlight.closeAll();
+    assertTrue(inFlight.closeToken().isCancelled());
+    assertTrue(inFlight.closeToken().isChannelClosed());
+    for (CancellationToken token : tokens) {
+      assertTrue(token.isCancelled());
+      assertTrue(token.isChannelClosed());
+    }
+    // Registered after the close, still cancelled through the parent.
+    assertTrue(inFlight.register(1_000, 0, false).isChannelClosed());
+  }
+
+  @Test
+  void reusedIdTakesOverTheEntry() {
+    CancellationToken earlier = inFlight.register(4, 0, false);
+    CancellationToken later = inFlight.register(4, 0, false);
+    assertNotSame(earlier, later);
+    assertEquals(1, inFlight.size());
+
+    // The earlier request answering late must not free the id while the later one runs.
+    earlier.release();
+    assertTrue(inFlight.cancel(4));
+    assertTrue(later.isCancelled());
+    assertFalse(earlier.isCancelled());
+  }
+
+  @Test
+  void deadlineIsOnlyCheckedWhenSet() {
+    CancellationToken timed = inFlight.register(1, 1_000, true);
+    CancellationToken untimed = inFlight.register(2, 1_000, false);
+    assertFalse(timed.isExpired(999));
+    assertTrue(timed.isExpired(1_000));
+    assertTrue(timed.isExpired(Long.MIN_VALUE + 500)); // nanoTime wrapped past the deadline
+    assertFalse(untimed.isExpired(Long.MAX_VALUE));
+    assertFalse(inFlight.closeToken().isExpired(Long.MAX_VALUE));
+  }
+
+  @Test
+  void tableMatchesAMapUnderRandomOperations() {
+    Random random = new Random(22);
+    Map<Long, CancellationToken> expected = new HashMap<>();
+    for (int step = 0; step < 50_000; step++) {
+      // Few distinct ids, including negative and colliding high bits, so probe runs form.
+      long id = random.nextInt(300) * (random.nextBoolean() ? 1L : 1L << 40) - 100;
+      switch (random.nextInt(3)) {
+        case 0 -> expected.put(id, inFlight.register(id, 0, false));
+        case 1 -> {
+          CancellationToken token = expected.remove(id);
+          assertEquals(token != null, inFlight.cancel(id), "cancel " + id);
+          if (token != null) {
+            assertTrue(token.isCancelled());
+          }
+        }
+        default -> {
+          CancellationToken token = expected.remove(id);
+          if (token != null) {
+            token.release();
+          }
+        }
+      }
+      if (step % 1_000 == 0) {
+        assertEquals(expected.size(), inFlight.size(), "step " + step);
+      }
+    }
+    for (Map.Entry<Long, CancellationToken> entry : expected.entrySet()) {
+      assertTrue(inFlight.cancel(entry.getKey()), "id " + entry.getKey());
+      assertTrue(entry.getValue().isCancelled());
+    }
+    assertEquals(0, inFlight.size());
+  }
+
+  @Test
+  void releasedEntriesDoNotAccumulate() {
+    // A client that never cancels: every request is answered, so the table stays small.
+    for (long id = 0; id < 100_000; id++) {
+      inFlight.register(id, 0, false).release();
+    }
+    assertEquals(0, inFlight.size());
+    CancellationToken live = inFlight.register(-1, 0, false);
+    assertTrue(inFlight.cancel(-1));
+    assertTrue(live.isCancelled());
+  }
+
+  // The I/O thread cancels every id while a worker answers them. A false cancel() means the
+  // request was already answered, so its token must stay uncancelled; a true one may still
+  // lose to an answer already on its way, which is the best-effort contract.
+  @Test
+  void cancelRacingReleaseNeverCancelsAnAnsweredRequest() throws InterruptedException {
+    int requests = 20_000;
+    CancellationToken[] tokens = new CancellationToken[requests];
+    for (int id = 0; id < requests; id++) {
+      tokens[id] = inFlight.register(id, 0, false);
+    }
+    boolean[] answeredWithHash = new boolean[requests];
+    CountDownLatch start = new CountDownLatch(1);
+    Thread worker = new Thread(() -> {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        return;
+      }
+      for (int id = 0; id < requests; id++) {
+        answeredWithHash[id] = !tokens[id].isCancelled();
+        tokens[id].release();
+      }
+    });
+    worker.start();
+    start.countDown();
+    boolean[] cancelled = new boolean[requests];
+    for (int id = 0; id < requests; id++) {
+      cancelled[id] = inFlight.cancel(id);
+    }
+    worker.join();
+
+    for (int id = 0; id < requests; id++) {
+      assertEquals(cancelled[id], tokens[id].isCancelled(), "id " + id);
+      if (!cancelled[id]) {
+        assertTrue(answeredWithHash[id], "id " + id);
+      }
+    }
+    assertEquals(0, inFlight.size());
+  }
+}
@@ -0,0 +1,26 @@
+package main.java.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Holds submitted tasks for the test to run or shed, and rejects the submissions whose
+// zero-based index is listed in rejectAt.
+final class CapturingExecutor extends BusinessExecutor {
+
+  final List<BusinessTask> tasks = new ArrayList<>();
+  final List<Integer> rejectAt = new ArrayList<>();
+  private int submissions = 0;
+
+  CapturingExecutor() {
+    super(1, 0);
+  }
+
+  @Override
+  public boolean trySubmit(BusinessTask task) {
+    if (rejectAt.contains(submissions++)) {
+      return false;
+    }
+    tasks.add(task);
+    return true;
+  }
+}
@@ -0,0 +1,113 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// The controller takes the current time as an argument, so these tests drive it with a
+// synthetic clock in nanoseconds.
+class CoDelControllerTest {
+
+  private static final long MS = 1_000_000L;
+  private static final long TARGET = 5 * MS;
+  private static final long INTERVAL = 100 * MS;
+  private static final long ABOVE = 2 * TARGET;
+  private static final long BELOW = TARGET / 2;
+  private static final long T0 = 1_000 * MS;
+
+  private final CoDelController coDel = new CoDelController(TARGET, INTERVAL);
+
+  // Offers one task per millisecond with the given sojourn and returns the drop times.
+  private List<Long> run(long from, long to, long sojourn) {
+    List<Long> drops = new ArrayList<>();
+    for (long now = from; now < to; now += MS) {
+      if (coDel.shouldDrop(sojourn, now)) {
+        drops.add(now);
+      }
+    }
+    return drops;
+  }
+
+  @Test
+  void neverDropsBelowTarget() {
+    assertTrue(run(T0, T0 + 10 * INTERVAL, BELOW).isEmpty());
+    assertTrue(run(T0 + 10 * INTERVAL, T0 + 20 * INTERVAL, TARGET - 1).isEmpty());
+  }
+
+  @Test
+  void entersDroppingAfterOneFullIntervalAboveTarget() {
+    assertFalse(coDel.shouldDrop(ABOVE, T0));
+    assertFalse(coDel.shouldDrop(ABOVE, T0 + INTERVAL / 2));
+    assertFalse(coDel.shouldDrop(ABOVE, T0 + INTERVAL - 1));
+    assertTrue(coDel.shouldDrop(ABOVE, T0 + INTERVAL));
+    // The next drop is a whole interval later.
+    assertFalse(coDel.shouldDrop(ABOVE, T0 + INTERVAL + 1));
+    assertFalse(coDel.shouldDrop(ABOVE, T0 + 2 * INTERVAL - 1));
+    assertTrue(coDel.shouldDrop(ABOVE, T0 + 2 * INTERVAL));
+  }
+
+  @Test
+  void briefExcursionAboveTargetDoesNotDrop() {
+    assertTrue(run(T0, T0 + INTERVAL - MS, ABOVE).isEmpty());
+    assertFalse(coDel.shouldDrop(BELOW, T0 + INTERVAL - MS));
+    // The clock restarts: another full interval above target is needed.
+    assertTrue(run(T0 + INTERVAL, T0 + 2 * INTERVAL, ABOVE).isEmpty());
+    assertTrue(coDel.shouldDrop(ABOVE, T0 + 2 * INTERVAL));
+  }
+
+  @Test
+  void spacesDropsByIntervalOverSqrtCount() {
+    List<Long> drops = run(T0, T0 + 20 * INTERVAL, ABOVE);
+    assertEquals(T0 + INTERVAL, drops.get(0));
+    assertTrue(drops.size() > 10, drops.toString());
+
+    // Drop n + 1 follows drop n after interval / sqrt(n), give or take the 1 ms offer spacing.
+    double scheduled = drops.get(0);
+    for (int n = 1; n < drops.size(); n++) {
+      scheduled += INTERVAL / Math.sqrt(n);
+      long actual = drops.get(n);
+      assertTrue(actual >= scheduled && actual < scheduled + MS,
+          "drop " + n + " at " + (actual - T0) / MS + " ms, scheduled "
+              + (scheduled - T0) / MS + " ms");
+    }
+  }
+
+  @Test
+  void leavesDroppingOnceSojournFallsBelowTarget() {
+    assertFalse(run(T0, T0 + 5 * INTERVAL, ABOVE).isEmpty());
+    assertFalse(coDel.shouldDrop(BELOW, T0 + 5 * INTERVAL));
+    // Back above target, dropping needs a full interval again.
+    long resume = T0 + 5 * INTERVAL + MS;
+    assertTrue(run(resume, resume + INTERVAL, ABOVE).isEmpty());
+    assertTrue(coDel.shouldDrop(ABOVE, resume + INTERVAL));
+  }
+
+  @Test
+  void reentryShortlyAfterDroppingResumesNearPreviousRate() {
+    List<Long> first = run(T0, T0 + 10 * INTERVAL, ABOVE);
+    int count = first.size();
+    assertTrue(count > 4, first.toString());
+
+    long pause = T0 + 10 * INTERVAL;
+    coDel.shouldDrop(BELOW, pause);
+    List<Long> second = run(pause + MS, pause + 3 * INTERVAL, ABOVE);
+    // Re-entry starts at count - 2, so the second drop comes after interval / sqrt(count - 2)
+    // rather than a whole interval.
+    long gap = second.get(1) - second.get(0);
+    long expected = (long) (INTERVAL / Math.sqrt(count - 2));
+    assertTrue(gap >= expected && gap < expected + MS, "gap " + gap + ", expected " + expected);
+  }
+
+  @Test
+  void reentryLongAfterDroppingStartsOver() {
+    assertFalse(run(T0, T0 + 10 * INTERVAL, ABOVE).isEmpty());
+    long later = T0 + 30 * INTERVAL;
+    coDel.shouldDrop(BELOW, later);
+    List<Long> second = run(later + MS, later + 4 * INTERVAL, ABOVE);
+    assertEquals(INTERVAL, second.get(1) - second.get(0));
+  }
+}
@@ -0,0 +1,180 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// offer() and poll() take the current time as an argument, so these tests drive the queue with a
+// synthetic clock. Flows are plain marker objects standing in for channels.
+class FairTaskQueueTest {
+
+  private static final int QUANTUM = 128;
+  private static final long MAX_WAIT = 1_000_000L;
+  private static final long T0 = 5_000_000L;
+
+  private final FairTaskQueue queue = new FairTaskQueue(QUANTUM, MAX_WAIT);
+  private final Object heavy = new Object();
+  private final Object light = new Object();
+
+  private static BusinessTask task(Object flow, int cost) {
+    return BusinessTask.of(() -> { }, () -> { }, flow, cost);
+  }
+
+  private void offer(Object flow, int cost, int count, long now) {
+    for (int i = 0; i < count; i++) {
+      queue.offer(task(flow, cost), now);
+    }
+  }
+
+  // Polls until empty and returns the flow of each task, in service order.
+  private List<Object> drain(long now) {
+    List<Object> order = new ArrayList<>();
+    FairTaskQueue.Entry entry;
+    while ((entry = queue.poll(now)) != null) {
+      order.add(entry.task.flow());
+    }
+    return order;
+  }
+
+  @Test
+  void servesEachFlowInFifoOrder() {
+    List<BusinessTask> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      BusinessTask task = task(light, 1);
+      tasks.add(task);
+      queue.offer(task, T0);
+    }
+    for (BusinessTask task : tasks) {
+      assertSame(task, queue.poll(T0).task);
+    }
+    assertNull(queue.poll(T0));
+  }
+
+  @Test
+  void equalCostFlowsAlternate() {
+    offer(heavy, QUANTUM, 5, T0);
+    offer(light, QUANTUM, 5, T0);
+    List<Object> order = drain(T0);
+    for (int i = 0; i < order.size(); i++) {
+      assertSame(i % 2 == 0 ? heavy : light, order.get(i), "position " + i);
+    }
+  }
+
+  @Test
+  void chargesEachFlowByCostNotByTaskCount() {
+    offer(heavy, 100, 10, T0);
+    offer(light, 1, 200, T0);
+    List<Object> order = drain(T0);
+
+    // One heavy task per turn (128 credit, 100 cost), then a full quantum of light tasks.
+    assertSame(heavy, order.get(0));
+    for (int i = 1; i <= QUANTUM; i++) {
+      assertSame(light, order.get(i), "position " + i);
+    }
+    assertSame(heavy, order.get(QUANTUM + 1));
+
+    // While both flows are backlogged, the served cost never drifts apart by more than one
+    // quantum plus one task.
+    long heavyCost = 0;
+    long lightCost = 0;
+    int lightServed = 0;
+    for (Object flow : order) {
+      if (flow == heavy) {
+        heavyCost += 100;
+      } else {
+        lightCost++;
+        lightServed++;
+      }
+      if (lightServed < 200) {
+        assertTrue(Math.abs(heavyCost - lightCost) <= QUANTUM + 100,
+            "heavy " + heavyCost + " light " + lightCost);
+      }
+    }
+    assertEquals(210, order.size());
+  }
+
+  @Test
+  void leftoverCreditCarriesToTheNextTurn() {
+    // 60 + 60 fits the first turn's 128; the third needs the remaining 8 plus the next quantum.
+    offer(heavy, 60, 3, T0);
+    offer(light, 1, 300, T0);
+    List<Object> order = drain(T0);
+    assertSame(heavy, order.get(0));
+    assertSame(heavy, order.get(1));
+    assertSame(light, order.get(2));
+    assertSame(heavy, order.get(2 + QUANTUM));
+  }
+
+  @Test
+  void promotesAnEntryThatWaitedMaxWaitRegardlessOfCredit() {
+    // Far more than a quantum: round robin alone would serve every light task first.
+    queue.offer(task(heavy, 100 * QUANTUM), T0);
+    offer(light, 1, 1_000, T0);
+
+    assertSame(light, queue.poll(T0 + MAX_WAIT - 1).task.flow());
+    assertEquals(0, queue.getPromotionCount());
+
+    assertSame(heavy, queue.poll(T0 + MAX_WAIT).task.flow());
+    assertEquals(1, queue.getPromotionCount());
+    assertEquals(1, queue.getFlowCount());
+  }
+
+  @Test
+  void promotesAtMostEveryOtherDequeue() {
+    queue.offer(task(heavy, 1), T0);
+    offer(light, 1, 10, T0);
+    offer(heavy, 1, 9, T0);
+
+    long now = T0 + MAX_WAIT;
+    List<Object> order = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      long before = queue.getPromotionCount();
+      order.add(queue.poll(now).task.flow());
+      assertEquals(i % 2 == 0 ? before + 1 : before, queue.getPromotionCount(), "poll " + i);
+    }
+    assertNull(queue.poll(now));
+    assertEquals(10, queue.getPromotionCount());
+    assertEquals(10, order.stream().filter(flow -> flow == heavy).count());
+    assertEquals(10, order.stream().filter(flow -> flow == light).count());
+  }
+
+  @Test
+  void promotedFlowPaysForTheTaskOutOfLaterCredit() {
+    queue.offer(task(heavy, 2 * QUANTUM), T0);
+    offer(heavy, 1, 1, T0 + MAX_WAIT);
+    offer(light, 1, 500, T0 + MAX_WAIT);
+
+    assertSame(heavy, queue.poll(T0 + MAX_WAIT).task.flow());
+    assertEquals(1, queue.getPromotionCount());
+    // Nothing else is old enough, and heavy is 2 quanta in debt, so light gets two full turns.
+    List<Object> order = drain(T0 + MAX_WAIT);
+    int firstHeavy = order.indexOf(heavy);
+    assertEquals(2 * QUANTUM, firstHeavy);
+  }
+
+  @Test
+  void tracksFlowsAndTheSharedDefaultFlow() {
+    assertEquals(0, queue.getFlowCount());
+    offer(heavy, 1, 2, T0);
+    offer(light, 1, 1, T0);
+    offer(null, 1, 1, T0);
+    offer(null, 1, 1, T0);
+    assertEquals(3, queue.getFlowCount());
+
+    drain(T0);
+    assertEquals(0, queue.getFlowCount());
+    assertNull(queue.poll(T0));
+  }
+
+  @Test
+  void rejectsInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> new FairTaskQueue(0, MAX_WAIT));
+    assertThrows(IllegalArgumentException.class, () -> new FairTaskQueue(QUANTUM, 0));
+  }
+}
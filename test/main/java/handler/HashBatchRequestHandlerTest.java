@@ -0,0 +1,241 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// Slices are captured instead of run, so each test decides when and in what order they finish.
+class HashBatchRequestHandlerTest {
+
+  private static final int HASH_SIZE = ServerConfig.HASH_RESULT_SIZE;
+
+  private record Item(int iterations, byte[] data) {
+  }
+
+  private record Result(byte status, byte[] hash) {
+  }
+
+  private final CapturingExecutor executor = new CapturingExecutor();
+  private final HashBatchRequestHandler handler =
+      new HashBatchRequestHandler(executor, new HashRequestHandler(executor));
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  private static byte[] data(int length, int seed) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (seed * 31 + i);
+    }
+    return data;
+  }
+
+  private static byte[] expectedHash(Item item) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    byte[] hash = digest.digest(item.data());
+    for (int i = 1; i < item.iterations(); i++) {
+      hash = digest.digest(hash);
+    }
+    return hash;
+  }
+
+  // truncatedTail bytes are cut from the end of the frame, to leave the last item malformed.
+  private static ByteBuffer batchFrame(long batchId, List<Item> items, int truncatedTail) {
+    ByteBuffer payload = ByteBuffer.allocate(ServerConfig.BATCH_REQUEST_MAX_PAYLOAD_SIZE);
+    payload.putLong(batchId).putInt(items.size());
+    for (Item item : items) {
+      payload.putInt(item.iterations()).putInt(item.data().length).put(item.data());
+    }
+    payload.flip();
+    payload.limit(payload.limit() - truncatedTail);
+    ByteBuffer frame = ByteBuffer.allocate(ServerConfig.HEADER_SIZE + payload.remaining());
+    frame.putInt(payload.remaining()).putShort(MessageType.HASH_BATCH_REQUEST.getValue())
+        .put(payload).flip();
+    return frame;
+  }
+
+  private void handle(RecordingChannel channel, long batchId, List<Item> items,
+      int truncatedTail) throws Exception {
+    MessageDecoder.getInstance().decode(batchFrame(batchId, items, truncatedTail),
+        new MessageView(), channel, (ch, message) -> handler.handle(message, ch));
+  }
+
+  private static List<Result> parseResponse(ByteBuffer response, long batchId, int count) {
+    int length = response.getInt();
+    assertEquals(MessageType.HASH_BATCH_RESPONSE.getValue(), response.getShort());
+    assertEquals(ServerConfig.BATCH_RESPONSE_HEADER_SIZE
+        + count * ServerConfig.BATCH_RESPONSE_ITEM_SIZE, length);
+    assertEquals(batchId, response.getLong());
+    assertEquals(count, response.getInt());
+    List<Result> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      byte status = response.get();
+      byte[] hash = new byte[HASH_SIZE];
+      response.get(hash);
+      results.add(new Result(status, hash));
+    }
+    assertFalse(response.hasRemaining());
+    return results;
+  }
+
+  private static List<Item> uniformItems(int count, int iterations) {
+    List<Item> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(new Item(iterations, data(20, i)));
+    }
+    return items;
+  }
+
+  @Test
+  void mixedBatchAnswersEveryItemInOrder() throws Exception {
+    RecordingChannel channel = new RecordingChannel(0);
+    List<Item> items = List.of(
+        new Item(3, data(10, 1)),
+        new Item(0, data(4, 2)),
+        new Item(ServerConfig.MAX_ITERATIONS + 1, data(4, 3)),
+        new Item(1, data(ServerConfig.MAX_DATA_LENGTH + 1, 4)),
+        new Item(ServerConfig.MAX_ITERATIONS, data(0, 5)),
+        new Item(7, data(ServerConfig.MAX_DATA_LENGTH, 6)),
+        new Item(2, data(16, 7)));
+
+    // The last item claims 16 bytes but only 15 arrive.
+    handle(channel, 42, items, 1);
+    assertEquals(1, channel.acceptedCount());
+    assertTrue(channel.responses().isEmpty());
+    for (BusinessTask task : executor.tasks) {
+      task.run();
+    }
+
+    assertEquals(1, channel.responses().size());
+    List<Result> results = parseResponse(channel.responses().get(0), 42, items.size());
+    byte[] expectedStatuses = {
+        HashBatchRequestHandler.STATUS_OK,
+        HashBatchRequestHandler.STATUS_INVALID_ITERATIONS,
+        HashBatchRequestHandler.STATUS_INVALID_ITERATIONS,
+        HashBatchRequestHandler.STATUS_INVALID_DATA_LENGTH,
+        HashBatchRequestHandler.STATUS_OK,
+        HashBatchRequestHandler.STATUS_OK,
+        HashBatchRequestHandler.STATUS_MALFORMED};
+    for (int i = 0; i < items.size(); i++) {
+      assertEquals(expectedStatuses[i], results.get(i).status(), "item " + i);
+      if (expectedStatuses[i] == HashBatchRequestHandler.STATUS_OK) {
+        assertArrayEquals(expectedHash(items.get(i)), results.get(i).hash(), "item " + i);
+      } else {
+        assertArrayEquals(new byte[HASH_SIZE], results.get(i).hash(), "item " + i);
+      }
+    }
+  }
+
+  @Test
+  void slicesFinishingOutOfOrderProduceOneOrderedResponse() throws Exception {
+    RecordingChannel channel = new RecordingChannel(0);
+    List<Item> items = uniformItems(40, ServerConfig.MAX_ITERATIONS);
+
+    handle(channel, 7, items, 0);
+    int slices = executor.tasks.size();
+    assertTrue(slices >= 4, "slices " + slices);
+    int totalCost = 0;
+    for (BusinessTask task : executor.tasks) {
+      assertTrue(task.cost() <= ServerConfig.BATCH_REQUEST_SPLIT_COST, "cost " + task.cost());
+      totalCost += task.cost();
+    }
+    assertEquals(items.size() * HashRequestHandler.estimateCost(ServerConfig.MAX_ITERATIONS, 20),
+        totalCost);
+
+    // Last slice first; nothing is queued until the final one completes.
+    for (int s = slices - 1; s >= 0; s--) {
+      assertTrue(channel.responses().isEmpty(), "response before slice " + s);
+      executor.tasks.get(s).run();
+    }
+
+    assertEquals(1, channel.responses().size());
+    List<Result> results = parseResponse(channel.responses().get(0), 7, items.size());
+    for (int i = 0; i < items.size(); i++) {
+      assertEquals(HashBatchRequestHandler.STATUS_OK, results.get(i).status(), "item " + i);
+      assertArrayEquals(expectedHash(items.get(i)), results.get(i).hash(), "item " + i);
+    }
+  }
+
+  @Test
+  void shedAndRejectedSlicesReportServerBusyForTheirItemsOnly() throws Exception {
+    RecordingChannel channel = new RecordingChannel(0);
+    List<Item> items = uniformItems(40, ServerConfig.MAX_ITERATIONS);
+    // The second slice is refused at submission; the first is shed by the queue later.
+    executor.rejectAt.add(1);
+
+    handle(channel, 9, items, 0);
+    assertTrue(executor.tasks.size() >= 3);
+    for (int s = executor.tasks.size() - 1; s >= 1; s--) {
+      executor.tasks.get(s).run();
+    }
+    assertTrue(channel.responses().isEmpty());
+    executor.tasks.get(0).shed();
+
+    assertEquals(1, channel.responses().size());
+    List<Result> results = parseResponse(channel.responses().get(0), 9, items.size());
+    // Both dropped slices cover a prefix of the batch: every busy item comes before every hash.
+    int busy = 0;
+    while (results.get(busy).status() == HashBatchRequestHandler.STATUS_SERVER_BUSY) {
+      assertArrayEquals(new byte[HASH_SIZE], results.get(busy).hash());
+      busy++;
+    }
+    assertTrue(busy > 0 && busy < items.size(), "busy " + busy);
+    for (int i = busy; i < items.size(); i++) {
+      assertEquals(HashBatchRequestHandler.STATUS_OK, results.get(i).status(), "item " + i);
+      assertArrayEquals(expectedHash(items.get(i)), results.get(i).hash(), "item " + i);
+    }
+  }
+
+  @Test
+  void closingTheChannelMidBatchQueuesNothing() throws Exception {
+    RecordingChannel channel = new RecordingChannel(0);
+    handle(channel, 11, uniformItems(40, ServerConfig.MAX_ITERATIONS), 0);
+    assertTrue(executor.tasks.size() >= 2);
+
+    executor.tasks.get(0).run();
+    channel.close();
+    for (int s = 1; s < executor.tasks.size(); s++) {
+      executor.tasks.get(s).run();
+    }
+    assertTrue(channel.responses().isEmpty());
+  }
+
+  @Test
+  void cheapBatchRunsInlineWithoutTheExecutor() throws Exception {
+    RecordingChannel channel = new RecordingChannel(ServerConfig.INLINE_MAX_COST_THRESHOLD);
+    List<Item> items = List.of(new Item(1, data(8, 1)), new Item(0, data(8, 2)),
+        new Item(2, data(8, 3)));
+
+    handle(channel, 3, items, 0);
+
+    assertTrue(executor.tasks.isEmpty());
+    assertEquals(1, channel.responses().size());
+    List<Result> results = parseResponse(channel.responses().get(0), 3, items.size());
+    assertArrayEquals(expectedHash(items.get(0)), results.get(0).hash());
+    assertEquals(HashBatchRequestHandler.STATUS_INVALID_ITERATIONS, results.get(1).status());
+    assertArrayEquals(expectedHash(items.get(2)), results.get(2).hash());
+  }
+
+  @Test
+  void invalidHeaderClosesTheChannel() throws Exception {
+    RecordingChannel channel = new RecordingChannel(0);
+    handle(channel, -1, uniformItems(1, 1), 0);
+    assertFalse(channel.isActive());
+    assertTrue(channel.responses().isEmpty());
+    assertEquals(0, channel.acceptedCount());
+  }
+}
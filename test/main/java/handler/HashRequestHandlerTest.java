@@ -0,0 +1,207 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// Deadlines and cancellation of HASH_REQUEST_V2. Requests are batched per read and the batch is
+// captured, so each test decides what happens before the worker gets to it.
+class HashRequestHandlerTest {
+
+  private static final int ITERATIONS = ServerConfig.MAX_ITERATIONS;
+
+  private final CapturingExecutor executor = new CapturingExecutor();
+  private final HashRequestHandler handler = new HashRequestHandler(executor);
+  private final RecordingChannel channel = new RecordingChannel(0);
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  private void send(MessageType type, ByteBuffer payload) throws Exception {
+    payload.flip();
+    ByteBuffer frame = ByteBuffer.allocate(ServerConfig.HEADER_SIZE + payload.remaining());
+    frame.putInt(payload.remaining()).putShort(type.getValue()).put(payload).flip();
+    MessageDecoder.getInstance().decode(frame, new MessageView(), channel, (ch, message) -> {
+      if (message.getType() == MessageType.CANCEL_REQUEST) {
+        handler.handleCancel(message, ch);
+      } else {
+        handler.handle(message, ch);
+      }
+    });
+  }
+
+  private void requestV2(long requestId, int timeoutMillis) throws Exception {
+    byte[] data = data(requestId);
+    send(MessageType.HASH_REQUEST_V2,
+        ByteBuffer.allocate(ServerConfig.REQUEST_V2_HEADER_SIZE + data.length)
+            .putLong(requestId).putInt(timeoutMillis).putInt(ITERATIONS).putInt(data.length)
+            .put(data));
+  }
+
+  private void cancel(long requestId) throws Exception {
+    send(MessageType.CANCEL_REQUEST,
+        ByteBuffer.allocate(ServerConfig.CANCEL_REQUEST_PAYLOAD_SIZE).putLong(requestId));
+  }
+
+  // Distinct data per id, so no request coalesces onto another.
+  private static byte[] data(long requestId) {
+    return ("request-" + requestId).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] expectedHash(long requestId) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    byte[] hash = digest.digest(data(requestId));
+    for (int i = 1; i < ITERATIONS; i++) {
+      hash = digest.digest(hash);
+    }
+    return hash;
+  }
+
+  private void runAll() {
+    for (BusinessTask task : executor.tasks) {
+      task.run();
+    }
+    executor.tasks.clear();
+  }
+
+  private static long requestIdOf(ByteBuffer response) {
+    return response.getLong(ServerConfig.HEADER_SIZE);
+  }
+
+  private static short typeOf(ByteBuffer response) {
+    return response.getShort(4);
+  }
+
+  // Returns the abort reason, or null for a HASH_RESPONSE (whose hash is checked).
+  private static Byte parse(ByteBuffer response) throws Exception {
+    long requestId = requestIdOf(response);
+    if (typeOf(response) == MessageType.REQUEST_ABORTED.getValue()) {
+      assertEquals(ServerConfig.REQUEST_ABORTED_PAYLOAD_SIZE, response.getInt(0));
+      return response.get(ServerConfig.HEADER_SIZE + ServerConfig.REQUEST_ID_SIZE);
+    }
+    assertEquals(MessageType.HASH_RESPONSE.getValue(), typeOf(response));
+    byte[] hash = new byte[ServerConfig.HASH_RESULT_SIZE];
+    response.get(ServerConfig.HEADER_SIZE + ServerConfig.RESPONSE_PAYLOAD_SIZE - hash.length,
+        hash);
+    assertArrayEquals(expectedHash(requestId), hash, "request " + requestId);
+    return null;
+  }
+
+  @Test
+  void cancelWhileQueuedAbortsExactlyOnce() throws Exception {
+    requestV2(1, 0);
+    requestV2(2, 0);
+    handler.channelReadComplete(channel);
+    cancel(1);
+    cancel(1);
+    runAll();
+    cancel(1);
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(2, responses.size());
+    assertEquals(1, requestIdOf(responses.get(0)));
+    assertEquals(HashRequestHandler.ABORTED_CANCELLED, parse(responses.get(0)));
+    assertEquals(2, requestIdOf(responses.get(1)));
+    assertNull(parse(responses.get(1)));
+    assertEquals(2, channel.acceptedCount());
+    assertEquals(0, channel.inFlightRequests().size());
+  }
+
+  @Test
+  void cancelAfterTheResponseIsIgnored() throws Exception {
+    requestV2(3, 0);
+    handler.channelReadComplete(channel);
+    runAll();
+    cancel(3);
+    runAll();
+
+    assertEquals(1, channel.responses().size());
+    assertNull(parse(channel.responses().get(0)));
+  }
+
+  @Test
+  void deadlinePassedWhileQueuedAbortsBeforeHashing() throws Exception {
+    requestV2(4, 1);
+    requestV2(5, 60_000);
+    handler.channelReadComplete(channel);
+    Thread.sleep(5);
+    runAll();
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(2, responses.size());
+    assertEquals(HashRequestHandler.ABORTED_DEADLINE_EXCEEDED, parse(responses.get(0)));
+    assertNull(parse(responses.get(1)));
+  }
+
+  @Test
+  void closedChannelGetsNoAbort() throws Exception {
+    requestV2(6, 0);
+    handler.channelReadComplete(channel);
+    channel.close();
+    runAll();
+    assertTrue(channel.responses().isEmpty());
+  }
+
+  @Test
+  void shedBatchAnswersServerBusyOnceAndReleasesTokens() throws Exception {
+    requestV2(7, 0);
+    requestV2(8, 0);
+    handler.channelReadComplete(channel);
+    executor.tasks.get(0).shed();
+    cancel(7);
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(2, responses.size());
+    for (ByteBuffer response : responses) {
+      assertEquals(MessageType.SERVER_BUSY.getValue(), typeOf(response));
+    }
+    assertEquals(0, channel.inFlightRequests().size());
+  }
+
+  // Cancels race a worker hashing the same requests: every request still gets exactly one
+  // answer, either its hash or REQUEST_ABORTED. How many of each depends on scheduling.
+  @Test
+  void cancelRacingTheWorkerAnswersEachRequestOnce() throws Exception {
+    int requests = 512;
+    for (long id = 0; id < requests; id++) {
+      requestV2(id, 0);
+    }
+    handler.channelReadComplete(channel);
+    List<BusinessTask> tasks = List.copyOf(executor.tasks);
+    Thread worker = new Thread(() -> tasks.forEach(BusinessTask::run));
+    worker.start();
+    for (long id = requests - 1; id >= 0; id--) {
+      cancel(id);
+    }
+    worker.join();
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(requests, responses.size());
+    boolean[] seen = new boolean[requests];
+    for (ByteBuffer response : responses) {
+      int id = (int) requestIdOf(response);
+      assertFalse(seen[id], "second answer for " + id);
+      seen[id] = true;
+      Byte reason = parse(response);
+      if (reason != null) {
+        assertEquals(HashRequestHandler.ABORTED_CANCELLED, reason);
+      }
+    }
+    assertEquals(0, channel.inFlightRequests().size());
+  }
+}
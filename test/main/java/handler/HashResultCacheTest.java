@@ -0,0 +1,167 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import main.java.channel.CancellationToken;
+import main.java.channel.InFlightRequests;
+import main.java.handler.HashResultCache.ChainEntry;
+import main.java.handler.HashResultCache.ChainKey;
+import main.java.handler.HashResultCache.InFlight;
+import main.java.handler.HashResultCache.Waiter;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+class HashResultCacheTest {
+
+  private static final int HASH = ServerConfig.HASH_RESULT_SIZE;
+
+  private static ChainKey key(String data) {
+    return new ChainKey(data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static ChainEntry entry(ChainKey key, int rounds) {
+    return new ChainEntry(key, new byte[rounds * HASH], rounds);
+  }
+
+  // Every round of the chain, computed from scratch with MessageDigest.
+  private static byte[] freshChain(byte[] data, int rounds) throws NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    byte[] chain = new byte[rounds * HASH];
+    byte[] hash = digest.digest(data);
+    System.arraycopy(hash, 0, chain, 0, HASH);
+    for (int i = 1; i < rounds; i++) {
+      hash = digest.digest(hash);
+      System.arraycopy(hash, 0, chain, i * HASH, HASH);
+    }
+    return chain;
+  }
+
+  @Test
+  void keepsLongestChainPerKey() {
+    HashResultCache cache = new HashResultCache(16, 1 << 20);
+    ChainKey key = key("a");
+    ChainEntry five = entry(key, 5);
+    cache.put(five);
+    cache.put(entry(key, 3));
+    assertSame(five, cache.get(key("a")));
+
+    ChainEntry eight = entry(key, 8);
+    cache.put(eight);
+    assertSame(eight, cache.get(key));
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(eight.weight, cache.getUsedBytes());
+    assertEquals(7 * HASH, eight.offsetOf(8));
+  }
+
+  @Test
+  void clockGivesReferencedEntriesASecondChance() {
+    HashResultCache cache = new HashResultCache(3, 1 << 20);
+    cache.put(entry(key("a"), 1));
+    cache.put(entry(key("b"), 1));
+    cache.put(entry(key("c"), 1));
+    assertNotNull(cache.get(key("a")));
+
+    // The hand clears a's reference bit and evicts b, the first unreferenced entry.
+    cache.put(entry(key("d"), 1));
+    assertEquals(3, cache.getEntryCount());
+    assertEquals(1, cache.getEvictionCount());
+    assertNull(cache.get(key("b")));
+    assertNotNull(cache.get(key("a")));
+    assertNotNull(cache.get(key("c")));
+    assertNotNull(cache.get(key("d")));
+  }
+
+  @Test
+  void evictsToStayWithinByteBound() {
+    ChainEntry sample = entry(key("a"), 10);
+    HashResultCache cache = new HashResultCache(16, 2 * sample.weight);
+    cache.put(sample);
+    cache.put(entry(key("b"), 10));
+    assertEquals(2, cache.getEntryCount());
+
+    cache.put(entry(key("c"), 10));
+    assertEquals(2, cache.getEntryCount());
+    assertTrue(cache.getUsedBytes() <= 2 * sample.weight);
+    assertNull(cache.get(key("a")));
+
+    // Growing a chain can push the cache over too.
+    cache.put(entry(key("c"), 20));
+    assertTrue(cache.getUsedBytes() <= 2 * sample.weight);
+    assertNotNull(cache.get(key("c")));
+  }
+
+  @Test
+  void skipsEntriesLargerThanTheWholeCache() {
+    HashResultCache cache = new HashResultCache(16, 200);
+    cache.put(entry(key("a"), 100));
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  @Test
+  void coalescesIdenticalComputationsInFlight() {
+    HashResultCache cache = new HashResultCache(16, 1 << 20);
+    ChainKey key = key("a");
+    assertNull(cache.startComputation(key, 10));
+    InFlight running = cache.startComputation(key("a"), 10);
+    assertNotNull(running);
+
+    assertTrue(cache.attach(running, null, 7, 10));
+    assertTrue(cache.attach(running, null, 8, 4));
+    // Longer than the running computation: the caller must compute it itself.
+    assertFalse(cache.attach(running, null, 9, 11));
+    assertEquals(2, cache.getCoalescedCount());
+
+    ChainEntry computed = entry(key, 10);
+    List<Waiter> waiters = cache.finishComputation(key, computed);
+    assertEquals(2, waiters.size());
+    assertEquals(7, waiters.get(0).requestId);
+    assertEquals(4, waiters.get(1).iterations);
+    assertSame(computed, cache.get(key));
+
+    // A finished computation takes no more waiters, and the key can be started again.
+    assertFalse(cache.attach(running, null, 10, 1));
+    assertNull(cache.startComputation(key, 20));
+    assertTrue(cache.finishComputation(key, null).isEmpty());
+  }
+
+  @Test
+  void resumedChainMatchesFreshComputation() throws Exception {
+    HashRequestHandler handler = new HashRequestHandler(null);
+    HashResultCache cache = handler.getResultCache();
+    CancellationToken token = new InFlightRequests().closeToken();
+    byte[] data = "resume me".getBytes(StandardCharsets.UTF_8);
+    byte[] expected = freshChain(data, 40);
+
+    HashContext context = HashContext.acquire();
+    try {
+      byte[] out = new byte[HASH];
+      assertTrue(handler.computeHash(context, token, data, 15, out, 0));
+      assertArrayEquals(Arrays.copyOfRange(expected, 14 * HASH, 15 * HASH), out);
+      assertEquals(1, cache.getMissCount());
+
+      assertTrue(handler.computeHash(context, token, data, 40, out, 0));
+      assertEquals(1, cache.getPartialHitCount());
+      assertArrayEquals(Arrays.copyOfRange(expected, 39 * HASH, 40 * HASH), out);
+      assertArrayEquals(expected, cache.get(new ChainKey(data)).chain);
+
+      // Every shorter prefix is now a plain hit.
+      assertTrue(handler.computeHash(context, token, data, 27, out, 0));
+      assertEquals(1, cache.getHitCount());
+      assertArrayEquals(Arrays.copyOfRange(expected, 26 * HASH, 27 * HASH), out);
+    } finally {
+      HashContext.release(context);
+    }
+  }
+}
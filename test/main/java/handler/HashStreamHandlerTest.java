@@ -0,0 +1,245 @@
+package main.java.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+import main.java.message.MessageDecoder;
+import main.java.message.MessageType;
+import main.java.message.MessageView;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// Frames go through the real decoder, one at a time, as consecutive reads would deliver them.
+class HashStreamHandlerTest {
+
+  private static final long MAX_BYTES = 4096;
+
+  private final CapturingExecutor executor = new CapturingExecutor();
+  private final HashStreamHandler handler = new HashStreamHandler(executor, MAX_BYTES);
+  private final RecordingChannel channel = new RecordingChannel(0);
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  private void send(MessageType type, ByteBuffer payload) throws Exception {
+    payload.flip();
+    ByteBuffer frame = ByteBuffer.allocate(ServerConfig.HEADER_SIZE + payload.remaining());
+    frame.putInt(payload.remaining()).putShort(type.getValue()).put(payload).flip();
+    MessageDecoder.getInstance().decode(frame, new MessageView(), channel,
+        (ch, message) -> handler.handle(message, ch));
+    assertFalse(frame.hasRemaining());
+  }
+
+  private void begin(long requestId, int iterations) throws Exception {
+    send(MessageType.HASH_STREAM_BEGIN,
+        ByteBuffer.allocate(ServerConfig.STREAM_BEGIN_PAYLOAD_SIZE).putLong(requestId)
+            .putInt(iterations));
+  }
+
+  private void chunk(long requestId, byte[] data, int from, int to) throws Exception {
+    send(MessageType.HASH_STREAM_CHUNK,
+        ByteBuffer.allocate(ServerConfig.REQUEST_ID_SIZE + to - from).putLong(requestId)
+            .put(data, from, to - from));
+  }
+
+  private void end(long requestId) throws Exception {
+    send(MessageType.HASH_STREAM_END,
+        ByteBuffer.allocate(ServerConfig.STREAM_END_PAYLOAD_SIZE).putLong(requestId));
+  }
+
+  private static byte[] data(int length, int seed) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (seed * 17 + i * 7);
+    }
+    return data;
+  }
+
+  private static byte[] expectedHash(byte[] data, int iterations) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    byte[] hash = digest.digest(data);
+    for (int i = 1; i < iterations; i++) {
+      hash = digest.digest(hash);
+    }
+    return hash;
+  }
+
+  private static void assertHashResponse(ByteBuffer response, long requestId, int iterations,
+      byte[] hash) {
+    assertEquals(ServerConfig.RESPONSE_PAYLOAD_SIZE, response.getInt());
+    assertEquals(MessageType.HASH_RESPONSE.getValue(), response.getShort());
+    assertEquals(requestId, response.getLong());
+    assertEquals(iterations, response.getInt());
+    assertEquals(ServerConfig.HASH_RESULT_SIZE, response.getInt());
+    byte[] actual = new byte[ServerConfig.HASH_RESULT_SIZE];
+    response.get(actual);
+    assertArrayEquals(hash, actual);
+  }
+
+  private static void assertStreamError(ByteBuffer response, long requestId, byte status) {
+    assertEquals(ServerConfig.STREAM_ERROR_PAYLOAD_SIZE, response.getInt());
+    assertEquals(MessageType.HASH_STREAM_ERROR.getValue(), response.getShort());
+    assertEquals(requestId, response.getLong());
+    assertEquals(status, response.get());
+  }
+
+  @Test
+  void chunkedStreamMatchesOneShotDigest() throws Exception {
+    byte[] data = data(3000, 1);
+    begin(5, 1);
+    chunk(5, data, 0, 1);
+    chunk(5, data, 1, 1);
+    chunk(5, data, 1, 1700);
+    chunk(5, data, 1700, data.length);
+    assertTrue(channel.responses().isEmpty());
+    end(5);
+
+    assertEquals(1, channel.responses().size());
+    assertHashResponse(channel.responses().get(0), 5, 1, expectedHash(data, 1));
+    assertEquals(1, channel.acceptedCount());
+  }
+
+  @Test
+  void interleavedStreamsKeepTheirOwnDigests() throws Exception {
+    byte[] first = data(900, 2);
+    byte[] second = data(1300, 3);
+    begin(1, 1);
+    begin(2, 1);
+    // Chunks of the two streams arrive interleaved, and the second stream ends first.
+    chunk(2, second, 0, 500);
+    chunk(1, first, 0, 300);
+    chunk(2, second, 500, second.length);
+    end(2);
+    chunk(1, first, 300, first.length);
+    end(1);
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(2, responses.size());
+    assertHashResponse(responses.get(0), 2, 1, expectedHash(second, 1));
+    assertHashResponse(responses.get(1), 1, 1, expectedHash(first, 1));
+  }
+
+  @Test
+  void chunksAndEndForUnknownIdsAreIgnored() throws Exception {
+    byte[] data = data(64, 4);
+    // Before BEGIN: dropped, so they must not reach the stream's digest.
+    chunk(8, data, 0, data.length);
+    end(8);
+    begin(8, 1);
+    chunk(9, data, 0, 10);
+    end(9);
+    chunk(8, data, 0, data.length);
+    end(8);
+    // After END the id is free again; late chunks and a second END are dropped.
+    chunk(8, data, 0, 10);
+    end(8);
+
+    assertEquals(1, channel.responses().size());
+    assertHashResponse(channel.responses().get(0), 8, 1, expectedHash(data, 1));
+    assertTrue(channel.isActive());
+  }
+
+  @Test
+  void streamOverTheLimitFailsOnceAndDropsTheRest() throws Exception {
+    byte[] data = data((int) MAX_BYTES + 1, 5);
+    begin(3, 1);
+    chunk(3, data, 0, (int) MAX_BYTES);
+    assertTrue(channel.responses().isEmpty());
+    chunk(3, data, (int) MAX_BYTES, data.length);
+    chunk(3, data, 0, 100);
+    end(3);
+
+    assertEquals(1, channel.responses().size());
+    assertStreamError(channel.responses().get(0), 3, HashStreamHandler.STATUS_STREAM_TOO_LARGE);
+
+    // The slot is reusable, and the next stream starts from an empty digest.
+    byte[] small = data(10, 6);
+    begin(3, 1);
+    chunk(3, small, 0, small.length);
+    end(3);
+    assertEquals(2, channel.responses().size());
+    assertHashResponse(channel.responses().get(1), 3, 1, expectedHash(small, 1));
+  }
+
+  @Test
+  void beginErrorsAnswerImmediately() throws Exception {
+    begin(1, 0);
+    begin(2, 1);
+    begin(2, 1);
+    for (int id = 3; id < 3 + ServerConfig.STREAM_MAX_CONCURRENT; id++) {
+      begin(id, 1);
+    }
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(3, responses.size());
+    assertStreamError(responses.get(0), 1, HashStreamHandler.STATUS_INVALID_ITERATIONS);
+    assertStreamError(responses.get(1), 2, HashStreamHandler.STATUS_DUPLICATE_STREAM);
+    assertStreamError(responses.get(2), 2 + ServerConfig.STREAM_MAX_CONCURRENT,
+        HashStreamHandler.STATUS_TOO_MANY_STREAMS);
+  }
+
+  @Test
+  void remainingRoundsRunOnTheBusinessExecutor() throws Exception {
+    byte[] data = data(200, 7);
+    begin(4, ServerConfig.MAX_ITERATIONS);
+    chunk(4, data, 0, data.length);
+    end(4);
+    assertTrue(channel.responses().isEmpty());
+    assertEquals(1, executor.tasks.size());
+    assertEquals(ServerConfig.MAX_ITERATIONS - 1, executor.tasks.get(0).cost());
+
+    executor.tasks.get(0).run();
+    assertEquals(1, channel.responses().size());
+    assertHashResponse(channel.responses().get(0), 4, ServerConfig.MAX_ITERATIONS,
+        expectedHash(data, ServerConfig.MAX_ITERATIONS));
+  }
+
+  @Test
+  void closeMidStreamQueuesNothing() throws Exception {
+    byte[] data = data(500, 8);
+    begin(6, 1);
+    begin(7, ServerConfig.MAX_ITERATIONS);
+    chunk(6, data, 0, 250);
+    chunk(7, data, 0, data.length);
+    end(7);
+    assertEquals(1, executor.tasks.size());
+
+    channel.close();
+    chunk(6, data, 250, data.length);
+    end(6);
+    executor.tasks.get(0).run();
+    assertTrue(channel.responses().isEmpty());
+  }
+
+  @Test
+  void shedRoundsAnswerServerBusy() throws Exception {
+    executor.rejectAt.add(0);
+    begin(10, ServerConfig.MAX_ITERATIONS);
+    end(10);
+    begin(11, ServerConfig.MAX_ITERATIONS);
+    end(11);
+    executor.tasks.get(0).shed();
+
+    List<ByteBuffer> responses = channel.responses();
+    assertEquals(2, responses.size());
+    for (int i = 0; i < 2; i++) {
+      ByteBuffer response = responses.get(i);
+      assertEquals(MessageType.SERVER_BUSY.getValue(), response.getShort(4));
+      assertEquals(10 + i, response.getLong(ServerConfig.HEADER_SIZE));
+    }
+  }
+
+  @Test
+  void rejectsInvalidLimit() {
+    assertThrows(IllegalArgumentException.class, () -> new HashStreamHandler(executor, 0));
+  }
+}
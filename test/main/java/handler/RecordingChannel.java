@@ -0,0 +1,98 @@
+package main.java.handler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import main.java.channel.Channel;
+import main.java.channel.InFlightRequests;
+import main.java.server.InlineExecutionController;
+import main.java.util.buffer.PooledBuffer;
+
+// A Channel for handler tests: queued responses are copied out and released straight away, and
+// the test thread plays the part of the I/O thread.
+final class RecordingChannel implements Channel {
+
+  private final InFlightRequests inFlight = new InFlightRequests();
+  private final InlineExecutionController inlineController;
+  private final List<ByteBuffer> responses = new ArrayList<>();
+  private volatile boolean active = true;
+  private int accepted = 0;
+  private Object attachment;
+
+  // inlineThreshold 0 sends all work with a cost to the business executor.
+  RecordingChannel(int inlineThreshold) {
+    this.inlineController = new InlineExecutionController(Long.MAX_VALUE, inlineThreshold,
+        inlineThreshold);
+  }
+
+  // Responses in the order they were queued, each positioned at its frame header.
+  synchronized List<ByteBuffer> responses() {
+    return new ArrayList<>(responses);
+  }
+
+  int acceptedCount() {
+    return accepted;
+  }
+
+  @Override
+  public long getChannelId() {
+    return 1;
+  }
+
+  @Override
+  public boolean isActive() {
+    return active;
+  }
+
+  @Override
+  public synchronized void queueResponse(PooledBuffer buffer) {
+    ByteBuffer source = buffer.buffer();
+    ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+    copy.put(source.duplicate()).flip();
+    responses.add(copy);
+    buffer.release();
+  }
+
+  @Override
+  public void queueResponses(PooledBuffer[] buffers, int count) {
+    for (int i = 0; i < count; i++) {
+      queueResponse(buffers[i]);
+    }
+  }
+
+  @Override
+  public void requestAccepted() {
+    accepted++;
+  }
+
+  @Override
+  public InFlightRequests inFlightRequests() {
+    return inFlight;
+  }
+
+  @Override
+  public InlineExecutionController getInlineController() {
+    return inlineController;
+  }
+
+  @Override
+  public Object attachment() {
+    return attachment;
+  }
+
+  @Override
+  public void attach(Object attachment) {
+    this.attachment = attachment;
+  }
+
+  @Override
+  public void closeAsync() {
+    close();
+  }
+
+  @Override
+  public void close() {
+    active = false;
+    inFlight.closeAll();
+  }
+}
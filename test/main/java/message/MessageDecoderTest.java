@@ -0,0 +1,211 @@
+package main.java.message;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+// The decoder reads frames out of a buffer in read mode and leaves it at the first incomplete
+// frame, the way the event loop hands it the channel's read buffer.
+class MessageDecoderTest {
+
+  private final MessageDecoder decoder = MessageDecoder.getInstance();
+
+  private static byte[] frame(short type, byte[] payload) {
+    return frame(type, payload.length, payload);
+  }
+
+  // declaredLength may differ from the bytes actually written, for malformed headers.
+  private static byte[] frame(short type, int declaredLength, byte[] payload) {
+    ByteBuffer buffer = ByteBuffer.allocate(ServerConfig.HEADER_SIZE + payload.length);
+    buffer.putInt(declaredLength).putShort(type).put(payload);
+    return buffer.array();
+  }
+
+  private static byte[] payload(int length, int seed) {
+    byte[] payload = new byte[length];
+    for (int i = 0; i < length; i++) {
+      payload[i] = (byte) (seed + i);
+    }
+    return payload;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = Arrays.stream(parts).mapToInt(part -> part.length).sum();
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    for (byte[] part : parts) {
+      buffer.put(part);
+    }
+    return buffer.array();
+  }
+
+  private static byte[] bytesOf(ByteBuffer payload) {
+    byte[] bytes = new byte[payload.remaining()];
+    payload.duplicate().get(bytes);
+    return bytes;
+  }
+
+  @Test
+  void decodesBackToBackFrames() throws Exception {
+    byte[] first = payload(12, 1);
+    byte[] second = payload(0, 0);
+    byte[] third = payload(ServerConfig.MAX_PAYLOAD_SIZE, 7);
+    ByteBuffer buffer = ByteBuffer.wrap(concat(
+        frame(MessageType.HASH_REQUEST.getValue(), first),
+        frame(MessageType.SERVER_BUSY.getValue(), second),
+        frame(MessageType.HASH_RESPONSE.getValue(), third)));
+
+    List<Message> messages = decoder.decode(buffer);
+
+    assertEquals(3, messages.size());
+    assertSame(MessageType.HASH_REQUEST, messages.get(0).getType());
+    assertArrayEquals(first, bytesOf(messages.get(0).getPayload()));
+    assertSame(MessageType.SERVER_BUSY, messages.get(1).getType());
+    assertEquals(0, messages.get(1).getPayload().remaining());
+    assertSame(MessageType.HASH_RESPONSE, messages.get(2).getType());
+    assertArrayEquals(third, bytesOf(messages.get(2).getPayload()));
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  void partialHeaderIsLeftInTheBuffer() throws Exception {
+    byte[] bytes = frame(MessageType.HASH_REQUEST.getValue(), payload(8, 3));
+    for (int length = 0; length < ServerConfig.HEADER_SIZE; length++) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+      assertTrue(decoder.decode(buffer).isEmpty(), "length " + length);
+      assertEquals(0, buffer.position());
+      assertEquals(length, buffer.remaining());
+    }
+  }
+
+  @Test
+  void partialPayloadIsLeftInTheBuffer() throws Exception {
+    byte[] complete = frame(MessageType.HASH_REQUEST.getValue(), payload(5, 2));
+    byte[] partial = frame(MessageType.HASH_REQUEST.getValue(), payload(40, 9));
+    byte[] bytes = concat(complete, partial);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+
+    List<Message> messages = decoder.decode(buffer);
+
+    assertEquals(1, messages.size());
+    assertEquals(complete.length, buffer.position());
+    assertEquals(partial.length - 1, buffer.remaining());
+  }
+
+  @Test
+  void framesSplitAcrossReadsDecodeOnceComplete() throws Exception {
+    byte[][] payloads = {payload(3, 1), payload(ServerConfig.MAX_PAYLOAD_SIZE, 2), payload(0, 3),
+        payload(77, 4)};
+    byte[] stream = concat(
+        frame(MessageType.HASH_REQUEST.getValue(), payloads[0]),
+        frame(MessageType.HASH_REQUEST.getValue(), payloads[1]),
+        frame(MessageType.SERVER_BUSY.getValue(), payloads[2]),
+        frame(MessageType.HASH_RESPONSE.getValue(), payloads[3]));
+
+    // Every read size from one byte up, appended to a read buffer that is compacted after
+    // each decode, as the event loop does.
+    for (int readSize = 1; readSize <= stream.length; readSize++) {
+      ByteBuffer readBuffer = ByteBuffer.allocate(stream.length);
+      List<Message> messages = new ArrayList<>();
+      for (int offset = 0; offset < stream.length; offset += readSize) {
+        readBuffer.put(stream, offset, Math.min(readSize, stream.length - offset));
+        readBuffer.flip();
+        for (Message message : decoder.decode(readBuffer)) {
+          // Copy out: the payload is a slice of a buffer that compact() will overwrite.
+          messages.add(new Message(message.getTypeValue(),
+              ByteBuffer.wrap(bytesOf(message.getPayload()))));
+        }
+        readBuffer.compact();
+      }
+      assertEquals(payloads.length, messages.size(), "read size " + readSize);
+      for (int i = 0; i < payloads.length; i++) {
+        assertArrayEquals(payloads[i], bytesOf(messages.get(i).getPayload()),
+            "read size " + readSize + ", frame " + i);
+      }
+      assertEquals(0, readBuffer.position());
+    }
+  }
+
+  @Test
+  void listenerSeesEachFrameThroughTheView() throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(concat(
+        frame(MessageType.HASH_REQUEST.getValue(), payload(16, 5)),
+        frame(MessageType.HASH_RESPONSE.getValue(), payload(8, 6))));
+    MessageView view = new MessageView();
+    List<MessageType> types = new ArrayList<>();
+
+    int frames = decoder.decode(buffer, view, types, (list, message) -> {
+      assertSame(view, message);
+      list.add(message.getType());
+    });
+
+    assertEquals(2, frames);
+    assertEquals(List.of(MessageType.HASH_REQUEST, MessageType.HASH_RESPONSE), types);
+    // Cleared once decode returns, so a stale view cannot read the next frame's bytes.
+    assertNull(view.getType());
+  }
+
+  @Test
+  void oversizedPayloadIsRejectedFromTheHeaderAlone() {
+    // Only the header has arrived: the length is checked before waiting for the payload.
+    ByteBuffer buffer = ByteBuffer.wrap(frame(MessageType.HASH_REQUEST.getValue(),
+        ServerConfig.MAX_PAYLOAD_SIZE + 1, new byte[0]));
+    MessageDecoder.DecodeException e =
+        assertThrows(MessageDecoder.DecodeException.class, () -> decoder.decode(buffer));
+    assertTrue(e.getMessage().contains("length"), e.getMessage());
+  }
+
+  @Test
+  void payloadLimitIsPerType() throws Exception {
+    int batchLimit = MessageType.HASH_BATCH_REQUEST.getMaxPayloadSize();
+    assertTrue(batchLimit > ServerConfig.MAX_PAYLOAD_SIZE);
+
+    ByteBuffer atLimit = ByteBuffer.wrap(frame(MessageType.HASH_BATCH_REQUEST.getValue(),
+        payload(batchLimit, 0)));
+    assertEquals(1, decoder.decode(atLimit).size());
+
+    ByteBuffer overLimit = ByteBuffer.wrap(frame(MessageType.HASH_BATCH_REQUEST.getValue(),
+        batchLimit + 1, new byte[0]));
+    assertThrows(MessageDecoder.DecodeException.class, () -> decoder.decode(overLimit));
+  }
+
+  @Test
+  void negativeLengthIsRejected() {
+    ByteBuffer buffer = ByteBuffer.wrap(frame(MessageType.HASH_REQUEST.getValue(), -1,
+        new byte[0]));
+    assertThrows(MessageDecoder.DecodeException.class, () -> decoder.decode(buffer));
+  }
+
+  @Test
+  void unknownTypeIsRejected() {
+    for (short type : new short[] {0, 15, 255, -1, Short.MAX_VALUE}) {
+      ByteBuffer buffer = ByteBuffer.wrap(frame(type, payload(4, 0)));
+      MessageDecoder.DecodeException e =
+          assertThrows(MessageDecoder.DecodeException.class, () -> decoder.decode(buffer),
+              "type " + type);
+      assertTrue(e.getMessage().contains("type"), e.getMessage());
+    }
+  }
+
+  @Test
+  void framesBeforeABadFrameAreDelivered() {
+    List<MessageType> types = new ArrayList<>();
+    ByteBuffer buffer = ByteBuffer.wrap(concat(
+        frame(MessageType.HASH_REQUEST.getValue(), payload(4, 0)),
+        frame((short) 99, payload(4, 0))));
+
+    assertThrows(MessageDecoder.DecodeException.class,
+        () -> decoder.decode(buffer, new MessageView(), types,
+            (list, message) -> list.add(message.getType())));
+    assertEquals(List.of(MessageType.HASH_REQUEST), types);
+  }
+}
@@ -0,0 +1,184 @@
+package main.java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// The wheel never reads a clock, so these tests drive advance() with synthetic nanoseconds.
+class HashedTimingWheelTest {
+
+  private static final int WHEEL_SIZE = 8;
+  private static final long TICK = 10;
+
+  private final HashedTimingWheel wheel = new HashedTimingWheel(WHEEL_SIZE, TICK, 0);
+
+  // Records the time each firing was reported at.
+  private static final class Recorder {
+    final List<Long> fired = new ArrayList<>();
+    final HashedTimingWheel.Timeout timeout = new HashedTimingWheel.Timeout(fired::add);
+  }
+
+  @Test
+  void firesOnTheFirstTickAtOrAfterTheDeadline() {
+    Recorder r = new Recorder();
+    wheel.schedule(r.timeout, 25);
+    assertTrue(r.timeout.isScheduled());
+    assertEquals(25, r.timeout.getDeadlineNanos());
+    assertEquals(1, wheel.size());
+
+    wheel.advance(29);
+    assertTrue(r.fired.isEmpty());
+    wheel.advance(30);
+    assertEquals(List.of(30L), r.fired);
+    assertFalse(r.timeout.isScheduled());
+    assertEquals(0, wheel.size());
+
+    wheel.advance(1_000);
+    assertEquals(1, r.fired.size());
+  }
+
+  @Test
+  void pastDeadlineFiresOnTheNextTick() {
+    Recorder r = new Recorder();
+    wheel.advance(100);
+    wheel.schedule(r.timeout, 50);
+    wheel.advance(109);
+    assertTrue(r.fired.isEmpty());
+    wheel.advance(110);
+    assertEquals(List.of(110L), r.fired);
+  }
+
+  @Test
+  void lateAdvanceFiresWithTheCallersTime() {
+    Recorder r = new Recorder();
+    wheel.schedule(r.timeout, 15);
+    wheel.advance(57);
+    assertEquals(List.of(57L), r.fired);
+  }
+
+  @Test
+  void deadlinesBeyondOneRotationWaitForTheirRound() {
+    Recorder near = new Recorder();
+    Recorder far = new Recorder();
+    long farDeadline = 3 * WHEEL_SIZE * TICK + 5;
+    // Both land in the same bucket; only the near one is due on the first pass.
+    wheel.schedule(near.timeout, 5);
+    wheel.schedule(far.timeout, farDeadline);
+
+    wheel.advance(10);
+    assertEquals(List.of(10L), near.fired);
+    assertTrue(far.fired.isEmpty());
+
+    for (long now = 20; now < farDeadline + TICK; now += TICK) {
+      wheel.advance(now);
+      if (now < farDeadline) {
+        assertTrue(far.fired.isEmpty(), "fired early at " + now);
+      }
+    }
+    assertEquals(List.of(farDeadline + TICK - 5), far.fired);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void cancelledTimeoutNeverFires() {
+    Recorder a = new Recorder();
+    Recorder b = new Recorder();
+    Recorder c = new Recorder();
+    // Same bucket, so cancel unlinks from the head, middle and tail of one list.
+    wheel.schedule(a.timeout, 15);
+    wheel.schedule(b.timeout, 15);
+    wheel.schedule(c.timeout, 15);
+    wheel.cancel(b.timeout);
+    assertFalse(b.timeout.isScheduled());
+    assertEquals(2, wheel.size());
+
+    wheel.advance(20);
+    assertEquals(1, a.fired.size());
+    assertTrue(b.fired.isEmpty());
+    assertEquals(1, c.fired.size());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void cancelAfterFiringIsANoOp() {
+    Recorder r = new Recorder();
+    wheel.schedule(r.timeout, 5);
+    wheel.advance(10);
+    assertEquals(1, r.fired.size());
+
+    wheel.cancel(r.timeout);
+    wheel.cancel(r.timeout);
+    assertEquals(0, wheel.size());
+    assertFalse(r.timeout.isScheduled());
+  }
+
+  @Test
+  void rescheduleMovesTheTimeoutInsteadOfAddingIt() {
+    Recorder r = new Recorder();
+    wheel.schedule(r.timeout, 200);
+    wheel.schedule(r.timeout, 15);
+    assertEquals(1, wheel.size());
+    assertEquals(15, r.timeout.getDeadlineNanos());
+
+    wheel.advance(20);
+    assertEquals(List.of(20L), r.fired);
+    wheel.advance(300);
+    assertEquals(1, r.fired.size());
+  }
+
+  @Test
+  void callbackMayRescheduleItself() {
+    List<Long> fired = new ArrayList<>();
+    HashedTimingWheel.Timeout[] self = new HashedTimingWheel.Timeout[1];
+    self[0] = new HashedTimingWheel.Timeout(now -> {
+      fired.add(now);
+      if (fired.size() < 5) {
+        wheel.schedule(self[0], now + 3 * TICK);
+      }
+    });
+    wheel.schedule(self[0], 3 * TICK);
+
+    for (long now = TICK; now <= 40 * TICK; now += TICK) {
+      wheel.advance(now);
+    }
+    assertEquals(List.of(30L, 60L, 90L, 120L, 150L), fired);
+    assertFalse(self[0].isScheduled());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void randomDeadlinesFireWithinOneTick() {
+    Random random = new Random(17);
+    int count = 2_000;
+    long[] deadlines = new long[count];
+    long[] firedAt = new long[count];
+    for (int i = 0; i < count; i++) {
+      int id = i;
+      deadlines[i] = random.nextInt(20 * WHEEL_SIZE * (int) TICK);
+      firedAt[i] = -1;
+      wheel.schedule(new HashedTimingWheel.Timeout(now -> firedAt[id] = now), deadlines[i]);
+    }
+    for (long now = 0; now <= 21 * WHEEL_SIZE * TICK; now++) {
+      wheel.advance(now);
+    }
+    for (int i = 0; i < count; i++) {
+      assertTrue(firedAt[i] >= deadlines[i], "early: " + deadlines[i] + " at " + firedAt[i]);
+      assertTrue(firedAt[i] <= deadlines[i] + TICK, "late: " + deadlines[i] + " at " + firedAt[i]);
+    }
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void rejectsInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel(6, TICK, 0));
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel(0, TICK, 0));
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel(8, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel.Timeout(null));
+  }
+}
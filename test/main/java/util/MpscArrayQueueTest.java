@@ -0,0 +1,135 @@
+package main.java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class MpscArrayQueueTest {
+
+  @Test
+  void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(2, new MpscArrayQueue<>(2).capacity());
+    assertEquals(8, new MpscArrayQueue<>(5).capacity());
+    assertEquals(8, new MpscArrayQueue<>(8).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new MpscArrayQueue<>(1));
+  }
+
+  @Test
+  void emptyQueuePollsNull() {
+    MpscArrayQueue<String> queue = new MpscArrayQueue<>(4);
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.size());
+    assertNull(queue.poll());
+
+    queue.offer("a");
+    assertEquals("a", queue.poll());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void rejectsOfferWhenFull() {
+    MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(4));
+    assertEquals(4, queue.size());
+
+    // One free slot admits exactly one more element.
+    assertEquals(0, queue.poll());
+    assertTrue(queue.offer(4));
+    assertFalse(queue.offer(5));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(i, queue.poll());
+    }
+    assertNull(queue.poll());
+  }
+
+  @Test
+  void keepsOrderAcrossWrapAround() {
+    MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+    int next = 0;
+    int expected = 0;
+    for (int round = 0; round < 100; round++) {
+      while (queue.offer(next)) {
+        next++;
+      }
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected++, queue.poll());
+      }
+    }
+    Integer element;
+    while ((element = queue.poll()) != null) {
+      assertEquals(expected++, element);
+    }
+    assertEquals(next, expected);
+  }
+
+  @Test
+  void rejectsNull() {
+    assertThrows(NullPointerException.class, () -> new MpscArrayQueue<>(4).offer(null));
+  }
+
+  @Test
+  @Timeout(60)
+  void concurrentProducersLoseNothingAndKeepPerProducerOrder() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 200_000;
+    // Small enough that producers keep hitting a full queue.
+    MpscArrayQueue<Long> queue = new MpscArrayQueue<>(64);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      long producer = p;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (long seq = 0; seq < perProducer; seq++) {
+          Long element = (producer << 32) | seq;
+          while (!queue.offer(element)) {
+            Thread.yield();
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    long[] nextSeq = new long[producers];
+    long received = 0;
+    while (received < (long) producers * perProducer) {
+      Long element = queue.poll();
+      if (element == null) {
+        Thread.yield();
+        continue;
+      }
+      int producer = (int) (element >>> 32);
+      long seq = element & 0xFFFF_FFFFL;
+      // Any gap is a lost element, any repeat a duplicate, any step back a reordering.
+      assertEquals(nextSeq[producer], seq, "producer " + producer);
+      nextSeq[producer]++;
+      received++;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+    for (int p = 0; p < producers; p++) {
+      assertEquals(perProducer, nextSeq[p]);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package main.java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SelectedKeySetTest {
+
+  private Selector selector;
+  private SelectedKeySet set;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    selector = Selector.open();
+    // The build runs on a JDK selector without --add-opens, so this exercises the Unsafe path.
+    set = SelectedKeySet.install(selector);
+    assertNotNull(set);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    selector.close();
+  }
+
+  // Only identity matters to the set; the selector never sees these.
+  private static final class StubKey extends SelectionKey {
+
+    @Override
+    public SelectableChannel channel() {
+      return null;
+    }
+
+    @Override
+    public Selector selector() {
+      return null;
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public int interestOps() {
+      return 0;
+    }
+
+    @Override
+    public SelectionKey interestOps(int ops) {
+      return this;
+    }
+
+    @Override
+    public int readyOps() {
+      return 0;
+    }
+  }
+
+  private static List<SelectionKey> stubs(int count) {
+    List<SelectionKey> keys = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      keys.add(new StubKey());
+    }
+    return keys;
+  }
+
+  @Test
+  void installReplacesTheSelectorsPublicSet() {
+    assertSame(set, selector.selectedKeys());
+  }
+
+  @Test
+  void installReturnsNullForOtherSelectors() {
+    assertNull(SelectedKeySet.install(new ForeignSelector()));
+  }
+
+  @Test
+  void selectAddsAReadyKeyOnceAndMergesItsOps() throws IOException {
+    Pipe pipe = Pipe.open();
+    try {
+      pipe.source().configureBlocking(false);
+      pipe.sink().configureBlocking(false);
+      SelectionKey readKey = pipe.source().register(selector, SelectionKey.OP_READ);
+      pipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+
+      assertEquals(1, selector.select(5_000));
+      assertEquals(1, set.size());
+      assertSame(readKey, set.get(0));
+      assertTrue(set.contains(readKey));
+
+      // Still selected and still readable: the selector sees it through contains() and
+      // updates it in place instead of adding it a second time.
+      assertEquals(0, selector.selectNow());
+      assertEquals(1, set.size());
+
+      SelectionKey writeKey = pipe.sink().register(selector, SelectionKey.OP_WRITE);
+      assertEquals(1, selector.selectNow());
+      assertEquals(2, set.size());
+      assertTrue(set.contains(writeKey));
+      assertTrue(writeKey.isWritable());
+
+      set.clear();
+      assertFalse(set.contains(readKey));
+      assertEquals(2, selector.selectNow());
+      assertEquals(2, set.size());
+    } finally {
+      pipe.source().close();
+      pipe.sink().close();
+    }
+  }
+
+  @Test
+  void cancelledKeyIsRemovedByTheNextSelect() throws IOException {
+    Pipe pipe = Pipe.open();
+    try {
+      pipe.source().configureBlocking(false);
+      pipe.sink().configureBlocking(false);
+      SelectionKey readKey = pipe.source().register(selector, SelectionKey.OP_READ);
+      SelectionKey writeKey = pipe.sink().register(selector, SelectionKey.OP_WRITE);
+      pipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+      assertEquals(2, selector.select(5_000));
+
+      readKey.cancel();
+      selector.selectNow();
+      assertFalse(set.contains(readKey));
+      assertEquals(1, set.size());
+      assertSame(writeKey, set.get(0));
+    } finally {
+      pipe.source().close();
+      pipe.sink().close();
+    }
+  }
+
+  @Test
+  void followsTheSetContractAcrossGrowth() {
+    List<SelectionKey> keys = stubs(5_000);
+    for (SelectionKey key : keys) {
+      assertTrue(set.add(key));
+    }
+    assertFalse(set.add(keys.get(17)));
+    assertFalse(set.add(null));
+    assertEquals(keys.size(), set.size());
+    assertEquals(new HashSet<>(keys), new HashSet<>(set));
+
+    for (int i = 0; i < keys.size(); i += 2) {
+      assertTrue(set.remove(keys.get(i)));
+      assertFalse(set.remove(keys.get(i)));
+    }
+    assertEquals(keys.size() / 2, set.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(i % 2 == 1, set.contains(keys.get(i)), "key " + i);
+    }
+    for (int i = 0; i < set.size(); i++) {
+      assertTrue(set.contains(set.get(i)));
+    }
+    assertFalse(set.contains(new StubKey()));
+    assertFalse(set.contains(null));
+
+    set.clear();
+    assertEquals(0, set.size());
+    for (SelectionKey key : keys) {
+      assertFalse(set.contains(key));
+    }
+    assertTrue(set.add(keys.get(0)));
+    assertTrue(set.contains(keys.get(0)));
+  }
+
+  @Test
+  void repeatedAddAndRemoveWithoutClearStaysConsistent() {
+    List<SelectionKey> keys = stubs(64);
+    Set<SelectionKey> expected = new HashSet<>();
+    for (int round = 0; round < 200; round++) {
+      for (SelectionKey key : keys) {
+        assertEquals(expected.add(key), set.add(key));
+      }
+      for (int i = round % 3; i < keys.size(); i += 3) {
+        assertEquals(expected.remove(keys.get(i)), set.remove(keys.get(i)));
+      }
+      assertEquals(expected, new HashSet<>(set));
+    }
+  }
+
+  @Test
+  void iteratorRemoveVisitsEveryKey() {
+    List<SelectionKey> keys = stubs(100);
+    set.addAll(keys);
+    Set<SelectionKey> seen = new HashSet<>();
+    Iterator<SelectionKey> it = set.iterator();
+    assertThrows(IllegalStateException.class, it::remove);
+    int position = 0;
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      assertTrue(seen.add(key));
+      if (position++ % 2 == 0) {
+        it.remove();
+        assertThrows(IllegalStateException.class, it::remove);
+      }
+    }
+    assertEquals(keys.size(), seen.size());
+    assertEquals(keys.size() / 2, set.size());
+  }
+
+  // A selector that is not the JDK's SelectorImpl.
+  private static final class ForeignSelector extends AbstractSelector {
+
+    ForeignSelector() {
+      super(SelectorProvider.provider());
+    }
+
+    @Override
+    protected void implCloseSelector() {
+    }
+
+    @Override
+    protected SelectionKey register(AbstractSelectableChannel ch, int ops, Object att) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<SelectionKey> keys() {
+      return Set.of();
+    }
+
+    @Override
+    public Set<SelectionKey> selectedKeys() {
+      return Set.of();
+    }
+
+    @Override
+    public int selectNow() {
+      return 0;
+    }
+
+    @Override
+    public int select(long timeout) {
+      return 0;
+    }
+
+    @Override
+    public int select() {
+      return 0;
+    }
+
+    @Override
+    public Selector wakeup() {
+      return this;
+    }
+  }
+}
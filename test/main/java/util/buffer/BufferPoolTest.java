@@ -0,0 +1,178 @@
+package main.java.util.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import main.java.util.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+  private static final int SLAB = 4096;
+
+  // 64..1024 byte classes, 4-entry thread caches.
+  private static BufferPool newPool(long maxMemory) {
+    return new BufferPool(64, 1024, SLAB, maxMemory, 4);
+  }
+
+  @Test
+  void roundsUpToSizeClass() {
+    BufferPool pool = newPool(1 << 20);
+    assertEquals(64, pool.allocate(1).capacity());
+    assertEquals(64, pool.allocate(64).capacity());
+    assertEquals(128, pool.allocate(65).capacity());
+    assertEquals(1024, pool.allocate(1000).capacity());
+    assertEquals(3 * SLAB, pool.getPooledMemory());
+  }
+
+  @Test
+  void oversizedAllocationIsUnpooled() {
+    BufferPool pool = newPool(1 << 20);
+    PooledBuffer buffer = pool.allocate(1025);
+    assertEquals(1025, buffer.capacity());
+    assertEquals(0, pool.getPooledMemory());
+    assertEquals(1, pool.getMissCount());
+    assertTrue(buffer.release());
+    assertEquals(0, pool.getOutstandingCount());
+  }
+
+  @Test
+  void carvesSlabIntoDisjointChunks() {
+    BufferPool pool = newPool(1 << 20);
+    int chunks = SLAB / 128;
+    Map<PooledBuffer, Boolean> seen = new IdentityHashMap<>();
+    for (int i = 0; i < chunks; i++) {
+      PooledBuffer buffer = pool.allocate(128);
+      assertEquals(128, buffer.capacity());
+      assertFalse(seen.containsKey(buffer));
+      seen.put(buffer, true);
+    }
+    // One slab served every chunk; only the first allocation missed.
+    assertEquals(SLAB, pool.getPooledMemory());
+    assertEquals(1, pool.getMissCount());
+    assertEquals(chunks - 1, pool.getHitCount());
+    assertEquals(chunks, seen.size());
+
+    pool.allocate(128);
+    assertEquals(2 * SLAB, pool.getPooledMemory());
+  }
+
+  @Test
+  void chunkWritesDoNotOverlap() {
+    BufferPool pool = newPool(1 << 20);
+    List<PooledBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < SLAB / 64; i++) {
+      PooledBuffer buffer = pool.allocate(64);
+      for (int j = 0; j < 64; j++) {
+        buffer.buffer().put(j, (byte) i);
+      }
+      buffers.add(buffer);
+    }
+    for (int i = 0; i < buffers.size(); i++) {
+      for (int j = 0; j < 64; j++) {
+        assertEquals((byte) i, buffers.get(i).buffer().get(j));
+      }
+    }
+  }
+
+  @Test
+  void fallsBackToUnpooledPastMaxMemory() {
+    BufferPool pool = newPool(SLAB);
+    pool.allocate(1024);
+    pool.allocate(64);
+    assertEquals(SLAB, pool.getPooledMemory());
+    assertEquals(2, pool.getMissCount());
+  }
+
+  @Test
+  void releasedBufferComesBackFromThreadCache() {
+    BufferPool pool = newPool(1 << 20);
+    PooledBuffer first = pool.allocate(200);
+    assertTrue(first.release());
+    long hits = pool.getHitCount();
+
+    PooledBuffer again = pool.allocate(256);
+    assertSame(first, again);
+    assertEquals(hits + 1, pool.getHitCount());
+    assertEquals(1, again.refCnt());
+    assertEquals(0, again.buffer().position());
+    assertEquals(256, again.buffer().limit());
+  }
+
+  @Test
+  void fullThreadCacheSpillsToSharedFreeList() throws InterruptedException {
+    BufferPool pool = newPool(1 << 20);
+    List<PooledBuffer> released = new ArrayList<>();
+    // Take the whole slab so the shared free list starts empty.
+    for (int i = 0; i < SLAB / 512; i++) {
+      released.add(pool.allocate(512));
+    }
+    for (PooledBuffer buffer : released) {
+      buffer.release();
+    }
+    assertEquals(0, pool.getOutstandingCount());
+
+    AtomicReference<PooledBuffer> fromOtherThread = new AtomicReference<>();
+    Thread other = new Thread(() -> fromOtherThread.set(pool.allocate(512)));
+    other.start();
+    other.join();
+    assertTrue(released.stream().anyMatch(b -> b == fromOtherThread.get()));
+    assertEquals(SLAB, pool.getPooledMemory());
+  }
+
+  @Test
+  void recyclesOnlyOnLastRelease() {
+    BufferPool pool = newPool(1 << 20);
+    PooledBuffer buffer = pool.allocate(64);
+    assertSame(buffer, buffer.retain());
+    assertEquals(2, buffer.refCnt());
+
+    assertFalse(buffer.release());
+    assertEquals(1, pool.getOutstandingCount());
+    assertTrue(buffer.release());
+    assertEquals(0, buffer.refCnt());
+    assertEquals(0, pool.getOutstandingCount());
+
+    assertFalse(buffer.release());
+    assertEquals(1, pool.getIllegalReleaseCount());
+    assertThrows(IllegalStateException.class, buffer::retain);
+  }
+
+  @Test
+  void retainedBufferIsNotHandedOut() {
+    BufferPool pool = newPool(1 << 20);
+    PooledBuffer buffer = pool.allocate(64).retain();
+    buffer.release();
+    assertNotSame(buffer, pool.allocate(64));
+  }
+
+  @Test
+  void countsBuffersHeldPastLeakAge() throws InterruptedException {
+    BufferPool pool = newPool(1 << 20);
+    PooledBuffer held = pool.allocate(64);
+    PooledBuffer returned = pool.allocate(64);
+    returned.release();
+    Thread.sleep(5);
+
+    assertEquals(1, pool.countLeakSuspects(1_000_000));
+    assertEquals(0, pool.countLeakSuspects(60_000_000_000L));
+    held.release();
+    assertEquals(0, pool.countLeakSuspects(1_000_000));
+  }
+
+  @Test
+  void exportsLeakSuspectGauge() {
+    BufferPool.getInstance();
+    String scrape = MetricsRegistry.getInstance().scrape();
+    assertTrue(scrape.contains("jam_buffer_pool_leak_suspects "), scrape);
+  }
+}
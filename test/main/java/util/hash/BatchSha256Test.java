@@ -0,0 +1,120 @@
+package main.java.util.hash;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import main.java.server.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+// Both engines against MessageDigest, bit for bit. The vector engine is loaded directly, so a
+// missing jdk.incubator.vector fails the test instead of falling back.
+class BatchSha256Test {
+
+  private static final int SIZE = Sha256Constants.DIGEST_SIZE;
+
+  @Test
+  void vectorEngineMatchesMessageDigestForEveryCount() throws Exception {
+    assertMatchesForEveryCount(new VectorBatchSha256());
+  }
+
+  @Test
+  void scalarEngineMatchesMessageDigestForEveryCount() throws Exception {
+    assertMatchesForEveryCount(BatchSha256Engines.scalar());
+  }
+
+  @Test
+  void vectorEngineMatchesMessageDigestOnRaggedChains() throws Exception {
+    assertChainsMatch(new VectorBatchSha256());
+  }
+
+  @Test
+  void scalarEngineMatchesMessageDigestOnRaggedChains() throws Exception {
+    assertChainsMatch(BatchSha256Engines.scalar());
+  }
+
+  @Test
+  void vectorEngineUsesSimdLanesAndPassesSelfCheck() {
+    BatchSha256 engine = new VectorBatchSha256();
+    assertTrue(engine.lanes() > 1, engine.name());
+    assertTrue(BatchSha256Engines.matchesMessageDigest(engine));
+  }
+
+  // Counts below, at and across lane multiples, hashed both in place and into a separate array.
+  private static void assertMatchesForEveryCount(BatchSha256 engine) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    Random random = new Random(42);
+    for (int count = 0; count <= 3 * engine.lanes() + 1; count++) {
+      byte[] input = new byte[count * SIZE];
+      random.nextBytes(input);
+      byte[] expected = new byte[input.length];
+      for (int i = 0; i < count; i++) {
+        digest.update(input, i * SIZE, SIZE);
+        System.arraycopy(digest.digest(), 0, expected, i * SIZE, SIZE);
+      }
+
+      // Trailing bytes past count must be left alone.
+      byte[] out = new byte[input.length + SIZE];
+      Arrays.fill(out, (byte) 0x5a);
+      engine.digest32(input, out, count);
+      assertArrayEquals(expected, Arrays.copyOf(out, input.length), "count " + count);
+      for (int i = input.length; i < out.length; i++) {
+        assertTrue(out[i] == 0x5a, "count " + count + " wrote past its output");
+      }
+
+      byte[] inPlace = input.clone();
+      engine.digest32(inPlace, inPlace, count);
+      assertArrayEquals(expected, inPlace, "in place, count " + count);
+    }
+  }
+
+  // Every pairing of data length 0..MAX_DATA_LENGTH and 1..MAX_ITERATIONS rounds, advanced in
+  // lockstep the way HashRequestHandler does: round one through MessageDigest, then one engine
+  // pass per round over the chains that still need it, so the active count shrinks every round.
+  private static void assertChainsMatch(BatchSha256 engine) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    int lengths = ServerConfig.MAX_DATA_LENGTH + 1;
+    int maxIterations = ServerConfig.MAX_ITERATIONS;
+    // The two moduli are coprime, so this visits every (length, iterations) pair once.
+    int chains = lengths * maxIterations;
+    Random random = new Random(7);
+    byte[][] data = new byte[chains][];
+    int[] iterations = new int[chains];
+    byte[] state = new byte[chains * SIZE];
+    for (int k = 0; k < chains; k++) {
+      data[k] = new byte[k % lengths];
+      random.nextBytes(data[k]);
+      iterations[k] = 1 + k % maxIterations;
+      digest.update(data[k]);
+      digest.digest(state, k * SIZE, SIZE);
+    }
+
+    byte[] lanes = new byte[chains * SIZE];
+    for (int round = 2; round <= maxIterations; round++) {
+      int active = 0;
+      for (int k = 0; k < chains; k++) {
+        if (round <= iterations[k]) {
+          System.arraycopy(state, k * SIZE, lanes, active++ * SIZE, SIZE);
+        }
+      }
+      engine.digest32(lanes, lanes, active);
+      active = 0;
+      for (int k = 0; k < chains; k++) {
+        if (round <= iterations[k]) {
+          System.arraycopy(lanes, active++ * SIZE, state, k * SIZE, SIZE);
+        }
+      }
+    }
+
+    for (int k = 0; k < chains; k++) {
+      byte[] expected = digest.digest(data[k]);
+      for (int round = 1; round < iterations[k]; round++) {
+        expected = digest.digest(expected);
+      }
+      assertArrayEquals(expected, Arrays.copyOfRange(state, k * SIZE, (k + 1) * SIZE),
+          "length " + data[k].length + ", iterations " + iterations[k]);
+    }
+  }
+}